@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.exbin.utils.binary_data.BinaryData;
+
+/**
+ * Parallel search engine for binary data.
+ *
+ * Data is split into chunks overlapping by maximum match length minus one
+ * and preceded by lead-in requested by matcher, which are scanned in parallel
+ * on fork-join pool. Only limited count of chunks is processed ahead of the
+ * first unreported one and matches are reported to the listener in order of
+ * position.
+ *
+ * Optional search index can limit search to parts of data where matches
+ * can start.
+ *
+ * Searched data is read from multiple threads at once, so it must support
+ * concurrent reading and must not be modified during the search.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class BinarySearchEngine {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    @Nonnull
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public BinarySearchEngine() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates search engine.
+     *
+     * @param pool pool for search tasks
+     * @param chunkSize size of data processed by single task in bytes
+     */
+    public BinarySearchEngine(@Nonnull ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Starts search in whole data.
+     *
+     * @param data searched data
+     * @param matcher matcher
+     * @param listener listener for results
+     * @return search task
+     */
+    @Nonnull
+    public SearchTask search(@Nonnull BinaryData data, @Nonnull SearchMatcher matcher, @Nonnull SearchListener listener) {
+        return search(data, 0, data.getDataSize(), matcher, listener);
+    }
+
+    /**
+     * Starts search in given range of data.
+     *
+     * Only matches entirely inside the range are reported.
+     *
+     * @param data searched data
+     * @param startPosition start position of the range
+     * @param endPosition end position of the range
+     * @param matcher matcher
+     * @param listener listener for results
+     * @return search task
+     */
+    @Nonnull
+    public SearchTask search(@Nonnull BinaryData data, long startPosition, long endPosition, @Nonnull SearchMatcher matcher, @Nonnull SearchListener listener) {
+        return search(data, startPosition, endPosition, matcher, listener, null);
+    }
+
+    /**
+     * Starts search in given range of data using index to skip parts of data
+     * which cannot contain any match.
+     *
+     * Only matches entirely inside the range are reported.
+     *
+     * @param data searched data
+     * @param startPosition start position of the range
+     * @param endPosition end position of the range
+     * @param matcher matcher
+     * @param listener listener for results
+     * @param index index of the searched data or null to search all data
+     * @return search task
+     */
+    @Nonnull
+    public SearchTask search(@Nonnull BinaryData data, long startPosition, long endPosition, @Nonnull SearchMatcher matcher, @Nonnull SearchListener listener, @Nullable SearchIndex index) {
+        if (startPosition < 0 || endPosition < startPosition || endPosition > data.getDataSize()) {
+            throw new IllegalArgumentException("Invalid search range");
+        }
+
+        SearchTask task = new SearchTask(startPosition, endPosition);
+        long[] candidateRanges = index == null ? null : index.findCandidateRanges(matcher);
+        long[] ranges = candidateRanges == null
+                ? new long[]{startPosition, endPosition}
+                : computeSearchedRanges(candidateRanges, startPosition, endPosition, matcher.getMaximumMatchLength());
+        pool.execute(new SearchCoordinator(data, matcher, listener, task, ranges));
+        return task;
+    }
+
+    /**
+     * Converts ranges of candidate match starts to merged ranges of data
+     * containing whole candidate matches.
+     */
+    @Nonnull
+    private static long[] computeSearchedRanges(@Nonnull long[] candidateRanges, long startPosition, long endPosition, int maximumMatchLength) {
+        long[] ranges = new long[candidateRanges.length];
+        int rangesLength = 0;
+        for (int i = 0; i < candidateRanges.length; i += 2) {
+            long rangeStart = Math.max(candidateRanges[i], startPosition);
+            long rangeEnd = Math.min(candidateRanges[i + 1] + maximumMatchLength - 1, endPosition);
+            if (rangeStart >= rangeEnd || rangeStart >= candidateRanges[i + 1]) {
+                continue;
+            }
+
+            if (rangesLength > 0 && rangeStart <= ranges[rangesLength - 1]) {
+                ranges[rangesLength - 1] = Math.max(ranges[rangesLength - 1], rangeEnd);
+            } else {
+                ranges[rangesLength++] = rangeStart;
+                ranges[rangesLength++] = rangeEnd;
+            }
+        }
+        return Arrays.copyOf(ranges, rangesLength);
+    }
+
+    /**
+     * Task forking chunk searches and reporting their results in order.
+     */
+    private class SearchCoordinator extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nonnull
+        private final BinaryData data;
+        @Nonnull
+        private final SearchMatcher matcher;
+        @Nonnull
+        private final SearchListener listener;
+        @Nonnull
+        private final SearchTask task;
+        /**
+         * Ordered pairs of start and end positions of searched ranges.
+         */
+        @Nonnull
+        private final long[] ranges;
+
+        SearchCoordinator(@Nonnull BinaryData data, @Nonnull SearchMatcher matcher, @Nonnull SearchListener listener, @Nonnull SearchTask task, @Nonnull long[] ranges) {
+            this.data = data;
+            this.matcher = matcher;
+            this.listener = listener;
+            this.task = task;
+            this.ranges = ranges;
+        }
+
+        @Override
+        protected void compute() {
+            int pendingLimit = Math.max(2, pool.getParallelism() * 2);
+            Deque<ChunkSearch> pendingChunks = new ArrayDeque<>();
+            int rangeIndex = 0;
+            long nextPosition = ranges.length > 0 ? ranges[0] : 0;
+            try {
+                while (!task.isCancelled()) {
+                    while (pendingChunks.size() < pendingLimit && rangeIndex < ranges.length) {
+                        long rangeEndPosition = ranges[rangeIndex + 1];
+                        long chunkEndPosition = nextPosition + Math.min(chunkSize, rangeEndPosition - nextPosition);
+                        ChunkSearch chunk = new ChunkSearch(data, matcher, task, nextPosition, chunkEndPosition, rangeEndPosition);
+                        chunk.fork();
+                        pendingChunks.add(chunk);
+                        nextPosition = chunkEndPosition;
+                        if (nextPosition == rangeEndPosition) {
+                            rangeIndex += 2;
+                            if (rangeIndex < ranges.length) {
+                                nextPosition = ranges[rangeIndex];
+                            }
+                        }
+                    }
+
+                    ChunkSearch chunk = pendingChunks.poll();
+                    if (chunk == null) {
+                        task.chunkSearched(task.getEndPosition());
+                        break;
+                    }
+
+                    SearchMatches matches = chunk.join();
+                    if (!task.reportMatches(listener, chunk.chunkEndPosition, matches)) {
+                        break;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                task.fail(ex);
+            } finally {
+                for (ChunkSearch chunk : pendingChunks) {
+                    chunk.cancel(false);
+                }
+                try {
+                    listener.searchFinished(task);
+                } finally {
+                    task.finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Task searching single chunk of data.
+     */
+    private static class ChunkSearch extends RecursiveTask<SearchMatches> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nonnull
+        private final BinaryData data;
+        @Nonnull
+        private final SearchMatcher matcher;
+        @Nonnull
+        private final SearchTask task;
+        private final long chunkStartPosition;
+        private final long chunkEndPosition;
+        private final long rangeEndPosition;
+
+        ChunkSearch(@Nonnull BinaryData data, @Nonnull SearchMatcher matcher, @Nonnull SearchTask task, long chunkStartPosition, long chunkEndPosition, long rangeEndPosition) {
+            this.data = data;
+            this.matcher = matcher;
+            this.task = task;
+            this.chunkStartPosition = chunkStartPosition;
+            this.chunkEndPosition = chunkEndPosition;
+            this.rangeEndPosition = rangeEndPosition;
+        }
+
+        @Nonnull
+        @Override
+        protected SearchMatches compute() {
+            SearchMatches matches = new SearchMatches();
+            if (task.isCancelled()) {
+                return matches;
+            }
+
+            int leadInLength = (int) Math.min(matcher.getLeadInLength(), chunkStartPosition);
+            long bufferPosition = chunkStartPosition - leadInLength;
+            int startLimit = (int) (chunkEndPosition - bufferPosition);
+            int overlap = matcher.getMaximumMatchLength() - 1;
+            int bufferLength = (int) Math.min((long) startLimit + overlap, rangeEndPosition - bufferPosition);
+            byte[] buffer = new byte[bufferLength];
+            data.copyToArray(bufferPosition, buffer, 0, bufferLength);
+            if (leadInLength == 0) {
+                matcher.findMatches(buffer, startLimit, bufferLength, bufferPosition, matches);
+                return matches;
+            }
+
+            // Drop matches starting in lead-in, they belong to previous chunk
+            SearchMatches bufferMatches = new SearchMatches();
+            matcher.findMatches(buffer, startLimit, bufferLength, bufferPosition, bufferMatches);
+            for (int i = 0; i < bufferMatches.getCount(); i++) {
+                if (bufferMatches.getPosition(i) >= chunkStartPosition) {
+                    matches.add(bufferMatches.getPosition(i), bufferMatches.getLength(i), bufferMatches.getPatternIndex(i));
+                }
+            }
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import org.exbin.bined.CodeAreaUtils;
+import org.exbin.bined.CodeType;
+
+/**
+ * Byte pattern with optional wildcards.
+ *
+ * Each byte of the pattern has mask of bits which has to match, so that
+ * both whole bytes and single nibbles can be left unspecified.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class BytePattern {
+
+    public static final char WILDCARD_CHAR = '?';
+
+    private static final int FULL_MASK = 0xff;
+
+    @Nonnull
+    private final byte[] values;
+    @Nonnull
+    private final byte[] masks;
+    private final boolean exact;
+
+    /**
+     * Creates pattern matching exactly given bytes.
+     *
+     * @param values bytes
+     */
+    public BytePattern(@Nonnull byte[] values) {
+        this(values, createFullMasks(values.length));
+    }
+
+    /**
+     * Creates pattern with masks of bits which has to match.
+     *
+     * @param values bytes
+     * @param masks masks of bits for each byte
+     */
+    public BytePattern(@Nonnull byte[] values, @Nonnull byte[] masks) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Pattern cannot be empty");
+        }
+        if (values.length != masks.length) {
+            throw new IllegalArgumentException("Count of masks must match count of values");
+        }
+
+        this.values = new byte[values.length];
+        this.masks = masks.clone();
+        boolean exactMasks = true;
+        for (int i = 0; i < values.length; i++) {
+            this.values[i] = (byte) (values[i] & masks[i]);
+            exactMasks &= (masks[i] & FULL_MASK) == FULL_MASK;
+        }
+        exact = exactMasks;
+    }
+
+    /**
+     * Parses pattern from hexadecimal string.
+     *
+     * Each byte is written as two hexadecimal digits and {@code ?} can be used
+     * instead of any digit to match any value of the nibble. Whitespace is
+     * ignored, for example {@code "4D 5A ?? ?? 50 45"} or {@code "4D5A3?"}.
+     *
+     * @param hexPattern hexadecimal pattern
+     * @return pattern
+     * @throws IllegalArgumentException if pattern is invalid
+     */
+    @Nonnull
+    public static BytePattern parseHex(@Nonnull String hexPattern) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < hexPattern.length(); i++) {
+            char digit = hexPattern.charAt(i);
+            if (!Character.isWhitespace(digit)) {
+                digits.append(digit);
+            }
+        }
+        if (digits.length() == 0 || digits.length() % 2 != 0) {
+            throw new IllegalArgumentException("Pattern must consist of pairs of hexadecimal digits");
+        }
+
+        int length = digits.length() / 2;
+        byte[] values = new byte[length];
+        byte[] masks = new byte[length];
+        for (int i = 0; i < length; i++) {
+            String code = digits.substring(i * 2, i * 2 + 2);
+            if (code.indexOf(WILDCARD_CHAR) < 0) {
+                values[i] = CodeAreaUtils.stringCodeToByte(code, CodeType.HEXADECIMAL);
+                masks[i] = (byte) FULL_MASK;
+            } else {
+                int value = 0;
+                int mask = 0;
+                for (int nibble = 0; nibble < 2; nibble++) {
+                    char digit = code.charAt(nibble);
+                    value <<= 4;
+                    mask <<= 4;
+                    if (digit != WILDCARD_CHAR) {
+                        value |= CodeAreaUtils.stringCodeToByte(String.valueOf(digit), CodeType.HEXADECIMAL);
+                        mask |= 0xf;
+                    }
+                }
+                values[i] = (byte) value;
+                masks[i] = (byte) mask;
+            }
+        }
+        return new BytePattern(values, masks);
+    }
+
+    public int getLength() {
+        return values.length;
+    }
+
+    /**
+     * Returns value of byte with unspecified bits cleared.
+     *
+     * @param index index of byte
+     * @return value
+     */
+    public byte getValue(int index) {
+        return values[index];
+    }
+
+    public byte getMask(int index) {
+        return masks[index];
+    }
+
+    /**
+     * Returns true if all bits of all bytes are specified.
+     *
+     * @return true for pattern without wildcards
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Returns true if given byte value matches byte of the pattern.
+     *
+     * @param index index of byte in pattern
+     * @param value byte value
+     * @return true if value matches
+     */
+    public boolean matches(int index, byte value) {
+        return (value & masks[index]) == values[index];
+    }
+
+    /**
+     * Returns true if pattern matches buffer at given offset.
+     *
+     * @param buffer buffer
+     * @param offset offset in buffer
+     * @return true if pattern matches
+     */
+    public boolean matchesAt(@Nonnull byte[] buffer, int offset) {
+        for (int i = values.length - 1; i >= 0; i--) {
+            if ((buffer[offset + i] & masks[i]) != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static byte[] createFullMasks(int length) {
+        byte[] masks = new byte[length];
+        Arrays.fill(masks, (byte) FULL_MASK);
+        return masks;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Matcher of single byte pattern using Boyer-Moore-Horspool algorithm.
+ *
+ * Shift table takes wildcards into account, so that patterns with masked
+ * bytes are matched in one pass as well. All occurrences are reported,
+ * including overlapping ones.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class BytePatternMatcher implements IndexableMatcher {
+
+    @Nonnull
+    private final BytePattern pattern;
+    @Nonnull
+    private final int[] shifts = new int[256];
+
+    public BytePatternMatcher(@Nonnull byte[] pattern) {
+        this(new BytePattern(pattern));
+    }
+
+    public BytePatternMatcher(@Nonnull BytePattern pattern) {
+        this.pattern = pattern;
+        int length = pattern.getLength();
+        int last = length - 1;
+        for (int value = 0; value < 256; value++) {
+            int shift = length;
+            for (int i = last - 1; i >= 0; i--) {
+                if (pattern.matches(i, (byte) value)) {
+                    shift = last - i;
+                    break;
+                }
+            }
+            shifts[value] = shift;
+        }
+    }
+
+    @Nonnull
+    public BytePattern getPattern() {
+        return pattern;
+    }
+
+    @Nonnull
+    @Override
+    public List<BytePattern> getMatchedPatterns() {
+        return Collections.singletonList(pattern);
+    }
+
+    @Override
+    public int getMaximumMatchLength() {
+        return pattern.getLength();
+    }
+
+    @Override
+    public int getLeadInLength() {
+        return 0;
+    }
+
+    @Override
+    public void findMatches(@Nonnull byte[] buffer, int startLimit, int bufferLength, long bufferPosition, @Nonnull SearchMatches matches) {
+        int length = pattern.getLength();
+        int last = length - 1;
+        int end = Math.min(startLimit, bufferLength - last);
+        int offset = 0;
+        while (offset < end) {
+            byte value = buffer[offset + last];
+            if (pattern.matches(last, value) && pattern.matchesAt(buffer, offset)) {
+                matches.add(bufferPosition + offset, length);
+            }
+            offset += shifts[value & 0xff];
+        }
+    }
+}
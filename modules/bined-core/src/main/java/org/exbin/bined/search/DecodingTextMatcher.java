@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import javax.annotation.Nonnull;
+
+/**
+ * Matcher of text decoding searched data.
+ *
+ * Used for multibyte charsets where encoded text can be found in the middle
+ * of other characters. Buffer is decoded in bulk first and decoded again
+ * character by character to find match offsets only if it contains the
+ * text.
+ *
+ * Decoding starts in lead-in before the searched part of data so that the
+ * decoder synchronizes with character boundaries before the first possible
+ * match. Match can still be missed when lead-in is not long enough for
+ * synchronization or when charset is stateful.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class DecodingTextMatcher implements SearchMatcher {
+
+    /**
+     * Count of bytes decoded before searched part of data.
+     */
+    public static final int LEAD_IN_LENGTH = 64;
+
+    @Nonnull
+    private final String text;
+    @Nonnull
+    private final Charset charset;
+    private final boolean matchCase;
+    private final int maximumMatchLength;
+
+    public DecodingTextMatcher(@Nonnull String text, @Nonnull Charset charset, boolean matchCase) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Text cannot be empty");
+        }
+
+        this.text = text;
+        this.charset = charset;
+        this.matchCase = matchCase;
+        int maxBytesPerChar = charset.canEncode() ? (int) Math.ceil(charset.newEncoder().maxBytesPerChar()) : 4;
+        maximumMatchLength = text.length() * maxBytesPerChar;
+    }
+
+    @Override
+    public int getMaximumMatchLength() {
+        return maximumMatchLength;
+    }
+
+    @Override
+    public int getLeadInLength() {
+        return LEAD_IN_LENGTH;
+    }
+
+    @Override
+    public void findMatches(@Nonnull byte[] buffer, int startLimit, int bufferLength, long bufferPosition, @Nonnull SearchMatches matches) {
+        CharsetDecoder decoder = createDecoder();
+        CharBuffer decoded;
+        try {
+            decoded = decoder.decode(ByteBuffer.wrap(buffer, 0, bufferLength));
+        } catch (CharacterCodingException ex) {
+            throw new IllegalStateException("Unexpected decoding failure", ex);
+        }
+        if (!containsText(decoded.toString())) {
+            return;
+        }
+
+        // Decode again character by character to get offsets of characters
+        decoder.reset();
+        char[] characters = new char[bufferLength];
+        int[] offsets = new int[bufferLength + 1];
+        int charactersCount = 0;
+        ByteBuffer input = ByteBuffer.wrap(buffer, 0, bufferLength);
+        CharBuffer output = CharBuffer.allocate(2);
+        while (input.hasRemaining()) {
+            int offset = input.position();
+            output.clear();
+            output.limit(1);
+            CoderResult result = decoder.decode(input, output, false);
+            if (result.isOverflow() && output.position() == 0) {
+                output.limit(2);
+                decoder.decode(input, output, false);
+            }
+            if (input.position() == offset) {
+                break;
+            }
+
+            for (int i = 0; i < output.position() && charactersCount < characters.length; i++) {
+                characters[charactersCount] = output.get(i);
+                offsets[charactersCount] = offset;
+                charactersCount++;
+            }
+        }
+        offsets[charactersCount] = input.position();
+
+        String text = new String(characters, 0, charactersCount);
+        int textLength = this.text.length();
+        for (int index = 0; index + textLength <= charactersCount && offsets[index] < startLimit; index++) {
+            if (text.regionMatches(!matchCase, index, this.text, 0, textLength)
+                    && (index == 0 || offsets[index] != offsets[index - 1])) {
+                matches.add(bufferPosition + offsets[index], offsets[index + textLength] - offsets[index]);
+            }
+        }
+    }
+
+    /**
+     * Quickly checks whether decoded text contains searched text anywhere.
+     */
+    private boolean containsText(@Nonnull String decoded) {
+        int textLength = text.length();
+        char firstChar = text.charAt(0);
+        char firstUpperChar = Character.toUpperCase(firstChar);
+        char firstFoldedChar = Character.toLowerCase(firstUpperChar);
+        for (int index = 0; index + textLength <= decoded.length(); index++) {
+            char character = decoded.charAt(index);
+            if (character != firstChar) {
+                if (matchCase) {
+                    continue;
+                }
+
+                char upperChar = Character.toUpperCase(character);
+                if (upperChar != firstUpperChar && Character.toLowerCase(upperChar) != firstFoldedChar) {
+                    continue;
+                }
+            }
+
+            if (decoded.regionMatches(!matchCase, index, text, 0, textLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private CharsetDecoder createDecoder() {
+        CharsetDecoder decoder = charset.newDecoder();
+        decoder.onMalformedInput(CodingErrorAction.REPLACE);
+        decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return decoder;
+    }
+}
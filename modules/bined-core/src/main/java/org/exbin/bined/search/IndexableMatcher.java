@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Matcher which can provide byte patterns of its matches for search
+ * indexes.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public interface IndexableMatcher extends SearchMatcher {
+
+    /**
+     * Returns byte patterns so that each match matches some of them.
+     *
+     * @return list of patterns
+     */
+    @Nonnull
+    List<BytePattern> getMatchedPatterns();
+}
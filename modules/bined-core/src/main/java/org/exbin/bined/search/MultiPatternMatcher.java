@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Matcher of multiple byte patterns at once using Aho-Corasick automaton.
+ *
+ * Automaton is built from the longest run of exact bytes of each pattern
+ * and patterns with wildcards are verified when their run is found, so that
+ * data is scanned only once regardless of count of patterns. Automaton uses
+ * full transition table taking 1 KiB per state, so it is suitable for up to
+ * tens of thousands of patterns.
+ *
+ * Matches report index of the pattern in the list of patterns.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class MultiPatternMatcher implements IndexableMatcher {
+
+    private static final int ALPHABET_SIZE = 256;
+    private static final int ROOT_STATE = 0;
+    private static final int STATE_SHIFT = 8;
+    private static final int OUTPUT_FLAG = 1;
+
+    @Nonnull
+    private final BytePattern[] patterns;
+    @Nonnull
+    private final int[] anchorEnds;
+    private final int maximumMatchLength;
+
+    @Nonnull
+    private int[] transitions;
+    @Nonnull
+    private int[][] outputs;
+    private int statesCount = 1;
+
+    public MultiPatternMatcher(@Nonnull List<BytePattern> patterns) {
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("At least one pattern is required");
+        }
+
+        this.patterns = patterns.toArray(new BytePattern[patterns.size()]);
+        anchorEnds = new int[this.patterns.length];
+        int estimatedStates = 1;
+        int maximumLength = 0;
+        for (BytePattern pattern : this.patterns) {
+            estimatedStates += pattern.getLength();
+            maximumLength = Math.max(maximumLength, pattern.getLength());
+        }
+        maximumMatchLength = maximumLength;
+        transitions = new int[estimatedStates * ALPHABET_SIZE];
+        outputs = new int[estimatedStates][];
+
+        for (int patternIndex = 0; patternIndex < this.patterns.length; patternIndex++) {
+            addAnchor(patternIndex);
+        }
+        buildFailureTransitions();
+    }
+
+    public int getPatternsCount() {
+        return patterns.length;
+    }
+
+    @Nonnull
+    public BytePattern getPattern(int patternIndex) {
+        return patterns[patternIndex];
+    }
+
+    @Nonnull
+    @Override
+    public List<BytePattern> getMatchedPatterns() {
+        return Collections.unmodifiableList(Arrays.asList(patterns));
+    }
+
+    @Override
+    public int getMaximumMatchLength() {
+        return maximumMatchLength;
+    }
+
+    @Override
+    public int getLeadInLength() {
+        return 0;
+    }
+
+    @Override
+    public void findMatches(@Nonnull byte[] buffer, int startLimit, int bufferLength, long bufferPosition, @Nonnull SearchMatches matches) {
+        int firstMatchIndex = matches.getCount();
+        int stateOffset = ROOT_STATE;
+        for (int offset = 0; offset < bufferLength; offset++) {
+            int transition = transitions[stateOffset | (buffer[offset] & 0xff)];
+            stateOffset = transition & ~OUTPUT_FLAG;
+            if (transition == stateOffset) {
+                continue;
+            }
+
+            for (int patternIndex : outputs[stateOffset >> STATE_SHIFT]) {
+                BytePattern pattern = patterns[patternIndex];
+                int start = offset + 1 - anchorEnds[patternIndex];
+                int length = pattern.getLength();
+                if (start < 0 || start >= startLimit || start + length > bufferLength) {
+                    continue;
+                }
+
+                if (pattern.isExact() || pattern.matchesAt(buffer, start)) {
+                    matches.add(bufferPosition + start, length, patternIndex);
+                }
+            }
+        }
+        matches.sortByPosition(firstMatchIndex);
+    }
+
+    /**
+     * Adds longest run of exact bytes of the pattern to the trie.
+     */
+    private void addAnchor(int patternIndex) {
+        BytePattern pattern = patterns[patternIndex];
+        int anchorStart = 0;
+        int anchorLength = 0;
+        int runStart = 0;
+        for (int i = 0; i <= pattern.getLength(); i++) {
+            if (i == pattern.getLength() || pattern.getMask(i) != (byte) 0xff) {
+                if (i - runStart > anchorLength) {
+                    anchorStart = runStart;
+                    anchorLength = i - runStart;
+                }
+                runStart = i + 1;
+            }
+        }
+        if (anchorLength == 0) {
+            throw new IllegalArgumentException("Pattern " + patternIndex + " has no exact byte");
+        }
+
+        int state = ROOT_STATE;
+        for (int i = anchorStart; i < anchorStart + anchorLength; i++) {
+            int transition = state * ALPHABET_SIZE + (pattern.getValue(i) & 0xff);
+            if (transitions[transition] == ROOT_STATE) {
+                transitions[transition] = statesCount++;
+            }
+            state = transitions[transition];
+        }
+        outputs[state] = appendOutputs(outputs[state], new int[]{patternIndex});
+        anchorEnds[patternIndex] = anchorStart + anchorLength;
+    }
+
+    /**
+     * Converts trie to automaton by filling missing transitions following
+     * failure links and merging outputs of suffix states.
+     */
+    private void buildFailureTransitions() {
+        int[] failures = new int[statesCount];
+        int[] breadthOrder = new int[statesCount];
+        int orderedCount = 1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int value = 0; value < ALPHABET_SIZE; value++) {
+            int child = transitions[value];
+            if (child != ROOT_STATE) {
+                queue.add(child);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            breadthOrder[orderedCount++] = state;
+            int failure = failures[state];
+            for (int value = 0; value < ALPHABET_SIZE; value++) {
+                int transition = state * ALPHABET_SIZE + value;
+                int child = transitions[transition];
+                int failureChild = transitions[failure * ALPHABET_SIZE + value];
+                if (child != ROOT_STATE) {
+                    failures[child] = failureChild;
+                    outputs[child] = appendOutputs(outputs[child], outputs[failureChild]);
+                    queue.add(child);
+                } else {
+                    transitions[transition] = failureChild;
+                }
+            }
+        }
+
+        encodeTransitions(breadthOrder);
+    }
+
+    /**
+     * Renumbers states in breadth-first order, so that the most often used
+     * shallow states share cache, and replaces target states of transitions
+     * with offsets of their rows flagged when target has outputs. Scanning
+     * then needs single table lookup per byte.
+     */
+    private void encodeTransitions(@Nonnull int[] breadthOrder) {
+        int[] stateIndexes = new int[statesCount];
+        for (int i = 0; i < statesCount; i++) {
+            stateIndexes[breadthOrder[i]] = i;
+        }
+
+        int[] encodedTransitions = new int[statesCount * ALPHABET_SIZE];
+        int[][] orderedOutputs = new int[statesCount][];
+        for (int i = 0; i < statesCount; i++) {
+            int state = breadthOrder[i];
+            orderedOutputs[i] = outputs[state];
+            for (int value = 0; value < ALPHABET_SIZE; value++) {
+                int target = transitions[state * ALPHABET_SIZE + value];
+                encodedTransitions[i * ALPHABET_SIZE + value] = (stateIndexes[target] << STATE_SHIFT) | (outputs[target] == null ? 0 : OUTPUT_FLAG);
+            }
+        }
+        transitions = encodedTransitions;
+        outputs = orderedOutputs;
+    }
+
+    @Nullable
+    private static int[] appendOutputs(@Nullable int[] outputs, @Nullable int[] addedOutputs) {
+        if (addedOutputs == null) {
+            return outputs;
+        }
+        if (outputs == null) {
+            return addedOutputs;
+        }
+
+        int[] result = Arrays.copyOf(outputs, outputs.length + addedOutputs.length);
+        System.arraycopy(addedOutputs, 0, result, outputs.length, addedOutputs.length);
+        return result;
+    }
+}
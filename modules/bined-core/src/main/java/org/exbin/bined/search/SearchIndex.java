@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Index of data which can limit search to parts where matches can start.
+ *
+ * Index must never exclude position where match starts.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public interface SearchIndex {
+
+    /**
+     * Returns ranges of positions where matches of given matcher can start.
+     *
+     * @param matcher matcher
+     * @return ordered pairs of start and end positions of non-overlapping
+     * ranges or null if index cannot limit the search for given matcher
+     */
+    @Nullable
+    long[] findCandidateRanges(@Nonnull SearchMatcher matcher);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Listener for search results.
+ *
+ * Methods are called from the search threads, but never concurrently.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public interface SearchListener {
+
+    /**
+     * Reports matches found in next part of the data.
+     *
+     * Batches are reported in order of position and no batch is reported
+     * after search was cancelled. Cancellation waits while batch is being
+     * reported, so listener must not wait for thread which might cancel the
+     * search.
+     *
+     * @param task search task
+     * @param matches matches ordered by position
+     */
+    void matchesFound(@Nonnull SearchTask task, @Nonnull SearchMatches matches);
+
+    /**
+     * Reports end of search either completed, cancelled or failed.
+     *
+     * @param task search task
+     */
+    void searchFinished(@Nonnull SearchTask task);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Matcher of byte patterns in data buffer.
+ *
+ * Matcher is used from multiple threads at once and must not keep any
+ * mutable state.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public interface SearchMatcher {
+
+    /**
+     * Returns maximum length of single match.
+     *
+     * Buffers passed to matcher overlap by this length minus one so that no
+     * match crossing buffers boundary is missed.
+     *
+     * @return length in bytes
+     */
+    int getMaximumMatchLength();
+
+    /**
+     * Returns count of bytes preceding searched part of data which matcher
+     * needs to correctly recognize matches at its start.
+     *
+     * Buffers passed to matcher start by up to this count of bytes before
+     * searched part and matches starting in them are ignored.
+     *
+     * @return length in bytes
+     */
+    int getLeadInLength();
+
+    /**
+     * Finds all matches starting in given part of the buffer.
+     *
+     * Matches are added in order of their position.
+     *
+     * @param buffer data buffer
+     * @param startLimit only matches starting before this offset are reported
+     * @param bufferLength length of valid data in buffer
+     * @param bufferPosition position of the buffer start in searched data
+     * @param matches target matches
+     */
+    void findMatches(@Nonnull byte[] buffer, int startLimit, int bufferLength, long bufferPosition, @Nonnull SearchMatches matches);
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Growable list of search matches stored in primitive arrays.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SearchMatches {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    @Nonnull
+    private long[] positions = new long[INITIAL_CAPACITY];
+    @Nonnull
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    @Nonnull
+    private int[] patternIndexes = new int[INITIAL_CAPACITY];
+    private int count = 0;
+
+    public void add(long position, int length) {
+        add(position, length, 0);
+    }
+
+    /**
+     * Adds match.
+     *
+     * @param position position of match
+     * @param length length of match
+     * @param patternIndex index of matched pattern for multiple patterns
+     * search
+     */
+    public void add(long position, int length, int patternIndex) {
+        if (count == positions.length) {
+            int capacity = count * 2;
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            patternIndexes = Arrays.copyOf(patternIndexes, capacity);
+        }
+        positions[count] = position;
+        lengths[count] = length;
+        patternIndexes[count] = patternIndex;
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getPosition(int index) {
+        checkIndex(index);
+        return positions[index];
+    }
+
+    public int getLength(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    public int getPatternIndex(int index) {
+        checkIndex(index);
+        return patternIndexes[index];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Sorts matches starting from given index by position.
+     *
+     * Matches with the same position keep their order. Positions of sorted
+     * matches must not differ by more than integer range.
+     *
+     * @param fromIndex index of first sorted match
+     */
+    /* package */ void sortByPosition(int fromIndex) {
+        int sortedCount = count - fromIndex;
+        if (sortedCount < 2) {
+            return;
+        }
+
+        long basePosition = Long.MAX_VALUE;
+        boolean sorted = true;
+        for (int i = fromIndex; i < count; i++) {
+            basePosition = Math.min(basePosition, positions[i]);
+            sorted &= i == fromIndex || positions[i - 1] <= positions[i];
+        }
+        if (sorted) {
+            return;
+        }
+
+        long[] keys = new long[sortedCount];
+        for (int i = 0; i < sortedCount; i++) {
+            keys[i] = ((positions[fromIndex + i] - basePosition) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        long[] sortedPositions = new long[sortedCount];
+        int[] sortedLengths = new int[sortedCount];
+        int[] sortedPatternIndexes = new int[sortedCount];
+        for (int i = 0; i < sortedCount; i++) {
+            int source = fromIndex + (int) keys[i];
+            sortedPositions[i] = positions[source];
+            sortedLengths[i] = lengths[source];
+            sortedPatternIndexes[i] = patternIndexes[source];
+        }
+        System.arraycopy(sortedPositions, 0, positions, fromIndex, sortedCount);
+        System.arraycopy(sortedLengths, 0, lengths, fromIndex, sortedCount);
+        System.arraycopy(sortedPatternIndexes, 0, patternIndexes, fromIndex, sortedCount);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Invalid match index " + index);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Store of search matches ordered by position.
+ *
+ * Matches are kept in primitive arrays, so that millions of matches can be
+ * stored, and are looked up by binary search.
+ *
+ * Store is not thread safe.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SearchMatchesStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    @Nonnull
+    private long[] positions = new long[INITIAL_CAPACITY];
+    @Nonnull
+    private long[] lengths = new long[INITIAL_CAPACITY];
+    private int count = 0;
+    private long maximumLength = 0;
+
+    /**
+     * Appends match.
+     *
+     * @param position position of match, not lower than position of the
+     * last match
+     * @param length length of match
+     */
+    public void add(long position, long length) {
+        if (count > 0 && position < positions[count - 1]) {
+            throw new IllegalArgumentException("Matches must be added in order of position");
+        }
+        if (length <= 0) {
+            throw new IllegalArgumentException("Length of match must be positive");
+        }
+
+        ensureCapacity(count + 1);
+        positions[count] = position;
+        lengths[count] = length;
+        count++;
+        maximumLength = Math.max(maximumLength, length);
+    }
+
+    /**
+     * Appends all matches found by search.
+     *
+     * @param matches matches ordered by position
+     */
+    public void addAll(@Nonnull SearchMatches matches) {
+        ensureCapacity(count + matches.getCount());
+        for (int i = 0; i < matches.getCount(); i++) {
+            add(matches.getPosition(i), matches.getLength(i));
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getPosition(int index) {
+        checkIndex(index);
+        return positions[index];
+    }
+
+    public long getLength(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    public void clear() {
+        positions = new long[INITIAL_CAPACITY];
+        lengths = new long[INITIAL_CAPACITY];
+        count = 0;
+        maximumLength = 0;
+    }
+
+    /**
+     * Releases unused capacity of the store.
+     */
+    public void trimToSize() {
+        if (positions.length > count) {
+            positions = Arrays.copyOf(positions, count);
+            lengths = Arrays.copyOf(lengths, count);
+        }
+    }
+
+    /**
+     * Returns index of the first match which ends after given position.
+     *
+     * @param position position in data
+     * @return index of match or count of matches if there is no such match
+     */
+    public int findFirstMatchEndingAfter(long position) {
+        long startPosition = maximumLength > position ? Long.MIN_VALUE : position - maximumLength + 1;
+        int index = findFirstMatchStartingFrom(startPosition);
+        while (index < count && positions[index] <= position && positions[index] + lengths[index] <= position) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns index of the first match which starts at given position or
+     * later.
+     *
+     * @param position position in data
+     * @return index of match or count of matches if there is no such match
+     */
+    public int findFirstMatchStartingFrom(long position) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            int newCapacity = Math.max(capacity, positions.length + (positions.length >> 1));
+            positions = Arrays.copyOf(positions, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Invalid match index " + index);
+        }
+    }
+}
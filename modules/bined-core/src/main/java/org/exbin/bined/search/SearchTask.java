@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Running search which can be cancelled or waited for.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SearchTask {
+
+    private final long startPosition;
+    private final long endPosition;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    /**
+     * Lock making check for cancellation and reporting of matches atomic.
+     */
+    private final Object reportLock = new Object();
+    private volatile boolean cancelled = false;
+    private volatile long searchedPosition;
+    private volatile long matchesCount = 0;
+    @Nullable
+    private volatile RuntimeException failure = null;
+
+    /* package */ SearchTask(long startPosition, long endPosition) {
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+        searchedPosition = startPosition;
+    }
+
+    public long getStartPosition() {
+        return startPosition;
+    }
+
+    public long getEndPosition() {
+        return endPosition;
+    }
+
+    /**
+     * Requests search to stop.
+     *
+     * No more matches are reported to the listener after this call returns.
+     * If batch of matches is just being reported, this call waits until the
+     * listener processes it.
+     */
+    public void cancel() {
+        synchronized (reportLock) {
+            cancelled = true;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Returns position up to which all matches were already reported.
+     *
+     * @return position in data
+     */
+    public long getSearchedPosition() {
+        return searchedPosition;
+    }
+
+    /**
+     * Returns count of matches reported so far.
+     *
+     * @return count of matches
+     */
+    public long getMatchesCount() {
+        return matchesCount;
+    }
+
+    /**
+     * Returns exception which terminated the search.
+     *
+     * @return exception or null if search didn't fail
+     */
+    @Nullable
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits for search to finish including notification of the listener.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void waitFor() throws InterruptedException {
+        finished.await();
+    }
+
+    /**
+     * Waits for search to finish at most given time.
+     *
+     * @param timeout maximum time to wait
+     * @param unit time unit of timeout
+     * @return true if search finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * Reports matches of the searched chunk to the listener unless search was
+     * cancelled.
+     *
+     * @param listener listener
+     * @param chunkEndPosition end position of the searched chunk
+     * @param matches matches found in the chunk
+     * @return true if matches were reported, false if search was cancelled
+     */
+    /* package */ boolean reportMatches(@Nonnull SearchListener listener, long chunkEndPosition, @Nonnull SearchMatches matches) {
+        synchronized (reportLock) {
+            if (cancelled) {
+                return false;
+            }
+
+            searchedPosition = chunkEndPosition;
+            matchesCount += matches.getCount();
+            if (!matches.isEmpty()) {
+                listener.matchesFound(this, matches);
+            }
+            return true;
+        }
+    }
+
+    /* package */ void chunkSearched(long chunkEndPosition) {
+        searchedPosition = chunkEndPosition;
+    }
+
+    /* package */ void fail(@Nonnull RuntimeException failure) {
+        this.failure = failure;
+        synchronized (reportLock) {
+            cancelled = true;
+        }
+    }
+
+    /* package */ void finish() {
+        finished.countDown();
+    }
+}
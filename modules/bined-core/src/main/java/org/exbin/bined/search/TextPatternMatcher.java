@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Matcher of text encoded in given charset.
+ *
+ * Text is encoded only once and each character is matched as any of the
+ * encodings of its case variants, so that text is searched as fast as
+ * bytes. Horspool shift table is computed from the sets of bytes allowed
+ * at each position of the pattern. Only variants with the same encoded
+ * length as the original character are taken into account.
+ *
+ * Matching of encoded bytes is used for single byte charsets and Unicode
+ * transformation formats. Text in other charsets is searched by
+ * {@link DecodingTextMatcher}.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class TextPatternMatcher implements SearchMatcher {
+
+    private static final int SET_WORDS = 4;
+
+    private final int length;
+    @Nonnull
+    private final long[] byteSets;
+    @Nonnull
+    private final int[] shifts = new int[256];
+    /**
+     * Encoded variants of each character or null if sets of bytes are
+     * sufficient for matching.
+     */
+    @Nullable
+    private final byte[][][] characterVariants;
+
+    private TextPatternMatcher(@Nonnull List<byte[][]> characters) {
+        int patternLength = 0;
+        boolean ambiguousSets = false;
+        for (byte[][] variants : characters) {
+            patternLength += variants[0].length;
+            ambiguousSets |= variants.length > 1 && variants[0].length > 1;
+        }
+        length = patternLength;
+        byteSets = new long[length * SET_WORDS];
+        int offset = 0;
+        for (byte[][] variants : characters) {
+            for (byte[] variant : variants) {
+                for (int i = 0; i < variant.length; i++) {
+                    int value = variant[i] & 0xff;
+                    byteSets[(offset + i) * SET_WORDS + (value >> 6)] |= 1L << (value & 63);
+                }
+            }
+            offset += variants[0].length;
+        }
+        characterVariants = ambiguousSets ? characters.toArray(new byte[characters.size()][][]) : null;
+
+        int last = length - 1;
+        for (int value = 0; value < 256; value++) {
+            int shift = length;
+            for (int i = last - 1; i >= 0; i--) {
+                if (containsByte(i, value)) {
+                    shift = last - i;
+                    break;
+                }
+            }
+            shifts[value] = shift;
+        }
+    }
+
+    /**
+     * Creates matcher for text in given charset.
+     *
+     * @param text searched text
+     * @param charset charset of the data
+     * @param matchCase true if case of characters has to match
+     * @return matcher
+     * @throws IllegalArgumentException if text is empty or cannot be encoded
+     */
+    @Nonnull
+    public static SearchMatcher createMatcher(@Nonnull String text, @Nonnull Charset charset, boolean matchCase) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Text cannot be empty");
+        }
+        if (!isByteSearchable(charset)) {
+            return new DecodingTextMatcher(text, charset, matchCase);
+        }
+
+        CharsetEncoder encoder = getEncodingCharset(charset).newEncoder();
+        encoder.onMalformedInput(CodingErrorAction.REPORT);
+        encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+        List<byte[][]> characters = new ArrayList<>();
+        boolean singleVariants = true;
+        int offset = 0;
+        while (offset < text.length()) {
+            int codePoint = text.codePointAt(offset);
+            offset += Character.charCount(codePoint);
+            byte[] encoded = encode(encoder, codePoint);
+            if (encoded == null) {
+                throw new IllegalArgumentException("Text cannot be encoded in charset " + charset.name());
+            }
+
+            List<byte[]> variants = new ArrayList<>();
+            variants.add(encoded);
+            if (!matchCase) {
+                addVariant(variants, encode(encoder, Character.toLowerCase(codePoint)));
+                addVariant(variants, encode(encoder, Character.toUpperCase(codePoint)));
+                addVariant(variants, encode(encoder, Character.toTitleCase(codePoint)));
+            }
+            singleVariants &= variants.size() == 1;
+            characters.add(variants.toArray(new byte[variants.size()][]));
+        }
+
+        if (singleVariants) {
+            ByteBuffer pattern = ByteBuffer.allocate(text.length() * (int) Math.ceil(encoder.maxBytesPerChar()));
+            for (byte[][] variants : characters) {
+                pattern.put(variants[0]);
+            }
+            return new BytePatternMatcher(Arrays.copyOf(pattern.array(), pattern.position()));
+        }
+        return new TextPatternMatcher(characters);
+    }
+
+    /**
+     * Returns true if text in given charset can be searched as encoded bytes.
+     *
+     * @param charset charset
+     * @return true for single byte charsets and Unicode transformation formats
+     */
+    public static boolean isByteSearchable(@Nonnull Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        String name = charset.name();
+        return charset.newEncoder().maxBytesPerChar() <= 1
+                || StandardCharsets.UTF_8.equals(charset)
+                || name.startsWith("UTF-16")
+                || name.startsWith("UTF-32");
+    }
+
+    @Override
+    public int getMaximumMatchLength() {
+        return length;
+    }
+
+    @Override
+    public int getLeadInLength() {
+        return 0;
+    }
+
+    @Override
+    public void findMatches(@Nonnull byte[] buffer, int startLimit, int bufferLength, long bufferPosition, @Nonnull SearchMatches matches) {
+        int last = length - 1;
+        int end = Math.min(startLimit, bufferLength - last);
+        int offset = 0;
+        while (offset < end) {
+            int value = buffer[offset + last] & 0xff;
+            if (containsByte(last, value) && matchesAt(buffer, offset)) {
+                matches.add(bufferPosition + offset, length);
+            }
+            offset += shifts[value];
+        }
+    }
+
+    private boolean containsByte(int index, int value) {
+        return (byteSets[index * SET_WORDS + (value >> 6)] & (1L << (value & 63))) != 0;
+    }
+
+    private boolean matchesAt(@Nonnull byte[] buffer, int offset) {
+        for (int i = length - 2; i >= 0; i--) {
+            if (!containsByte(i, buffer[offset + i] & 0xff)) {
+                return false;
+            }
+        }
+
+        if (characterVariants != null) {
+            int characterOffset = offset;
+            for (byte[][] variants : characterVariants) {
+                if (!matchesAnyVariant(buffer, characterOffset, variants)) {
+                    return false;
+                }
+                characterOffset += variants[0].length;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesAnyVariant(@Nonnull byte[] buffer, int offset, @Nonnull byte[][] variants) {
+        for (byte[] variant : variants) {
+            int i = 0;
+            while (i < variant.length && buffer[offset + i] == variant[i]) {
+                i++;
+            }
+            if (i == variant.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addVariant(@Nonnull List<byte[]> variants, @Nullable byte[] variant) {
+        if (variant == null || variant.length != variants.get(0).length) {
+            return;
+        }
+
+        for (byte[] existingVariant : variants) {
+            if (Arrays.equals(existingVariant, variant)) {
+                return;
+            }
+        }
+        variants.add(variant);
+    }
+
+    @Nullable
+    private static byte[] encode(@Nonnull CharsetEncoder encoder, int codePoint) {
+        try {
+            ByteBuffer encoded = encoder.encode(CharBuffer.wrap(Character.toChars(codePoint)));
+            byte[] result = new byte[encoded.remaining()];
+            encoded.get(result);
+            return result;
+        } catch (CharacterCodingException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns charset which encodes characters without byte order mark.
+     */
+    @Nonnull
+    private static Charset getEncodingCharset(@Nonnull Charset charset) {
+        switch (charset.name()) {
+            case "UTF-16":
+                return StandardCharsets.UTF_16BE;
+            case "UTF-32":
+                return Charset.forName("UTF-32BE");
+            default:
+                return charset;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.exbin.utils.binary_data.ByteArrayData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for binary search engine.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class BinarySearchEngineTest {
+
+    private static final int SEARCH_TIMEOUT = 30;
+
+    public BinarySearchEngineTest() {
+    }
+
+    @Test
+    public void testBytePatternSearch() throws InterruptedException {
+        byte[] data = createData(100000);
+        byte[] pattern = {5, 6, 5};
+        for (int position = 10; position < data.length - 3; position += 997) {
+            System.arraycopy(pattern, 0, data, position, pattern.length);
+        }
+        data[50] = 5;
+        data[51] = 6;
+        data[52] = 5;
+        data[53] = 6;
+        data[54] = 5;
+
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(4), 1000);
+        CollectingListener listener = new CollectingListener();
+        SearchTask task = engine.search(new ByteArrayData(data), new BytePatternMatcher(pattern), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+
+        List<Long> expected = findMatches(data, pattern, 0, data.length);
+        Assert.assertNull(task.getFailure());
+        Assert.assertTrue(listener.finished);
+        Assert.assertEquals(expected, listener.positions);
+        Assert.assertEquals(expected.size(), task.getMatchesCount());
+        Assert.assertEquals(data.length, task.getSearchedPosition());
+
+        listener = new CollectingListener();
+        task = engine.search(new ByteArrayData(data), 51, 3001, new BytePatternMatcher(pattern), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(findMatches(data, pattern, 51, 3001), listener.positions);
+    }
+
+    @Test
+    public void testCancelSearch() throws InterruptedException {
+        byte[] data = new byte[1000000];
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(2), 100);
+        CollectingListener listener = new CollectingListener() {
+            @Override
+            public void matchesFound(@Nonnull SearchTask task, @Nonnull SearchMatches matches) {
+                super.matchesFound(task, matches);
+                task.cancel();
+            }
+        };
+        SearchTask task = engine.search(new ByteArrayData(data), new BytePatternMatcher(new byte[]{0, 0}), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertTrue(task.isCancelled());
+        Assert.assertTrue(listener.finished);
+        Assert.assertEquals(100, listener.positions.size());
+        Assert.assertEquals(100, task.getSearchedPosition());
+    }
+
+    @Test
+    public void testWildcardPatternSearch() throws InterruptedException {
+        BytePattern pattern = BytePattern.parseHex("4D 5a ?? ??50 4?");
+        Assert.assertEquals(6, pattern.getLength());
+        Assert.assertFalse(pattern.isExact());
+        Assert.assertEquals((byte) 0x4d, pattern.getValue(0));
+        Assert.assertEquals((byte) 0x00, pattern.getMask(2));
+        Assert.assertEquals((byte) 0xf0, pattern.getMask(5));
+
+        byte[] data = createData(50000);
+        byte[] header = {0x4d, 0x5a, 0x00, 0x00, 0x50, 0x45};
+        for (int position = 3; position < data.length - header.length; position += 1777) {
+            System.arraycopy(header, 0, data, position, header.length);
+            data[position + 2] = (byte) position;
+            data[position + 5] = (byte) (0x40 + (position & 0xf));
+        }
+
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(2), 1000);
+        CollectingListener listener = new CollectingListener();
+        SearchTask task = engine.search(new ByteArrayData(data), new BytePatternMatcher(pattern), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(findMatches(data, pattern, 0, data.length), listener.positions);
+        Assert.assertTrue(listener.positions.size() >= 28);
+
+        try {
+            BytePattern.parseHex("4D 5");
+            Assert.fail("Odd count of digits accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            BytePattern.parseHex("4G");
+            Assert.fail("Invalid digit accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMultiPatternSearch() throws InterruptedException {
+        byte[] data = createData(200000);
+        List<BytePattern> patterns = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            byte[] pattern = new byte[2 + random.nextInt(6)];
+            int position = random.nextInt(data.length - pattern.length);
+            System.arraycopy(data, position, pattern, 0, pattern.length);
+            patterns.add(new BytePattern(pattern));
+        }
+        patterns.add(new BytePattern(new byte[]{data[100]}));
+        patterns.add(new BytePattern(new byte[]{data[100], data[101]}));
+        patterns.add(BytePattern.parseHex("?? 00 ?0"));
+        patterns.add(BytePattern.parseHex("FF ?? ?? FF"));
+
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(3), 999);
+        CollectingListener listener = new CollectingListener();
+        SearchTask task = engine.search(new ByteArrayData(data), new MultiPatternMatcher(patterns), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertNull(task.getFailure());
+
+        List<Long> expected = new ArrayList<>();
+        for (int position = 0; position < data.length; position++) {
+            for (int patternIndex = 0; patternIndex < patterns.size(); patternIndex++) {
+                BytePattern pattern = patterns.get(patternIndex);
+                if (position + pattern.getLength() <= data.length && pattern.matchesAt(data, position)) {
+                    expected.add(((long) position << 8) | patternIndex);
+                }
+            }
+        }
+        List<Long> found = new ArrayList<>();
+        for (int i = 0; i < listener.positions.size(); i++) {
+            if (i > 0) {
+                Assert.assertTrue(listener.positions.get(i - 1) <= listener.positions.get(i));
+            }
+            found.add((listener.positions.get(i) << 8) | listener.patternIndexes.get(i));
+        }
+        Collections.sort(found);
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testTextSearch() throws InterruptedException {
+        Charset charset = StandardCharsets.UTF_16LE;
+        byte[] data = createData(30000);
+        String[] texts = {"Straße", "STRAßE", "strasse", "sTrAße", "Strasse"};
+        List<Long> expectedPositions = new ArrayList<>();
+        for (int i = 0; i < texts.length; i++) {
+            byte[] text = texts[i].getBytes(charset);
+            int position = 101 + i * 5001;
+            System.arraycopy(text, 0, data, position, text.length);
+            if (!texts[i].contains("ss")) {
+                expectedPositions.add((long) position);
+            }
+        }
+
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(2), 1000);
+        CollectingListener listener = new CollectingListener();
+        SearchTask task = engine.search(new ByteArrayData(data), TextPatternMatcher.createMatcher("straße", charset, false), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(expectedPositions, listener.positions);
+
+        listener = new CollectingListener();
+        task = engine.search(new ByteArrayData(data), TextPatternMatcher.createMatcher("Straße", charset, true), listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList(101L), listener.positions);
+    }
+
+    @Test
+    public void testDecodingTextSearch() throws InterruptedException {
+        Charset charset = Charset.forName("Shift_JIS");
+        Assert.assertFalse(TextPatternMatcher.isByteSearchable(charset));
+        Assert.assertTrue(TextPatternMatcher.isByteSearchable(StandardCharsets.UTF_8));
+        Assert.assertTrue(TextPatternMatcher.isByteSearchable(StandardCharsets.ISO_8859_1));
+
+        byte[] data = "xx\u65e5\u672cAbc \u672cabc \u65e5\u672cabc \u65e5\u672cABC".getBytes(charset);
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(2), 7);
+        CollectingListener listener = new CollectingListener();
+        SearchMatcher matcher = TextPatternMatcher.createMatcher("\u65e5\u672cabc", charset, false);
+        Assert.assertTrue(matcher instanceof DecodingTextMatcher);
+        SearchTask task = engine.search(new ByteArrayData(data), matcher, listener);
+        Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(2L, 16L, 24L), listener.positions);
+    }
+
+    @Test
+    public void testDecodingTextSearchChunkBoundaries() throws InterruptedException {
+        Charset charset = Charset.forName("Shift_JIS");
+        StringBuilder builder = new StringBuilder();
+        List<Long> expectedPositions = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            builder.append("\u8a9e\u8a9e\u8a9e");
+            expectedPositions.add((long) builder.toString().getBytes(charset).length);
+            builder.append("\u672cabc\u65e5");
+        }
+        byte[] data = builder.toString().getBytes(charset);
+        SearchMatcher matcher = TextPatternMatcher.createMatcher("\u672cabc", charset, true);
+        for (int chunkSize = 1; chunkSize < 12; chunkSize++) {
+            BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(2), chunkSize);
+            CollectingListener listener = new CollectingListener();
+            SearchTask task = engine.search(new ByteArrayData(data), matcher, listener);
+            Assert.assertTrue(task.waitFor(SEARCH_TIMEOUT, TimeUnit.SECONDS));
+            Assert.assertEquals(expectedPositions, listener.positions);
+        }
+    }
+
+    @Nonnull
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+
+    @Nonnull
+    private static List<Long> findMatches(@Nonnull byte[] data, @Nonnull byte[] pattern, int startPosition, int endPosition) {
+        return findMatches(data, new BytePattern(pattern), startPosition, endPosition);
+    }
+
+    @Nonnull
+    private static List<Long> findMatches(@Nonnull byte[] data, @Nonnull BytePattern pattern, int startPosition, int endPosition) {
+        List<Long> positions = new ArrayList<>();
+        for (int position = startPosition; position <= endPosition - pattern.getLength(); position++) {
+            boolean matches = true;
+            for (int i = 0; i < pattern.getLength(); i++) {
+                if (!pattern.matches(i, data[position + i])) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                positions.add((long) position);
+            }
+        }
+        return positions;
+    }
+
+    private static class CollectingListener implements SearchListener {
+
+        private final List<Long> positions = new ArrayList<>();
+        private final List<Integer> patternIndexes = new ArrayList<>();
+        private volatile boolean finished = false;
+
+        @Override
+        public void matchesFound(@Nonnull SearchTask task, @Nonnull SearchMatches matches) {
+            for (int i = 0; i < matches.getCount(); i++) {
+                positions.add(matches.getPosition(i));
+                patternIndexes.add(matches.getPatternIndex(i));
+            }
+        }
+
+        @Override
+        public void searchFinished(@Nonnull SearchTask task) {
+            finished = true;
+        }
+    }
+}
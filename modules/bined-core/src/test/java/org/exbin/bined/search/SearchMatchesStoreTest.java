@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for search matches store.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SearchMatchesStoreTest {
+
+    public SearchMatchesStoreTest() {
+    }
+
+    @Test
+    public void testFindMatches() {
+        SearchMatchesStore store = new SearchMatchesStore();
+        for (int i = 0; i < 1000; i++) {
+            store.add(i * 10L, 3);
+        }
+        store.add(10000, 100);
+        store.add(10050, 2);
+        Assert.assertEquals(1002, store.getCount());
+
+        Assert.assertEquals(0, store.findFirstMatchEndingAfter(0));
+        Assert.assertEquals(0, store.findFirstMatchEndingAfter(2));
+        Assert.assertEquals(1, store.findFirstMatchEndingAfter(3));
+        Assert.assertEquals(500, store.findFirstMatchEndingAfter(5002));
+        Assert.assertEquals(1000, store.findFirstMatchEndingAfter(9993));
+        Assert.assertEquals(1000, store.findFirstMatchEndingAfter(10060));
+        Assert.assertEquals(1002, store.findFirstMatchEndingAfter(10100));
+
+        Assert.assertEquals(501, store.findFirstMatchStartingFrom(5001));
+        Assert.assertEquals(1001, store.findFirstMatchStartingFrom(10001));
+        Assert.assertEquals(1002, store.findFirstMatchStartingFrom(20000));
+
+        SearchMatches matches = new SearchMatches();
+        matches.add(20000, 4);
+        matches.add(20001, 4);
+        store.addAll(matches);
+        Assert.assertEquals(1004, store.getCount());
+        Assert.assertEquals(20001, store.getPosition(1003));
+        Assert.assertEquals(4, store.getLength(1003));
+
+        try {
+            store.add(100, 1);
+            Assert.fail("Unordered match accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        store.clear();
+        Assert.assertTrue(store.isEmpty());
+        Assert.assertEquals(0, store.findFirstMatchEndingAfter(100));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import javax.annotation.Nonnull;
+import org.exbin.utils.binary_data.BinaryData;
+
+/**
+ * Read-only seekable byte channel over binary data.
+ *
+ * Data are copied to buffers with accessible array directly, other buffers
+ * are filled using intermediate array.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class BinaryDataChannel implements SeekableByteChannel {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Nonnull
+    private final BinaryData data;
+    private long position = 0;
+    private boolean open = true;
+
+    public BinaryDataChannel(@Nonnull BinaryData data) {
+        this.data = data;
+    }
+
+    @Override
+    public int read(@Nonnull ByteBuffer target) throws IOException {
+        checkOpen();
+        long dataSize = data.getDataSize();
+        if (position >= dataSize) {
+            return -1;
+        }
+
+        int length = (int) Math.min(target.remaining(), dataSize - position);
+        if (length == 0) {
+            return 0;
+        }
+
+        copyToBuffer(position, target, length);
+        position += length;
+        return length;
+    }
+
+    /**
+     * Copies data to given buffer.
+     *
+     * @param startFrom start position
+     * @param target target buffer, position is advanced by length
+     * @param length length of copied data
+     */
+    protected void copyToBuffer(long startFrom, @Nonnull ByteBuffer target, int length) {
+        if (target.hasArray()) {
+            int targetPosition = target.position();
+            data.copyToArray(startFrom, target.array(), target.arrayOffset() + targetPosition, length);
+            target.position(targetPosition + length);
+            return;
+        }
+
+        byte[] buffer = new byte[Math.min(length, BUFFER_SIZE)];
+        while (length > 0) {
+            int chunkLength = Math.min(length, buffer.length);
+            data.copyToArray(startFrom, buffer, 0, chunkLength);
+            target.put(buffer, 0, chunkLength);
+            startFrom += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
+    @Override
+    public int write(@Nonnull ByteBuffer source) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Nonnull
+    @Override
+    public BinaryDataChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position cannot be negative");
+        }
+
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return data.getDataSize();
+    }
+
+    @Nonnull
+    @Override
+    public BinaryDataChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
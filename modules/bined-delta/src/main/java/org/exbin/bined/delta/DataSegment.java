@@ -22,7 +22,7 @@ import org.exbin.bined.delta.list.DoublyLinkedItem;
 /**
  * Abstract data segment of delta data source.
  *
- * @version 0.2.0 2018/04/27
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public abstract class DataSegment implements DoublyLinkedItem<DataSegment> {
@@ -31,6 +31,8 @@ public abstract class DataSegment implements DoublyLinkedItem<DataSegment> {
     private DataSegment previous;
     @Nullable
     private DataSegment next;
+    @Nullable
+    private IndexedSegmentsList.TreeNode treeNode;
 
     public DataSegment() {
     }
@@ -57,6 +59,39 @@ public abstract class DataSegment implements DoublyLinkedItem<DataSegment> {
     @Nonnull
     public abstract DataSegment copy();
 
+    /**
+     * Notifies segments index about change of the segment length.
+     *
+     * Must be called by implementations whenever length changes.
+     */
+    protected void notifyLengthChanged() {
+        if (treeNode != null) {
+            treeNode.lengthChanged();
+        }
+    }
+
+    /**
+     * Notifies segments index about change of the data source or start
+     * position of the segment.
+     *
+     * Must be called by implementations whenever source or start position
+     * changes.
+     */
+    protected void notifyPositionChanged() {
+        if (treeNode != null) {
+            treeNode.positionChanged();
+        }
+    }
+
+    @Nullable
+    /* package */ IndexedSegmentsList.TreeNode getTreeNode() {
+        return treeNode;
+    }
+
+    /* package */ void setTreeNode(@Nullable IndexedSegmentsList.TreeNode treeNode) {
+        this.treeNode = treeNode;
+    }
+
     @Nullable
     @Override
     public DataSegment getNext() {
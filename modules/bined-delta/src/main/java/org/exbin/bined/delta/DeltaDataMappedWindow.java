@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Access window for delta data using memory mapped regions of the file.
+ *
+ * Regions are mapped lazily and only limited count of most recently used
+ * regions is kept. If file cannot be mapped, access is redirected to fallback
+ * page window.
+ *
+ * Dropped regions are unmapped by garbage collector. Before the file is
+ * truncated or replaced, regions are unmapped explicitly, as some platforms
+ * such as Windows don't allow it while file is mapped. If runtime doesn't
+ * support explicit unmapping, such operation can fail until regions are
+ * collected. Regions are pinned while data are copied from them, so that
+ * explicit unmapping waits for running copies.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class DeltaDataMappedWindow {
+
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_REGIONS = 16;
+
+    @Nonnull
+    private final FileDataSource data;
+    @Nonnull
+    private final DeltaDataPageWindow fallbackWindow;
+    private final int regionSize;
+    @Nonnull
+    private final Map<Long, MappedRegion> regions;
+    private boolean mappingAvailable = true;
+
+    private long lastRegionIndex = -1;
+    @Nullable
+    private MappedRegion lastRegion = null;
+
+    public DeltaDataMappedWindow(@Nonnull FileDataSource data, @Nonnull DeltaDataPageWindow fallbackWindow) {
+        this(data, fallbackWindow, DEFAULT_REGION_SIZE, DEFAULT_MAX_REGIONS);
+    }
+
+    public DeltaDataMappedWindow(@Nonnull FileDataSource data, @Nonnull DeltaDataPageWindow fallbackWindow, int regionSize, final int maxRegions) {
+        if (regionSize <= 0 || maxRegions <= 0) {
+            throw new IllegalArgumentException("Region size and count must be positive");
+        }
+
+        this.data = data;
+        this.fallbackWindow = fallbackWindow;
+        this.regionSize = regionSize;
+        regions = new LinkedHashMap<Long, MappedRegion>(maxRegions + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedRegion> eldest) {
+                return size() > maxRegions;
+            }
+        };
+        data.addCacheClearListener(new FileDataSource.CacheClearListener() {
+            @Override
+            public void clearCache() {
+                DeltaDataMappedWindow.this.clearCache();
+            }
+        });
+    }
+
+    public byte getByte(long position) {
+        long regionIndex = position / regionSize;
+        int offset = (int) (position % regionSize);
+        synchronized (this) {
+            // Single byte is read while holding the monitor instead of pinning
+            MappedRegion region = getRegion(regionIndex, offset);
+            if (region != null) {
+                return region.buffer.get(offset);
+            }
+        }
+
+        return fallbackWindow.getByte(position);
+    }
+
+    /**
+     * Copies data from mapped regions to given array.
+     *
+     * @param position source position
+     * @param target target array
+     * @param offset offset in target array
+     * @param length length of copied data
+     */
+    public void copyToArray(long position, @Nonnull byte[] target, int offset, int length) {
+        while (length > 0) {
+            long regionIndex = position / regionSize;
+            int regionOffset = (int) (position % regionSize);
+            int regionLength = regionSize - regionOffset;
+            if (regionLength > length) {
+                regionLength = length;
+            }
+
+            MappedRegion region = pinRegion(regionIndex, regionOffset + regionLength - 1);
+            if (region == null) {
+                fallbackWindow.copyToArray(position, target, offset, length);
+                return;
+            }
+
+            try {
+                ByteBuffer source = region.buffer.duplicate();
+                source.position(regionOffset);
+                source.get(target, offset, regionLength);
+            } finally {
+                releaseRegion(region);
+            }
+
+            position += regionLength;
+            offset += regionLength;
+            length -= regionLength;
+        }
+    }
+
+    /**
+     * Copies data from mapped regions to given buffer.
+     *
+     * Data are transferred from mapped region directly without intermediate
+     * array.
+     *
+     * @param position source position
+     * @param target target buffer
+     * @param length length of copied data
+     */
+    public void copyToBuffer(long position, @Nonnull ByteBuffer target, int length) {
+        while (length > 0) {
+            long regionIndex = position / regionSize;
+            int regionOffset = (int) (position % regionSize);
+            int regionLength = regionSize - regionOffset;
+            if (regionLength > length) {
+                regionLength = length;
+            }
+
+            MappedRegion region = pinRegion(regionIndex, regionOffset + regionLength - 1);
+            if (region == null) {
+                byte[] buffer = new byte[length];
+                fallbackWindow.copyToArray(position, buffer, 0, length);
+                target.put(buffer);
+                return;
+            }
+
+            try {
+                ByteBuffer source = region.buffer.duplicate();
+                source.position(regionOffset);
+                source.limit(regionOffset + regionLength);
+                target.put(source);
+            } finally {
+                releaseRegion(region);
+            }
+
+            position += regionLength;
+            length -= regionLength;
+        }
+    }
+
+    /**
+     * Returns region for given index with at least given offset available.
+     *
+     * @param regionIndex region index
+     * @param requiredOffset offset which must be accessible in region
+     * @return mapped region or null if mapping is not available
+     */
+    @Nullable
+    private synchronized MappedRegion getRegion(long regionIndex, int requiredOffset) {
+        if (!mappingAvailable) {
+            return null;
+        }
+
+        MappedRegion region;
+        if (regionIndex == lastRegionIndex) {
+            region = lastRegion;
+        } else {
+            region = regions.get(regionIndex);
+        }
+
+        if (region == null || region.buffer.limit() <= requiredOffset) {
+            // File might be extended since region was mapped
+            region = mapRegion(regionIndex);
+            if (region == null) {
+                return null;
+            }
+        }
+
+        lastRegionIndex = regionIndex;
+        lastRegion = region;
+        return region;
+    }
+
+    /**
+     * Returns region for given index pinned for copying of data.
+     *
+     * Pinned region has to be released by {@link #releaseRegion(MappedRegion)}.
+     *
+     * @param regionIndex region index
+     * @param requiredOffset offset which must be accessible in region
+     * @return mapped region or null if mapping is not available
+     */
+    @Nullable
+    private synchronized MappedRegion pinRegion(long regionIndex, int requiredOffset) {
+        MappedRegion region = getRegion(regionIndex, requiredOffset);
+        if (region != null) {
+            region.readers++;
+        }
+
+        return region;
+    }
+
+    private synchronized void releaseRegion(@Nonnull MappedRegion region) {
+        region.readers--;
+        if (region.readers == 0) {
+            // Wake up pending unmapping
+            notifyAll();
+        }
+    }
+
+    @Nullable
+    private MappedRegion mapRegion(long regionIndex) {
+        long regionPosition = regionIndex * regionSize;
+        try {
+            FileChannel channel = data.getAccessFile().getChannel();
+            long fileLength = channel.size();
+            if (regionPosition >= fileLength) {
+                throw new IndexOutOfBoundsException("Position is out of file");
+            }
+            long mappedLength = fileLength - regionPosition;
+            if (mappedLength > regionSize) {
+                mappedLength = regionSize;
+            }
+            MappedRegion region = new MappedRegion(channel.map(FileChannel.MapMode.READ_ONLY, regionPosition, mappedLength));
+            regions.put(regionIndex, region);
+            return region;
+        } catch (IOException | UnsupportedOperationException ex) {
+            Logger.getLogger(DeltaDataMappedWindow.class.getName()).log(Level.WARNING, "Unable to map file, switching to page window", ex);
+            mappingAvailable = false;
+            clearCache();
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if data are accessed via memory mapping.
+     *
+     * @return true if mapping is used, false for fallback to page window
+     */
+    public boolean isMappingAvailable() {
+        return mappingAvailable;
+    }
+
+    /**
+     * Clears window cache.
+     *
+     * Released regions are unmapped when garbage collected.
+     */
+    public synchronized void clearCache() {
+        regions.clear();
+        lastRegionIndex = -1;
+        lastRegion = null;
+    }
+
+    /**
+     * Clears window cache and unmaps released regions immediately.
+     *
+     * Waits until copies running from the released regions finish, regions
+     * of the cleared cache are no longer provided to new reads. If waiting is
+     * interrupted, remaining regions are left to garbage collector.
+     */
+    /* package */ synchronized void unmapRegions() {
+        List<MappedRegion> releasedRegions = new ArrayList<>(regions.values());
+        clearCache();
+        for (MappedRegion region : releasedRegions) {
+            try {
+                while (region.readers > 0) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (!unmapRegion(region.buffer)) {
+                Logger.getLogger(DeltaDataMappedWindow.class.getName()).log(Level.FINE, "Explicit unmapping is not supported, regions are released by garbage collector");
+                break;
+            }
+        }
+    }
+
+    /**
+     * Unmaps region using cleaner of the runtime.
+     *
+     * @param region mapped region, must not be accessed afterwards
+     * @return true if region was unmapped
+     */
+    private static boolean unmapRegion(@Nonnull MappedByteBuffer region) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                invokeCleaner.invoke(unsafeField.get(null), region);
+            } catch (NoSuchMethodException ex) {
+                // Java 8 provides cleaner directly by the buffer
+                Method cleanerMethod = region.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(region);
+                if (cleaner != null) {
+                    Method cleanMethod = cleaner.getClass().getMethod("clean");
+                    cleanMethod.setAccessible(true);
+                    cleanMethod.invoke(cleaner);
+                }
+            }
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Mapped region with count of running copies.
+     */
+    private static final class MappedRegion {
+
+        @Nonnull
+        final MappedByteBuffer buffer;
+        /**
+         * Count of copies running from the region, guarded by the window.
+         */
+        int readers = 0;
+
+        MappedRegion(@Nonnull MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -17,30 +17,54 @@ package org.exbin.bined.delta;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Access window for delta data.
  *
- * @version 0.2.0 2018/04/27
+ * Window keeps configurable count of pages of file data. Single window is
+ * shared by all segments and documents using the same file data source and
+ * it's thread safe, so that documents can be read concurrently.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDataPageWindow {
 
-    public static final int PAGE_SIZE = 1024;
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_PAGES_COUNT = 16;
 
     @Nonnull
     private final FileDataSource data;
+    private int pageSize;
+    @Nonnull
+    private EvictionPolicy evictionPolicy;
+    @Nonnull
+    private DataPage[] dataPages;
+    @Nonnull
+    private final Map<Long, DataPage> pagesMap = new HashMap<>();
+    @Nullable
+    private DataPage lastPage = null;
+    private long accessCounter = 0;
+    private int clockHand = 0;
+
     @Nonnull
-    private final DataPage[] dataPages = new DataPage[]{new DataPage(), new DataPage()};
-    private int activeDataPage = 1;
+    private final Statistics statistics = new Statistics();
 
     public DeltaDataPageWindow(@Nonnull FileDataSource data) {
+        this(data, DEFAULT_PAGE_SIZE, DEFAULT_PAGES_COUNT, EvictionPolicy.LRU);
+    }
+
+    public DeltaDataPageWindow(@Nonnull FileDataSource data, int pageSize, int pagesCount, @Nonnull EvictionPolicy evictionPolicy) {
         this.data = data;
-        dataPages[0].pageIndex = 0;
-        loadPage(0);
+        this.dataPages = new DataPage[0];
+        this.evictionPolicy = evictionPolicy;
+        setCacheParameters(pageSize, pagesCount, evictionPolicy);
         data.addCacheClearListener(new FileDataSource.CacheClearListener() {
             @Override
             public void clearCache() {
@@ -49,55 +73,212 @@ public class DeltaDataPageWindow {
         });
     }
 
-    private void loadPage(int index) {
-        long pageIndex = dataPages[index].pageIndex;
-        long pagePosition = pageIndex * PAGE_SIZE;
+    /**
+     * Changes cache layout.
+     *
+     * All currently cached pages are dropped, statistics are kept.
+     *
+     * @param pageSize size of single page in bytes
+     * @param pagesCount maximum number of cached pages
+     * @param evictionPolicy policy for selecting page to replace
+     */
+    public synchronized void setCacheParameters(int pageSize, int pagesCount, @Nonnull EvictionPolicy evictionPolicy) {
+        if (pageSize <= 0 || pagesCount <= 0) {
+            throw new IllegalArgumentException("Page size and pages count must be positive");
+        }
+
+        this.pageSize = pageSize;
+        this.evictionPolicy = evictionPolicy;
+        dataPages = new DataPage[pagesCount];
+        for (int i = 0; i < pagesCount; i++) {
+            dataPages[i] = new DataPage(pageSize);
+        }
+        pagesMap.clear();
+        lastPage = null;
+        clockHand = 0;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPagesCount() {
+        return dataPages.length;
+    }
+
+    @Nonnull
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    @Nonnull
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    private void loadPage(@Nonnull DataPage dataPage) {
+        long pagePosition = dataPage.pageIndex * pageSize;
         RandomAccessFile file = data.getAccessFile();
         try {
             file.seek(pagePosition);
-            byte[] page = dataPages[index].page;
+            byte[] page = dataPage.page;
             int offset = 0;
-            int toRead = PAGE_SIZE;
-            if (pagePosition + PAGE_SIZE > file.length()) {
+            int toRead = pageSize;
+            if (pagePosition + pageSize > file.length()) {
                 toRead = (int) (file.length() - pagePosition);
             }
             while (toRead > 0) {
                 int red = file.read(page, offset, toRead);
+                if (red < 0) {
+                    break;
+                }
                 toRead -= red;
                 offset += red;
             }
+            statistics.bytesRead += offset;
         } catch (IOException ex) {
             Logger.getLogger(DeltaDataPageWindow.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
-    public byte getByte(long position) {
-        long targetPageIndex = position / PAGE_SIZE;
-        int index = -1;
-        long pageIndex1 = dataPages[0].pageIndex;
-        long pageIndex2 = dataPages[1].pageIndex;
-        if (pageIndex1 == targetPageIndex) {
-            index = 0;
-        } else if (pageIndex2 == targetPageIndex) {
-            index = 1;
+    public synchronized byte getByte(long position) {
+        return getPage(position / pageSize)[(int) (position % pageSize)];
+    }
+
+    /**
+     * Copies data to given array page by page.
+     *
+     * @param position source position
+     * @param target target array
+     * @param offset offset in target array
+     * @param length length of copied data
+     */
+    public synchronized void copyToArray(long position, @Nonnull byte[] target, int offset, int length) {
+        while (length > 0) {
+            int pageOffset = (int) (position % pageSize);
+            int pageLength = pageSize - pageOffset;
+            if (pageLength > length) {
+                pageLength = length;
+            }
+
+            System.arraycopy(getPage(position / pageSize), pageOffset, target, offset, pageLength);
+            position += pageLength;
+            offset += pageLength;
+            length -= pageLength;
+        }
+    }
+
+    @Nonnull
+    private byte[] getPage(long targetPageIndex) {
+        DataPage dataPage = lastPage;
+        if (dataPage == null || dataPage.pageIndex != targetPageIndex) {
+            dataPage = pagesMap.get(targetPageIndex);
         }
-        if (index == -1) {
-            DataPage dataPage = dataPages[activeDataPage];
+
+        if (dataPage == null) {
+            statistics.misses++;
+            dataPage = selectVictimPage();
+            if (dataPage.pageIndex >= 0) {
+                statistics.evictions++;
+                pagesMap.remove(dataPage.pageIndex);
+            }
             dataPage.pageIndex = targetPageIndex;
-            loadPage(activeDataPage);
-            activeDataPage = (activeDataPage + 1) & 1;
-            return dataPage.page[(int) (position % PAGE_SIZE)];
+            loadPage(dataPage);
+            pagesMap.put(targetPageIndex, dataPage);
+        } else {
+            statistics.hits++;
         }
 
-        return dataPages[index].page[(int) (position % PAGE_SIZE)];
+        dataPage.lastAccess = ++accessCounter;
+        dataPage.referenced = true;
+        lastPage = dataPage;
+        return dataPage.page;
+    }
+
+    @Nonnull
+    private DataPage selectVictimPage() {
+        if (evictionPolicy == EvictionPolicy.CLOCK) {
+            while (true) {
+                DataPage dataPage = dataPages[clockHand];
+                clockHand = (clockHand + 1) % dataPages.length;
+                if (dataPage.pageIndex < 0 || !dataPage.referenced) {
+                    return dataPage;
+                }
+                dataPage.referenced = false;
+            }
+        }
+
+        DataPage victim = dataPages[0];
+        for (DataPage dataPage : dataPages) {
+            if (dataPage.pageIndex < 0) {
+                return dataPage;
+            }
+            if (dataPage.lastAccess < victim.lastAccess) {
+                victim = dataPage;
+            }
+        }
+
+        return victim;
     }
 
     /**
      * Clears window cache.
      */
-    public void clearCache() {
-        dataPages[0].pageIndex = -1;
-        dataPages[1].pageIndex = -1;
+    public synchronized void clearCache() {
+        for (DataPage dataPage : dataPages) {
+            dataPage.pageIndex = -1;
+            dataPage.referenced = false;
+        }
+        pagesMap.clear();
+        lastPage = null;
+    }
+
+    /**
+     * Policy for replacing cached pages.
+     */
+    public static enum EvictionPolicy {
+        /**
+         * Least recently used page is replaced.
+         */
+        LRU,
+        /**
+         * Second chance replacement using reference bit for each page.
+         */
+        CLOCK
+    }
+
+    /**
+     * Statistics of page cache usage.
+     */
+    public static class Statistics {
+
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long bytesRead;
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public void reset() {
+            hits = 0;
+            misses = 0;
+            evictions = 0;
+            bytesRead = 0;
+        }
     }
 
     /**
@@ -105,11 +286,13 @@ public class DeltaDataPageWindow {
      */
     private static class DataPage {
 
-        public DataPage() {
-            page = new byte[PAGE_SIZE];
+        public DataPage(int pageSize) {
+            page = new byte[pageSize];
         }
 
         long pageIndex = -1;
+        long lastAccess = 0;
+        boolean referenced = false;
         byte[] page;
     }
 }
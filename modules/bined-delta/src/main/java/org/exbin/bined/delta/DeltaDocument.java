@@ -18,29 +18,60 @@ package org.exbin.bined.delta;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.exbin.bined.delta.list.DefaultDoublyLinkedList;
 import org.exbin.utils.binary_data.BinaryData;
 import org.exbin.utils.binary_data.EditableBinaryData;
+import org.exbin.utils.binary_data.OutOfBoundsException;
 
 /**
  * Delta document defined as a sequence of segments.
  *
- * @version 0.2.0 2018/04/27
+ * Document can be read from multiple threads concurrently, modifications are
+ * exclusive. All methods acquire lock of the segments repository, see
+ * {@link SegmentsRepository#getLock()}. Each thread accessing the document
+ * uses it's own access window, so sequential reads from different threads
+ * don't interfere. Window is released when its thread terminates or when the
+ * document is disposed.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDocument implements EditableBinaryData {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final SegmentsRepository repository;
     private FileDataSource fileSource;
-    private final DefaultDoublyLinkedList<DataSegment> segments = new DefaultDoublyLinkedList<>();
+    private final IndexedSegmentsList segments = new IndexedSegmentsList();
 
     private long dataLength = 0;
-    private final DeltaDocumentWindow pointerWindow;
-    private final List<DeltaDocumentChangedListener> changeListeners = new ArrayList<>();
+    private final List<DeltaDocumentChangedListener> changeListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Access windows of threads using the document.
+     *
+     * Threads are weakly referenced, so window is released when its thread
+     * terminates. All windows are released when document is disposed.
+     * Registry is used for synchronization of windows only, window of the
+     * current thread is found without locking using thread local reference.
+     */
+    private final Map<Thread, DeltaDocumentWindow> windows = new WeakHashMap<>();
+    /**
+     * Window of the current thread.
+     *
+     * Window is referenced weakly, so that the thread doesn't keep released
+     * window and its document reachable.
+     */
+    private final ThreadLocal<WeakReference<DeltaDocumentWindow>> threadWindow = new ThreadLocal<>();
 
     public DeltaDocument(@Nonnull SegmentsRepository repository, @Nonnull FileDataSource fileSource) throws IOException {
         this.repository = repository;
@@ -50,15 +81,11 @@ public class DeltaDocument implements EditableBinaryData {
             DataSegment fullFileSegment = repository.createFileSegment(fileSource, 0, dataLength);
             segments.add(fullFileSegment);
         }
-        pointerWindow = new DeltaDocumentWindow(this);
-        pointerWindow.reset();
     }
 
     public DeltaDocument(@Nonnull SegmentsRepository repository) {
         this.repository = repository;
         dataLength = 0;
-        pointerWindow = new DeltaDocumentWindow(this);
-        pointerWindow.reset();
     }
 
     // Temporary method for accessing data pages
@@ -67,6 +94,11 @@ public class DeltaDocument implements EditableBinaryData {
         return segments;
     }
 
+    @Nonnull
+    /* package */ IndexedSegmentsList getIndexedSegments() {
+        return segments;
+    }
+
     /**
      * Returns segment starting at or before given position and ending after it.
      *
@@ -77,57 +109,140 @@ public class DeltaDocument implements EditableBinaryData {
      */
     @Nullable
     public DataSegment getSegment(long position) {
-        return pointerWindow.getSegment(position);
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            return getWindow().getSegment(position);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean isEmpty() {
-        return dataLength == 0;
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            return dataLength == 0;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public long getDataSize() {
-        return dataLength;
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            return dataLength;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public byte getByte(long position) {
-        return pointerWindow.getByte(position);
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            return getWindow().getByte(position);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void setByte(long position, byte value) {
-        pointerWindow.setByte(position, value);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            repository.checkMemoryBudget(1);
+            getWindow().setByte(position, value);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void insertUninitialized(long startFrom, long length) {
-        pointerWindow.insertUninitialized(startFrom, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            // Longer areas are inserted as fill segments without memory data
+            if (length < DeltaDocumentWindow.FILL_SEGMENT_MIN_LENGTH) {
+                repository.checkMemoryBudget(length);
+            }
+            getWindow().insertUninitialized(startFrom, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void insert(long startFrom, long length) {
-        pointerWindow.insert(startFrom, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            // Longer areas are inserted as fill segments without memory data
+            if (length < DeltaDocumentWindow.FILL_SEGMENT_MIN_LENGTH) {
+                repository.checkMemoryBudget(length);
+            }
+            getWindow().insert(startFrom, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void insert(long startFrom, @Nonnull byte[] insertedData) {
-        pointerWindow.insert(startFrom, insertedData);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            repository.checkMemoryBudget(insertedData.length);
+            getWindow().insert(startFrom, insertedData);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void insert(long startFrom, @Nonnull byte[] insertedData, int insertedDataOffset, int insertedDataLength) {
-        pointerWindow.insert(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            repository.checkMemoryBudget(insertedDataLength);
+            getWindow().insert(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void insert(long startFrom, BinaryData insertedData) {
-        pointerWindow.insert(startFrom, insertedData);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            if (!(insertedData instanceof DeltaDocument)) {
+                repository.checkMemoryBudget(insertedData.getDataSize());
+            }
+            getWindow().insert(startFrom, insertedData);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void insert(long startFrom, @Nonnull BinaryData insertedData, long insertedDataOffset, long insertedDataLength) {
-        pointerWindow.insert(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            if (!(insertedData instanceof DeltaDocument)) {
+                repository.checkMemoryBudget(insertedDataLength);
+            }
+            getWindow().insert(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -137,36 +252,113 @@ public class DeltaDocument implements EditableBinaryData {
      * @param segment inserted segment
      */
     public void insertSegment(long startFrom, @Nonnull DataSegment segment) {
-        pointerWindow.insertSegment(startFrom, segment);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            getWindow().insertSegment(startFrom, segment);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Inserts data from given stream.
+     *
+     * Data are copied to scratch file of the repository and inserted as file
+     * segment, so heap usage doesn't depend on size of the data.
+     *
+     * @param startFrom start position
+     * @param in input stream
+     * @param maxDataLength maximum length of inserted data or -1 for
+     * unlimited
+     * @return length of inserted data
+     * @throws IOException if input/output error
+     */
     @Override
-    public long insert(long startFrom, InputStream in, long maxDataLength) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public long insert(long startFrom, @Nonnull InputStream in, long maxDataLength) throws IOException {
+        FileDataSource scratchSource = repository.openScratchSource(in, maxDataLength);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            if (startFrom < 0 || startFrom > dataLength) {
+                repository.closeFileSource(scratchSource);
+                throw new OutOfBoundsException("Insertion position is out of bounds");
+            }
+
+            return insertScratchSource(startFrom, scratchSource);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void replace(long targetPosition, @Nonnull BinaryData replacingData) {
-        remove(targetPosition, replacingData.getDataSize());
-        insert(targetPosition, replacingData);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            remove(targetPosition, replacingData.getDataSize());
+            insert(targetPosition, replacingData);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void replace(long targetPosition, @Nonnull BinaryData replacingData, long startFrom, long length) {
-        remove(targetPosition, length);
-        insert(targetPosition, replacingData, startFrom, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            remove(targetPosition, length);
+            insert(targetPosition, replacingData, startFrom, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void replace(long targetPosition, @Nonnull byte[] replacingData) {
-        remove(targetPosition, replacingData.length);
-        insert(targetPosition, replacingData);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            remove(targetPosition, replacingData.length);
+            insert(targetPosition, replacingData);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void replace(long targetPosition, @Nonnull byte[] replacingData, int replacingDataOffset, int length) {
-        remove(targetPosition, length);
-        insert(targetPosition, replacingData, replacingDataOffset, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            remove(targetPosition, length);
+            insert(targetPosition, replacingData, replacingDataOffset, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces data on given position by data from given array.
+     *
+     * Data overlapping end of the document are appended. Change listeners are
+     * notified only once.
+     *
+     * @param targetPosition target position
+     * @param replacingData replacing data
+     * @param replacingDataOffset offset in replacing data
+     * @param length length of replacing data
+     */
+    public void overwrite(long targetPosition, @Nonnull byte[] replacingData, int replacingDataOffset, int length) {
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            repository.checkMemoryBudget(length);
+            getWindow().overwrite(targetPosition, replacingData, replacingDataOffset, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -176,64 +368,186 @@ public class DeltaDocument implements EditableBinaryData {
      * @param segment inserted segment
      */
     public void replaceSegment(long targetPosition, @Nonnull DataSegment segment) {
-        remove(targetPosition, segment.getLength());
-        insertSegment(targetPosition, segment);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            remove(targetPosition, segment.getLength());
+            insertSegment(targetPosition, segment);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void fillData(long startFrom, long length) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        fillData(startFrom, length, (byte) 0);
     }
 
+    /**
+     * Fills given area with given value.
+     *
+     * Longer areas are stored as fill segment, which doesn't allocate memory
+     * for the data.
+     *
+     * @param startFrom start position
+     * @param length length of area
+     * @param fill fill value
+     */
     @Override
     public void fillData(long startFrom, long length, byte fill) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            getWindow().fillData(startFrom, length, fill);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void remove(long startFrom, long length) {
-        pointerWindow.remove(startFrom, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            getWindow().remove(startFrom, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void clear() {
-        dataLength = 0;
-        segments.clear();
-        pointerWindow.reset();
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            dataLength = 0;
+            segments.clear();
+            resetWindows();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void dispose() {
-        repository.dropDocument(this);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            repository.dropDocument(this);
+            synchronized (windows) {
+                windows.clear();
+            }
+            threadWindow.remove();
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Replaces content of the document with data from given stream.
+     *
+     * Data are copied to scratch file of the repository, see
+     * {@link #insert(long, java.io.InputStream, long)}.
+     *
+     * @param in input stream
+     * @throws IOException if input/output error
+     */
     @Override
     public void loadFromStream(@Nonnull InputStream in) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        FileDataSource scratchSource = repository.openScratchSource(in, -1);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            getWindow().remove(0, dataLength);
+            insertScratchSource(0, scratchSource);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long insertScratchSource(long startFrom, @Nonnull FileDataSource scratchSource) throws IOException {
+        long length = scratchSource.getFileLength();
+        if (length == 0) {
+            repository.closeFileSource(scratchSource);
+            return 0;
+        }
+
+        getWindow().insertSegment(startFrom, repository.createFileSegment(scratchSource, 0, length));
+        return length;
     }
 
     @Override
     public void saveToStream(@Nonnull OutputStream out) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            DeltaDocumentWindow window = getWindow();
+            long dataSize = window.getDataSize();
+            byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, dataSize)];
+            long position = 0;
+            while (position < dataSize) {
+                int length = (int) Math.min(buffer.length, dataSize - position);
+                window.copyToArray(position, buffer, 0, length);
+                out.write(buffer, 0, length);
+                position += length;
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Nonnull
     @Override
     public BinaryData copy() {
-        return pointerWindow.copy();
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            return getWindow().copy();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Nonnull
     @Override
     public BinaryData copy(long startFrom, long length) {
-        return pointerWindow.copy(startFrom, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            return getWindow().copy(startFrom, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public void copyToArray(long startFrom, byte[] target, int offset, int length) {
-        // TODO optimalization later
-        for (int i = 0; i < length; i++) {
-            target[offset + i] = getByte(startFrom + i);
+    public void copyToArray(long startFrom, @Nonnull byte[] target, int offset, int length) {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            getWindow().copyToArray(startFrom, target, offset, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies data to given buffer.
+     *
+     * File segments are transferred to direct buffers without intermediate
+     * array.
+     *
+     * @param startFrom start position
+     * @param target target buffer, position is advanced by length
+     * @param length length of copied data
+     */
+    public void copyToBuffer(long startFrom, @Nonnull ByteBuffer target, int length) {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            getWindow().copyToBuffer(startFrom, target, length);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -243,35 +557,193 @@ public class DeltaDocument implements EditableBinaryData {
         return new DeltaDocumentOutputStream(this);
     }
 
+    /**
+     * Returns buffered output stream writing to the document.
+     *
+     * @param writeMode write mode
+     * @return output stream
+     */
+    @Nonnull
+    public DeltaDocumentOutputStream getDataOutputStream(@Nonnull DeltaDocumentOutputStream.WriteMode writeMode) {
+        return new DeltaDocumentOutputStream(this, writeMode);
+    }
+
     @Nonnull
     @Override
     public InputStream getDataInputStream() {
         return new DeltaDocumentInputStream(this);
     }
 
+    /**
+     * Returns read-only channel for access to document data.
+     *
+     * @return seekable byte channel
+     */
+    @Nonnull
+    public DeltaDocumentChannel getDataChannel() {
+        return new DeltaDocumentChannel(this);
+    }
+
     @Override
     public void setDataSize(long dataSize) {
-        if (dataSize < dataLength) {
-            remove(dataSize, dataLength - dataSize);
-        } else if (dataSize > dataLength) {
-            insert(dataLength, dataSize - dataLength);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            if (dataSize < dataLength) {
+                remove(dataSize, dataLength - dataSize);
+            } else if (dataSize > dataLength) {
+                insert(dataLength, dataSize - dataLength);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Performs save to source file.
      *
+     * Must not be called while the current thread holds lock of the
+     * repository, see {@link SegmentsRepository#saveDocument(DeltaDocument, SaveProgressListener)}.
+     *
      * @throws java.io.IOException on input/output error
+     * @throws IllegalStateException if repository lock is held by the
+     * current thread
      */
     public void save() throws IOException {
         repository.saveDocument(this);
     }
 
+    /**
+     * Performs save to source file on given executor.
+     *
+     * Data are written without holding the repository lock, so documents of
+     * the repository stay accessible during the save. See
+     * {@link DeltaDocumentSaveTask} for consistency and cancellation rules.
+     * Executor must not run the save on thread holding lock of the
+     * repository, otherwise the task fails with IllegalStateException.
+     *
+     * @param executor executor to run save on
+     * @param progressListener listener for save progress or null
+     * @return save task handle
+     */
+    @Nonnull
+    public DeltaDocumentSaveTask saveAsync(@Nonnull Executor executor, @Nullable SaveProgressListener progressListener) {
+        DeltaDocumentSaveTask saveTask = new DeltaDocumentSaveTask(this, progressListener);
+        executor.execute(saveTask);
+        return saveTask;
+    }
+
+    /**
+     * Merges all adjacent segments which can be represented by single
+     * segment.
+     *
+     * Segments are also merged around each modified area automatically.
+     */
+    public void compact() {
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            getWindow().compact();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates immutable snapshot of the current document content.
+     *
+     * Snapshot shares segments index with the document, so neither creation
+     * of the snapshot nor later modifications of the document copy the whole
+     * list of segments.
+     *
+     * @return snapshot which has to be closed when no longer needed
+     */
+    @Nonnull
+    public DeltaDocumentSnapshot createSnapshot() {
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            return new DeltaDocumentSnapshot(this, segments.share(), dataLength);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns count of segments of the document.
+     *
+     * @return count of segments
+     */
+    public int getSegmentsCount() {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Resets cached state - needed after change.
      */
     public void clearCache() {
-        pointerWindow.reset();
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            resetWindows();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resets access windows of all threads.
+     *
+     * Called with write lock held.
+     */
+    private void resetWindows() {
+        DeltaDocumentWindow window = getWindow();
+        window.reset();
+        notifyChangeListeners(window);
+    }
+
+    /**
+     * Returns access window of the current thread.
+     *
+     * @return access window
+     */
+    @Nonnull
+    private DeltaDocumentWindow getWindow() {
+        WeakReference<DeltaDocumentWindow> windowReference = threadWindow.get();
+        DeltaDocumentWindow window = windowReference == null ? null : windowReference.get();
+        if (window != null) {
+            return window;
+        }
+
+        Thread thread = Thread.currentThread();
+        synchronized (windows) {
+            window = windows.get(thread);
+            if (window == null) {
+                window = new DeltaDocumentWindow(this);
+                window.reset();
+                windows.put(thread, window);
+            }
+        }
+        threadWindow.set(new WeakReference<>(window));
+
+        return window;
+    }
+
+    /**
+     * Returns count of access windows of threads which used the document.
+     *
+     * @return count of windows
+     */
+    /* package */ int getWindowsCount() {
+        synchronized (windows) {
+            return windows.size();
+        }
     }
 
     /* package */ void setDataLength(long dataSize) {
@@ -288,7 +760,13 @@ public class DeltaDocument implements EditableBinaryData {
      */
     @Nullable
     public DataSegment getPartCopy(long position, long length) {
-        return pointerWindow.getPartCopy(position, length);
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            return getWindow().getPartCopy(position, length);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Nonnull
@@ -313,14 +791,36 @@ public class DeltaDocument implements EditableBinaryData {
         changeListeners.remove(listener);
     }
 
+    /**
+     * Notifies about modification performed by given window.
+     *
+     * Access windows of other threads are moved to the pointer of the
+     * modified window as their pointers might be no longer valid. Called with
+     * write lock held.
+     *
+     * @param window modified window
+     */
     public void notifyChangeListeners(@Nonnull DeltaDocumentWindow window) {
+        synchronized (windows) {
+            for (DeltaDocumentWindow otherWindow : windows.values()) {
+                if (otherWindow != window) {
+                    otherWindow.syncPointer(window);
+                }
+            }
+        }
         for (DeltaDocumentChangedListener listener : changeListeners) {
             listener.dataChanged(window);
         }
     }
 
     public void validatePointerPosition() {
-        pointerWindow.validatePointerPosition();
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            getWindow().validatePointerPosition();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void validateDocumentSize() {
@@ -334,6 +834,10 @@ public class DeltaDocument implements EditableBinaryData {
         if (segmentsSizeSum != getDataSize()) {
             throw new IllegalStateException("Invalid size " + getDataSize() + " (expected " + segmentsSizeSum + ")");
         }
+
+        if (segments.getTotalLength() != segmentsSizeSum) {
+            throw new IllegalStateException("Invalid segments index size " + segments.getTotalLength() + " (expected " + segmentsSizeSum + ")");
+        }
     }
 
     public void validate() {
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Read-only seekable byte channel over delta document.
+ *
+ * Buffers are filled segment by segment. File segments are read to direct
+ * buffers from mapped regions or file channel without intermediate array, so
+ * channel can be used as source for FileChannel.transferFrom.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class DeltaDocumentChannel extends BinaryDataChannel {
+
+    @Nonnull
+    private final DeltaDocument document;
+
+    public DeltaDocumentChannel(@Nonnull DeltaDocument document) {
+        super(document);
+        this.document = document;
+    }
+
+    @Override
+    protected void copyToBuffer(long startFrom, @Nonnull ByteBuffer target, int length) {
+        document.copyToBuffer(startFrom, target, length);
+    }
+}
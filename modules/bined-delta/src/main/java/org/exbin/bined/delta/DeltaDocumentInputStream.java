@@ -24,17 +24,20 @@ import org.exbin.utils.binary_data.SeekableStream;
 /**
  * Delta document input stream.
  *
- * @version 0.2.0 2018/04/27
+ * Stream reads through the document, so it uses read lock of the document and
+ * access window of the current thread.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDocumentInputStream extends InputStream implements SeekableStream, FinishableStream {
 
     @Nonnull
-    private final DeltaDocumentWindow data;
+    private final DeltaDocument data;
     private long position = 0;
 
     public DeltaDocumentInputStream(@Nonnull DeltaDocument document) {
-        this.data = new DeltaDocumentWindow(document);
+        this.data = document;
     }
 
     @Override
@@ -83,6 +86,22 @@ public class DeltaDocumentInputStream extends InputStream implements SeekableStr
         return length;
     }
 
+    @Override
+    public long skip(long count) throws IOException {
+        if (count <= 0) {
+            return 0;
+        }
+
+        long remaining = data.getDataSize() - position;
+        if (remaining <= 0) {
+            return 0;
+        }
+
+        long skipped = count < remaining ? count : remaining;
+        position += skipped;
+        return skipped;
+    }
+
     @Override
     public void seek(long position) throws IOException {
         this.position = position;
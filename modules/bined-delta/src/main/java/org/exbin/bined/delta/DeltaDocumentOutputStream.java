@@ -24,27 +24,67 @@ import org.exbin.utils.binary_data.SeekableStream;
 /**
  * Delta document output stream.
  *
- * @version 0.2.0 2018/04/27
+ * Written data are collected in buffer and passed to the document in blocks,
+ * so that each flush modifies document only once and emits single change
+ * notification. Buffer is flushed when full, on seek, flush and close.
+ *
+ * Default write mode is {@link WriteMode#MIXED} for compatibility with
+ * previous versions of the stream.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDocumentOutputStream extends OutputStream implements SeekableStream, FinishableStream {
 
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    @Nonnull
+    private final DeltaDocument document;
+    @Nonnull
+    private final WriteMode writeMode;
     @Nonnull
-    private final DeltaDocumentWindow data;
+    private final byte[] buffer;
+    private int bufferLength = 0;
     private long position = 0;
 
     public DeltaDocumentOutputStream(@Nonnull DeltaDocument document) {
-        this.data = new DeltaDocumentWindow(document);
+        this(document, WriteMode.MIXED);
+    }
+
+    public DeltaDocumentOutputStream(@Nonnull DeltaDocument document, @Nonnull WriteMode writeMode) {
+        this(document, writeMode, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates output stream.
+     *
+     * @param document target document
+     * @param writeMode write mode
+     * @param bufferSize size of write buffer in bytes
+     */
+    public DeltaDocumentOutputStream(@Nonnull DeltaDocument document, @Nonnull WriteMode writeMode, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+
+        this.document = document;
+        this.writeMode = writeMode;
+        buffer = new byte[bufferSize];
+    }
+
+    @Nonnull
+    public WriteMode getWriteMode() {
+        return writeMode;
     }
 
     @Override
     public void write(int value) throws IOException {
-        long dataSize = data.getDataSize();
-        if (position == dataSize) {
-            dataSize++;
-            data.setDataSize(dataSize);
+        if (bufferLength == buffer.length) {
+            flushBuffer();
         }
-        data.setByte(position++, (byte) value);
+
+        buffer[bufferLength++] = (byte) value;
+        position++;
     }
 
     @Override
@@ -53,18 +93,45 @@ public class DeltaDocumentOutputStream extends OutputStream implements SeekableS
             return;
         }
 
-        data.insert(position, input, offset, length);
+        if (writeMode == WriteMode.MIXED) {
+            // Arrays are inserted after buffered single bytes
+            flushBuffer();
+            document.insert(position, input, offset, length);
+            position += length;
+            return;
+        }
+
+        if (length >= buffer.length) {
+            // Pass large blocks directly
+            flushBuffer();
+            writeData(position, input, offset, length);
+            position += length;
+            return;
+        }
+
+        if (bufferLength + length > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(input, offset, buffer, bufferLength, length);
+        bufferLength += length;
         position += length;
     }
 
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
     @Override
     public void seek(long position) throws IOException {
+        flushBuffer();
         this.position = position;
     }
 
     @Override
     public long getStreamSize() {
-        return data.getDataSize();
+        flushBuffer();
+        return document.getDataSize();
     }
 
     @Override
@@ -79,7 +146,47 @@ public class DeltaDocumentOutputStream extends OutputStream implements SeekableS
 
     @Override
     public long finish() throws IOException {
-        position = data.getDataSize();
+        flushBuffer();
+        position = document.getDataSize();
         return position;
     }
+
+    private void flushBuffer() {
+        if (bufferLength == 0) {
+            return;
+        }
+
+        int length = bufferLength;
+        bufferLength = 0;
+        writeData(position - length, buffer, 0, length);
+    }
+
+    private void writeData(long targetPosition, @Nonnull byte[] data, int offset, int length) {
+        if (writeMode == WriteMode.INSERT) {
+            document.insert(targetPosition, data, offset, length);
+        } else {
+            document.overwrite(targetPosition, data, offset, length);
+        }
+    }
+
+    /**
+     * Mode of writing data to the document.
+     */
+    public enum WriteMode {
+        /**
+         * Written data replace existing data, data written past the end are
+         * appended.
+         */
+        OVERWRITE,
+        /**
+         * Written data are inserted at the current position.
+         */
+        INSERT,
+        /**
+         * Single bytes replace existing data and are appended past the end,
+         * byte arrays are inserted at the current position without
+         * buffering.
+         */
+        MIXED
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Handle for asynchronous save of delta document.
+ *
+ * Write lock of the segments repository is held only while data transfers
+ * are planned and while documents are updated after the data are written.
+ * Data are written without the lock, so documents of the same repository can
+ * be read and modified during the save. Saved content is the content of the
+ * document when the save started, modifications performed later are kept in
+ * the document. Only one save of the repository runs at a time.
+ *
+ * Progress events are delivered on the thread performing the save.
+ *
+ * Cancellation is cooperative and it's checked after each written block. In
+ * place save of cancelled task is rolled back using save journal, temporary
+ * file of temporary file save strategy is deleted. Task of running save is
+ * done only after the rollback finishes, failure of the rollback is reported
+ * as cause of the cancellation exception. Once all data is written and
+ * documents start to be updated, save always runs to the end and cancel
+ * request is refused.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class DeltaDocumentSaveTask implements Future<Void>, Runnable, SaveProgressListener {
+
+    @Nonnull
+    private final DeltaDocument document;
+    @Nullable
+    private final SaveProgressListener progressListener;
+    @Nonnull
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+
+    @Nonnull
+    private State state = State.PENDING;
+    @Nullable
+    private Throwable failure = null;
+    private volatile long processedLength = 0;
+    private volatile long totalLength = -1;
+
+    public DeltaDocumentSaveTask(@Nonnull DeltaDocument document, @Nullable SaveProgressListener progressListener) {
+        this.document = document;
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (state != State.PENDING) {
+                return;
+            }
+            state = State.RUNNING;
+        }
+
+        SegmentsRepository repository = document.getRepository();
+        try {
+            repository.saveDocument(document, this, this);
+            finish(State.COMPLETED, null);
+        } catch (CancellationException ex) {
+            // Failures of the rollback are suppressed by the cancellation
+            finish(State.CANCELLED, ex.getSuppressed().length > 0 ? ex : null);
+        } catch (IOException | RuntimeException ex) {
+            finish(State.FAILED, ex);
+        } finally {
+            doneLatch.countDown();
+        }
+    }
+
+    /**
+     * Requests cancellation of the save.
+     *
+     * Running save is stopped after the current block, task is done when the
+     * written data are rolled back.
+     *
+     * @param mayInterruptIfRunning ignored, thread performing the save is
+     * never interrupted as it would close the file channel
+     * @return true if save was cancelled before all data was written
+     */
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if (state == State.PENDING) {
+            state = State.CANCELLED;
+            doneLatch.countDown();
+            return true;
+        }
+        if (state == State.RUNNING) {
+            state = State.CANCELLED;
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return doneLatch.getCount() == 0;
+    }
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        doneLatch.await();
+        return getResult();
+    }
+
+    @Override
+    public Void get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!doneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+
+        return getResult();
+    }
+
+    @Nonnull
+    public DeltaDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns count of already written bytes.
+     *
+     * @return count of bytes
+     */
+    public long getProcessedLength() {
+        return processedLength;
+    }
+
+    /**
+     * Returns total count of bytes to write.
+     *
+     * @return count of bytes or -1 if not known yet
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public void progress(long processedLength, long totalLength) {
+        this.processedLength = processedLength;
+        this.totalLength = totalLength;
+        if (progressListener != null) {
+            progressListener.progress(processedLength, totalLength);
+        }
+    }
+
+    /**
+     * Last safe point after all data is written and before documents are
+     * updated.
+     *
+     * @return true if save can continue, false if it was cancelled
+     */
+    /* package */ synchronized boolean startCommit() {
+        if (state == State.CANCELLED) {
+            return false;
+        }
+
+        state = State.COMMITTING;
+        return true;
+    }
+
+    private synchronized void finish(@Nonnull State finalState, @Nullable Throwable failure) {
+        // Save failed after cancellation stays cancelled with it's failure
+        if (state != State.CANCELLED) {
+            state = finalState;
+        }
+        this.failure = failure;
+    }
+
+    @Nullable
+    private synchronized Void getResult() throws ExecutionException {
+        if (state == State.CANCELLED) {
+            CancellationException exception = new CancellationException("Save was cancelled");
+            if (failure != null) {
+                exception.initCause(failure);
+            }
+            throw exception;
+        }
+        if (state == State.FAILED) {
+            throw new ExecutionException(failure);
+        }
+
+        return null;
+    }
+
+    private enum State {
+        PENDING, RUNNING, COMMITTING, COMPLETED, CANCELLED, FAILED
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Lock;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.exbin.utils.binary_data.BinaryData;
+import org.exbin.utils.binary_data.OutOfBoundsException;
+
+/**
+ * Immutable snapshot of delta document.
+ *
+ * Snapshot shares tree of segments with the document, tree nodes are copied
+ * only on the path to the changed node when the document is modified. Data
+ * sources referenced by the snapshot are pinned, so that their data are not
+ * changed until the snapshot is closed, see
+ * {@link SegmentsRepository#pinEpoch()}. Before file which might be
+ * referenced by the snapshot is saved, snapshot is detached to separate
+ * document, which is moved to after save positions together with other
+ * documents.
+ *
+ * Snapshot can be read from any thread.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class DeltaDocumentSnapshot implements BinaryData, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Nonnull
+    private final DeltaDocument document;
+    @Nonnull
+    private final SegmentsRepository repository;
+    @Nullable
+    private IndexedSegmentsList.TreeNode root;
+    private final long dataSize;
+    private final long epoch;
+    @Nullable
+    private DeltaDocument detachedDocument = null;
+    private boolean closed = false;
+
+    /* package */ DeltaDocumentSnapshot(@Nonnull DeltaDocument document, @Nullable IndexedSegmentsList.TreeNode root, long dataSize) {
+        this.document = document;
+        this.root = root;
+        this.dataSize = dataSize;
+        repository = document.getRepository();
+        epoch = repository.addSnapshot(this);
+    }
+
+    /**
+     * Returns true if snapshot no longer shares segments with the document.
+     *
+     * @return true if document was modified since snapshot was taken
+     */
+    public boolean isDetached() {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            return detachedDocument != null || document.getIndexedSegments().getRoot() != root;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getDataSize() == 0;
+    }
+
+    @Override
+    public long getDataSize() {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            checkClosed();
+            return dataSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte getByte(long position) {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            checkClosed();
+            if (detachedDocument != null) {
+                return detachedDocument.getByte(position);
+            }
+            if (position < 0 || position >= dataSize) {
+                throw new OutOfBoundsException("Position index out of range");
+            }
+
+            TreeCursor cursor = new TreeCursor(root, position);
+            return cursor.node.getByte(cursor.offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void copyToArray(long startFrom, @Nonnull byte[] target, int offset, int length) {
+        Lock lock = repository.getLock().readLock();
+        lock.lock();
+        try {
+            checkClosed();
+            if (detachedDocument != null) {
+                detachedDocument.copyToArray(startFrom, target, offset, length);
+                return;
+            }
+            checkRange(startFrom, length);
+
+            TreeCursor cursor = new TreeCursor(root, startFrom);
+            while (length > 0) {
+                int count = (int) Math.min(length, cursor.node.length - cursor.offset);
+                cursor.node.copyToArray(cursor.offset, target, offset, count);
+                offset += count;
+                length -= count;
+                cursor.next();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public BinaryData copy() {
+        return copy(0, getDataSize());
+    }
+
+    @Nonnull
+    @Override
+    public BinaryData copy(long startFrom, long length) {
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            checkClosed();
+            if (detachedDocument != null) {
+                return detachedDocument.copy(startFrom, length);
+            }
+            checkRange(startFrom, length);
+
+            return createDocument(startFrom, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void saveToStream(@Nonnull OutputStream outputStream) throws IOException {
+        long dataSize = getDataSize();
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, dataSize)];
+        long position = 0;
+        while (position < dataSize) {
+            int length = (int) Math.min(buffer.length, dataSize - position);
+            copyToArray(position, buffer, 0, length);
+            outputStream.write(buffer, 0, length);
+            position += length;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public InputStream getDataInputStream() {
+        return new InputStream() {
+            private long position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= getDataSize()) {
+                    return -1;
+                }
+
+                return getByte(position++) & 0xff;
+            }
+
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                long dataSize = getDataSize();
+                if (position >= dataSize) {
+                    return -1;
+                }
+
+                int count = (int) Math.min(length, dataSize - position);
+                copyToArray(position, data, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(Integer.MAX_VALUE, getDataSize() - position);
+            }
+        };
+    }
+
+    /**
+     * Releases snapshot and all data pinned by it.
+     */
+    @Override
+    public void close() {
+        Lock lock = repository.getLock().writeLock();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            root = null;
+            if (detachedDocument == null) {
+                repository.removeSnapshot(this, epoch);
+            } else {
+                detachedDocument.dispose();
+                detachedDocument = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        close();
+    }
+
+    /**
+     * Returns epoch pinned by the snapshot.
+     *
+     * @return epoch
+     */
+    /* package */ long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Copies shared segments to separate document and releases pinned
+     * epoch.
+     *
+     * Called with write lock held.
+     */
+    /* package */ void detach() {
+        if (closed || detachedDocument != null) {
+            return;
+        }
+
+        detachedDocument = createDocument(0, dataSize);
+        root = null;
+        repository.removeSnapshot(this, epoch);
+    }
+
+    @Nonnull
+    private DeltaDocument createDocument(long startFrom, long length) {
+        DeltaDocument copy = repository.createDocument();
+        copy.setDataLength(length);
+        TreeCursor cursor = new TreeCursor(root, startFrom);
+        while (length > 0) {
+            long count = Math.min(length, cursor.node.length - cursor.offset);
+            if (count > 0) {
+                copy.getSegments().add(repository.createSegment(cursor.node, cursor.offset, count));
+            }
+            length -= count;
+            cursor.next();
+        }
+
+        return copy;
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("Snapshot was closed");
+        }
+    }
+
+    private void checkRange(long startFrom, long length) {
+        if (startFrom < 0 || length < 0 || startFrom + length > dataSize) {
+            throw new OutOfBoundsException("Data range is out of bounds");
+        }
+    }
+
+    /**
+     * Position in the shared tree, nodes are iterated in order.
+     */
+    private static class TreeCursor {
+
+        @Nonnull
+        private final Deque<IndexedSegmentsList.TreeNode> path = new ArrayDeque<>();
+        @Nullable
+        IndexedSegmentsList.TreeNode node = null;
+        long offset = 0;
+
+        TreeCursor(@Nullable IndexedSegmentsList.TreeNode root, long position) {
+            IndexedSegmentsList.TreeNode current = root;
+            while (current != null) {
+                long leftLength = current.left == null ? 0 : current.left.subtreeLength;
+                if (position < leftLength) {
+                    path.push(current);
+                    current = current.left;
+                } else if (position < leftLength + current.length) {
+                    node = current;
+                    offset = position - leftLength;
+                    return;
+                } else {
+                    position -= leftLength + current.length;
+                    current = current.right;
+                }
+            }
+        }
+
+        void next() {
+            offset = 0;
+            IndexedSegmentsList.TreeNode current = node.right;
+            if (current == null) {
+                node = path.isEmpty() ? null : path.pop();
+                return;
+            }
+
+            while (current.left != null) {
+                path.push(current);
+                current = current.left;
+            }
+            node = current;
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package org.exbin.bined.delta;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.exbin.bined.delta.list.DefaultDoublyLinkedList;
@@ -24,7 +27,7 @@ import org.exbin.utils.binary_data.OutOfBoundsException;
 /**
  * Access window for delta document.
  *
- * @version 0.2.0 2018/04/27
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDocumentWindow {
@@ -32,19 +35,27 @@ public class DeltaDocumentWindow {
     @Nonnull
     private final DeltaDocument document;
 
+    /**
+     * Maximum length of memory segment which is copied to the source of the
+     * preceding memory segment to merge them.
+     */
+    private static final int MERGE_COPY_LIMIT = 4096;
+    /**
+     * Maximum size of intermediate array used to copy memory segments to
+     * buffer without accessible array.
+     */
+    private static final int BUFFER_COPY_LIMIT = 64 * 1024;
+    /**
+     * Minimum length of inserted or filled area stored as fill segment.
+     * Shorter areas are stored in memory, so that they can be edited without
+     * fragmentation.
+     */
+    /* package */ static final int FILL_SEGMENT_MIN_LENGTH = 4096;
+
     private final DataPointer pointer = new DataPointer();
 
     public DeltaDocumentWindow(@Nonnull DeltaDocument document) {
         this.document = document;
-        document.addChangeListener(new DeltaDocumentChangedListener() {
-            @Override
-            public void dataChanged(DeltaDocumentWindow window) {
-                if (window != DeltaDocumentWindow.this) {
-                    pointer.segment = window.pointer.segment;
-                    pointer.position = window.pointer.position;
-                }
-            }
-        });
     }
 
     public long getDataSize() {
@@ -56,6 +67,8 @@ public class DeltaDocumentWindow {
 
         if (pointer.segment instanceof FileSegment) {
             return ((FileSegment) pointer.segment).getByte(pointer.segment.getStartPosition() + (position - pointer.position));
+        } else if (pointer.segment instanceof FillSegment) {
+            return ((FillSegment) pointer.segment).getFillValue();
         } else {
             return ((MemorySegment) pointer.segment).getByte(pointer.segment.getStartPosition() + (position - pointer.position));
         }
@@ -65,8 +78,11 @@ public class DeltaDocumentWindow {
         DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
         SegmentsRepository repository = document.getRepository();
         focusSegment(position);
+        if (pointer.segment instanceof FillSegment && ((FillSegment) pointer.segment).getFillValue() == value) {
+            return;
+        }
 
-        if (pointer.segment instanceof FileSegment) {
+        if (pointer.segment instanceof FileSegment || pointer.segment instanceof FillSegment) {
             if (pointer.position != position) {
                 splitSegment(position);
                 focusSegment(position);
@@ -81,7 +97,7 @@ public class DeltaDocumentWindow {
                 segments.addBefore(pointer.segment, segment);
             }
             pointer.position++;
-            FileSegment documentSegment = ((FileSegment) pointer.segment);
+            DataSegment documentSegment = pointer.segment;
             if (documentSegment.getLength() == 1) {
                 segments.remove(documentSegment);
                 repository.dropSegment(documentSegment);
@@ -101,6 +117,7 @@ public class DeltaDocumentWindow {
         if (position >= getDataSize()) {
             document.setDataLength(position + 1);
         }
+        tryMergeArea(position, 1);
         document.notifyChangeListeners(this);
     }
 
@@ -108,6 +125,11 @@ public class DeltaDocumentWindow {
         if (length == 0) {
             return;
         }
+        if (length >= FILL_SEGMENT_MIN_LENGTH) {
+            insertFillData(startFrom, length, (byte) 0);
+            document.notifyChangeListeners(this);
+            return;
+        }
 
         DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
         SegmentsRepository repository = document.getRepository();
@@ -120,16 +142,16 @@ public class DeltaDocumentWindow {
         } else if (pointer.segment != null && pointer.position == startFrom && pointer.segment.getPrev() instanceof MemorySegment
                 && pointer.segment.getPrev().getStartPosition() + pointer.segment.getPrev().getLength() == ((MemorySegment) pointer.segment.getPrev()).getSource().getDataSize()) {
             MemorySegment prevSegment = (MemorySegment) pointer.segment.getPrev();
-            prevSegment.getSource().insertUninitialized(prevSegment.getSource().getDataSize(), 1);
-            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + 1);
-            pointer.position++;
+            prevSegment.getSource().insertUninitialized(prevSegment.getSource().getDataSize(), length);
+            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + length);
+            pointer.position += length;
             document.setDataLength(targetLength);
         } else if (pointer.segment == null && segments.last() instanceof MemorySegment
                 && segments.last().getStartPosition() + segments.last().getLength() == ((MemorySegment) segments.last()).getSource().getDataSize()) {
             MemorySegment prevSegment = (MemorySegment) segments.last();
-            prevSegment.getSource().insertUninitialized(prevSegment.getSource().getDataSize(), 1);
-            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + 1);
-            pointer.position++;
+            prevSegment.getSource().insertUninitialized(prevSegment.getSource().getDataSize(), length);
+            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + length);
+            pointer.position += length;
             document.setDataLength(targetLength);
         } else {
             if (startFrom > pointer.position) {
@@ -156,6 +178,11 @@ public class DeltaDocumentWindow {
         if (length == 0) {
             return;
         }
+        if (length >= FILL_SEGMENT_MIN_LENGTH) {
+            insertFillData(startFrom, length, (byte) 0);
+            document.notifyChangeListeners(this);
+            return;
+        }
 
         focusSegment(startFrom);
         long targetLength = document.getDataSize() + length;
@@ -165,16 +192,16 @@ public class DeltaDocumentWindow {
         } else if (pointer.segment != null && pointer.position == startFrom && pointer.segment.getPrev() instanceof MemorySegment
                 && pointer.segment.getPrev().getStartPosition() + pointer.segment.getPrev().getLength() == ((MemorySegment) pointer.segment.getPrev()).getSource().getDataSize()) {
             MemorySegment prevSegment = (MemorySegment) pointer.segment.getPrev();
-            prevSegment.getSource().insert(prevSegment.getSource().getDataSize(), 1);
-            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + 1);
-            pointer.position++;
+            prevSegment.getSource().insert(prevSegment.getSource().getDataSize(), length);
+            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + length);
+            pointer.position += length;
             document.setDataLength(targetLength);
         } else if (pointer.segment == null && segments.last() instanceof MemorySegment
                 && segments.last().getStartPosition() + segments.last().getLength() == ((MemorySegment) segments.last()).getSource().getDataSize()) {
             MemorySegment prevSegment = (MemorySegment) segments.last();
-            prevSegment.getSource().insert(prevSegment.getSource().getDataSize(), 1);
-            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + 1);
-            pointer.position++;
+            prevSegment.getSource().insert(prevSegment.getSource().getDataSize(), length);
+            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + length);
+            pointer.position += length;
             document.setDataLength(targetLength);
         } else {
             if (startFrom > pointer.position) {
@@ -195,6 +222,52 @@ public class DeltaDocumentWindow {
         document.notifyChangeListeners(this);
     }
 
+    /**
+     * Fills given area with given value.
+     *
+     * @param startFrom start position
+     * @param length length of area
+     * @param fill fill value
+     */
+    public void fillData(long startFrom, long length, byte fill) {
+        if (startFrom < 0 || length < 0 || startFrom + length > getDataSize()) {
+            throw new OutOfBoundsException("Filled area is out of bounds");
+        }
+        if (length == 0) {
+            return;
+        }
+
+        removeData(startFrom, length);
+        if (length >= FILL_SEGMENT_MIN_LENGTH) {
+            insertFillData(startFrom, length, fill);
+        } else {
+            byte[] fillData = new byte[(int) length];
+            Arrays.fill(fillData, fill);
+            insertData(startFrom, fillData, 0, fillData.length);
+        }
+        document.notifyChangeListeners(this);
+    }
+
+    private void insertFillData(long startFrom, long length, byte fill) {
+        DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
+        SegmentsRepository repository = document.getRepository();
+        focusSegment(startFrom);
+        long targetLength = document.getDataSize() + length;
+        if (pointer.position < startFrom) {
+            splitSegment(startFrom);
+            focusSegment(startFrom);
+        }
+        FillSegment insertedSegment = repository.createFillSegment(length, fill);
+        if (pointer.segment == null) {
+            segments.add(insertedSegment);
+        } else {
+            segments.addBefore(pointer.segment, insertedSegment);
+        }
+        pointer.segment = insertedSegment;
+        document.setDataLength(targetLength);
+        tryMergeArea(startFrom, length);
+    }
+
     public void insert(long startFrom, @Nonnull byte[] insertedData) {
         DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
         SegmentsRepository repository = document.getRepository();
@@ -227,13 +300,63 @@ public class DeltaDocumentWindow {
     }
 
     public void insert(long startFrom, @Nonnull byte[] insertedData, int insertedDataOffset, int insertedDataLength) {
+        if (insertedDataLength == 0) {
+            return;
+        }
+
+        insertData(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+        document.notifyChangeListeners(this);
+    }
+
+    /**
+     * Replaces data on given position by data from given array.
+     *
+     * Data overlapping end of the document are appended. Change listeners are
+     * notified only once.
+     *
+     * @param targetPosition target position
+     * @param replacingData replacing data
+     * @param replacingDataOffset offset in replacing data
+     * @param length length of replacing data
+     */
+    public void overwrite(long targetPosition, @Nonnull byte[] replacingData, int replacingDataOffset, int length) {
+        long dataSize = getDataSize();
+        if (targetPosition < 0 || targetPosition > dataSize) {
+            throw new OutOfBoundsException("Overwritten area is out of bounds");
+        }
+        if (length == 0) {
+            return;
+        }
+
+        long replacedLength = Math.min(length, dataSize - targetPosition);
+        if (replacedLength > 0) {
+            removeData(targetPosition, replacedLength);
+        }
+        insertData(targetPosition, replacingData, replacingDataOffset, length);
+        document.notifyChangeListeners(this);
+    }
+
+    private void insertData(long startFrom, @Nonnull byte[] insertedData, int insertedDataOffset, int insertedDataLength) {
         DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
         SegmentsRepository repository = document.getRepository();
-
         focusSegment(startFrom);
         long targetLength = document.getDataSize() + insertedDataLength;
         if (pointer.segment instanceof MemorySegment) {
-            repository.insertMemoryData((MemorySegment) pointer.segment, startFrom - pointer.position, insertedData);
+            repository.insertMemoryData((MemorySegment) pointer.segment, startFrom - pointer.position, insertedData, insertedDataOffset, insertedDataLength);
+            document.setDataLength(targetLength);
+        } else if (pointer.segment != null && pointer.position == startFrom && pointer.segment.getPrev() instanceof MemorySegment
+                && pointer.segment.getPrev().getStartPosition() + pointer.segment.getPrev().getLength() == ((MemorySegment) pointer.segment.getPrev()).getSource().getDataSize()) {
+            MemorySegment prevSegment = (MemorySegment) pointer.segment.getPrev();
+            prevSegment.getSource().insert(prevSegment.getSource().getDataSize(), insertedData, insertedDataOffset, insertedDataLength);
+            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + insertedDataLength);
+            pointer.position += insertedDataLength;
+            document.setDataLength(targetLength);
+        } else if (pointer.segment == null && segments.last() instanceof MemorySegment
+                && segments.last().getStartPosition() + segments.last().getLength() == ((MemorySegment) segments.last()).getSource().getDataSize()) {
+            MemorySegment prevSegment = (MemorySegment) segments.last();
+            prevSegment.getSource().insert(prevSegment.getSource().getDataSize(), insertedData, insertedDataOffset, insertedDataLength);
+            repository.updateSegmentLength(prevSegment, prevSegment.getLength() + insertedDataLength);
+            pointer.position += insertedDataLength;
             document.setDataLength(targetLength);
         } else {
             if (startFrom > pointer.position) {
@@ -241,7 +364,7 @@ public class DeltaDocumentWindow {
                 focusSegment(startFrom);
             }
             MemorySegment insertedSegment = repository.createMemorySegment();
-            repository.insertMemoryData(insertedSegment, 0, insertedData);
+            repository.insertMemoryData(insertedSegment, 0, insertedData, insertedDataOffset, insertedDataLength);
             if (pointer.segment == null) {
                 segments.add(insertedSegment);
             } else {
@@ -249,9 +372,8 @@ public class DeltaDocumentWindow {
             }
             pointer.segment = insertedSegment;
             document.setDataLength(targetLength);
-            tryMergeArea(startFrom, insertedData.length);
+            tryMergeArea(startFrom, insertedDataLength);
         }
-        document.notifyChangeListeners(this);
     }
 
     public void insert(long startFrom, @Nonnull BinaryData insertedData) {
@@ -404,42 +526,57 @@ public class DeltaDocumentWindow {
             throw new OutOfBoundsException("Removed area is out of bounds");
         }
 
-        DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
-        SegmentsRepository repository = document.getRepository();
         if (length > 0) {
-            long targetLength = document.getDataSize() - length;
-            focusSegment(startFrom + length);
-            splitSegment(startFrom + length);
-            focusSegment(startFrom);
-            splitSegment(startFrom);
-            focusSegment(startFrom);
+            removeData(startFrom, length);
+        }
+        document.notifyChangeListeners(this);
+    }
 
-            // Save position to return to
-            DataSegment prevSegment = (DataSegment) pointer.segment.getPrev();
-            long prevPointerPosition = prevSegment == null ? 0 : pointer.position - prevSegment.getLength();
+    private void removeData(long startFrom, long length) {
+        DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
+        SegmentsRepository repository = document.getRepository();
+        long targetLength = document.getDataSize() - length;
+        focusSegment(startFrom + length);
+        splitSegment(startFrom + length);
+        focusSegment(startFrom);
+        splitSegment(startFrom);
+        focusSegment(startFrom);
 
-            // Drop all segments in given range
-            while (length > 0) {
-                length -= pointer.segment.getLength();
-                DataSegment next = segments.nextTo(pointer.segment);
-                repository.dropSegment(pointer.segment);
-                segments.remove(pointer.segment);
-                pointer.segment = next;
-            }
+        // Save position to return to
+        DataSegment prevSegment = (DataSegment) pointer.segment.getPrev();
+        long prevPointerPosition = prevSegment == null ? 0 : pointer.position - prevSegment.getLength();
 
-            // Set pointer position
-            pointer.segment = prevSegment;
-            pointer.position = prevPointerPosition;
-            document.setDataLength(targetLength);
-            tryMergeSegments(startFrom);
+        // Drop all segments in given range
+        while (length > 0) {
+            length -= pointer.segment.getLength();
+            DataSegment next = segments.nextTo(pointer.segment);
+            repository.dropSegment(pointer.segment);
+            segments.remove(pointer.segment);
+            pointer.segment = next;
         }
-        document.notifyChangeListeners(this);
+
+        // Set pointer position
+        pointer.segment = prevSegment;
+        pointer.position = prevPointerPosition;
+        document.setDataLength(targetLength);
+        tryMergeSegments(startFrom);
     }
 
     public void reset() {
         pointer.setPointer(0, document.getSegments().first());
     }
 
+    /**
+     * Moves pointer to the same position as pointer of given window.
+     *
+     * Used after modification performed by other window of the same document.
+     *
+     * @param window modified window
+     */
+    /* package */ void syncPointer(@Nonnull DeltaDocumentWindow window) {
+        pointer.setPointer(window.pointer.position, window.pointer.segment);
+    }
+
     public void setDataSize(long dataSize) {
         document.setDataSize(dataSize);
     }
@@ -481,6 +618,8 @@ public class DeltaDocumentWindow {
             } else if (segment instanceof MemorySegment) {
                 MemorySegment memorySegment = (MemorySegment) segment;
                 copy.getSegments().add(repository.createMemorySegment(memorySegment.getSource(), memorySegment.getStartPosition() + offset, copyLength));
+            } else if (segment instanceof FillSegment) {
+                copy.getSegments().add(repository.createFillSegment(copyLength, ((FillSegment) segment).getFillValue()));
             } else {
                 FileSegment fileSegment = (FileSegment) segment;
                 copy.getSegments().add(repository.createFileSegment(fileSegment.getSource(), fileSegment.getStartPosition() + offset, copyLength));
@@ -496,8 +635,126 @@ public class DeltaDocumentWindow {
         return copy;
     }
 
+    /**
+     * Copies data to given array processing whole segments at once.
+     *
+     * @param startFrom start position
+     * @param target target array
+     * @param offset offset in target array
+     * @param length length of copied data
+     */
     public void copyToArray(long startFrom, @Nonnull byte[] target, int offset, int length) {
-        document.copyToArray(startFrom, target, offset, length);
+        if (length == 0) {
+            return;
+        }
+        if (startFrom < 0 || startFrom + length > getDataSize()) {
+            throw new OutOfBoundsException("Copied area is out of bounds");
+        }
+
+        focusSegment(startFrom);
+        DataSegment segment = pointer.segment;
+        long segmentOffset = startFrom - pointer.position;
+        while (length > 0) {
+            if (segment == null) {
+                throw new IllegalStateException("Unexpected end of segments sequence");
+            }
+
+            long segmentRemaining = segment.getLength() - segmentOffset;
+            int copyLength = segmentRemaining < length ? (int) segmentRemaining : length;
+            long sourcePosition = segment.getStartPosition() + segmentOffset;
+            if (segment instanceof MemorySegment) {
+                ((MemorySegment) segment).copyToArray(sourcePosition, target, offset, copyLength);
+            } else if (segment instanceof FillSegment) {
+                ((FillSegment) segment).copyToArray(sourcePosition, target, offset, copyLength);
+            } else {
+                ((FileSegment) segment).copyToArray(sourcePosition, target, offset, copyLength);
+            }
+
+            offset += copyLength;
+            length -= copyLength;
+            segmentOffset = 0;
+            segment = segment.getNext();
+        }
+    }
+
+    /**
+     * Copies data to given buffer.
+     *
+     * File segments are transferred to the buffer without intermediate array.
+     *
+     * @param startFrom start position
+     * @param target target buffer, position is advanced by length
+     * @param length length of copied data
+     */
+    public void copyToBuffer(long startFrom, @Nonnull ByteBuffer target, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (startFrom < 0 || startFrom + length > getDataSize()) {
+            throw new OutOfBoundsException("Copied area is out of bounds");
+        }
+        if (length > target.remaining()) {
+            throw new BufferOverflowException();
+        }
+
+        focusSegment(startFrom);
+        DataSegment segment = pointer.segment;
+        long segmentOffset = startFrom - pointer.position;
+        byte[] buffer = null;
+        while (length > 0) {
+            if (segment == null) {
+                throw new IllegalStateException("Unexpected end of segments sequence");
+            }
+
+            long segmentRemaining = segment.getLength() - segmentOffset;
+            int copyLength = segmentRemaining < length ? (int) segmentRemaining : length;
+            long sourcePosition = segment.getStartPosition() + segmentOffset;
+            if (segment instanceof MemorySegment) {
+                MemorySegment memorySegment = (MemorySegment) segment;
+                if (target.hasArray()) {
+                    int targetPosition = target.position();
+                    memorySegment.copyToArray(sourcePosition, target.array(), target.arrayOffset() + targetPosition, copyLength);
+                    target.position(targetPosition + copyLength);
+                } else {
+                    if (buffer == null) {
+                        buffer = new byte[Math.min(length, BUFFER_COPY_LIMIT)];
+                    }
+                    int remaining = copyLength;
+                    while (remaining > 0) {
+                        int chunkLength = Math.min(remaining, buffer.length);
+                        memorySegment.copyToArray(sourcePosition, buffer, 0, chunkLength);
+                        target.put(buffer, 0, chunkLength);
+                        sourcePosition += chunkLength;
+                        remaining -= chunkLength;
+                    }
+                }
+            } else if (segment instanceof FillSegment) {
+                byte fillValue = ((FillSegment) segment).getFillValue();
+                if (target.hasArray()) {
+                    int targetPosition = target.position();
+                    int targetOffset = target.arrayOffset() + targetPosition;
+                    Arrays.fill(target.array(), targetOffset, targetOffset + copyLength, fillValue);
+                    target.position(targetPosition + copyLength);
+                } else {
+                    if (buffer == null) {
+                        buffer = new byte[Math.min(length, BUFFER_COPY_LIMIT)];
+                    }
+                    int remaining = copyLength;
+                    while (remaining > 0) {
+                        int chunkLength = Math.min(remaining, buffer.length);
+                        Arrays.fill(buffer, 0, chunkLength, fillValue);
+                        target.put(buffer, 0, chunkLength);
+                        remaining -= chunkLength;
+                    }
+                }
+            } else {
+                ((FileSegment) segment).getSource().copyToBuffer(sourcePosition, target, copyLength);
+            }
+
+            length -= copyLength;
+            segmentOffset = 0;
+            segment = segment.getNext();
+        }
     }
 
     /**
@@ -523,6 +780,11 @@ public class DeltaDocumentWindow {
             MemorySegment newSegment = repository.createMemorySegment(memorySegment.getSource(), memorySegment.getStartPosition() + firstPartSize, memorySegment.getLength() - firstPartSize);
             repository.updateSegmentLength(memorySegment, firstPartSize);
             segments.addAfter(pointer.segment, newSegment);
+        } else if (pointer.segment instanceof FillSegment) {
+            FillSegment fillSegment = (FillSegment) pointer.segment;
+            FillSegment newSegment = repository.createFillSegment(fillSegment.getLength() - firstPartSize, fillSegment.getFillValue());
+            repository.updateSegmentLength(fillSegment, firstPartSize);
+            segments.addAfter(fillSegment, newSegment);
         } else {
             FileSegment fileSegment = (FileSegment) pointer.segment;
             FileSegment newSegment = repository.createFileSegment(fileSegment.getSource(), fileSegment.getStartPosition() + firstPartSize, fileSegment.getLength() - firstPartSize);
@@ -585,6 +847,22 @@ public class DeltaDocumentWindow {
             throw new OutOfBoundsException("Position index out of range");
         }
 
+        if (pointer.segment != null && position >= pointer.position && position < pointer.position + pointer.segment.getLength()) {
+            // Already focused
+            return;
+        }
+
+        if (segments instanceof IndexedSegmentsList && !isNearPointer(position)) {
+            IndexedSegmentsList indexedSegments = (IndexedSegmentsList) segments;
+            DataSegment segment = indexedSegments.findSegment(position);
+            if (segment == null) {
+                throw new IllegalStateException("Unexpected null segment");
+            }
+            pointer.segment = segment;
+            pointer.position = indexedSegments.getSegmentPosition(segment);
+            return;
+        }
+
         if (pointer.segment == null) {
             pointer.segment = segments.last();
             pointer.position = dataSize - pointer.segment.getLength();
@@ -624,10 +902,55 @@ public class DeltaDocumentWindow {
         }
     }
 
+    /**
+     * Returns true if given position is in segment directly preceding or
+     * following current pointer segment.
+     *
+     * @param position position
+     * @return true if position is near
+     */
+    private boolean isNearPointer(long position) {
+        if (pointer.segment == null) {
+            return false;
+        }
+
+        if (position >= pointer.position) {
+            DataSegment next = pointer.segment.getNext();
+            long nextPosition = pointer.position + pointer.segment.getLength();
+            return next != null && position < nextPosition + next.getLength();
+        }
+
+        DataSegment prev = pointer.segment.getPrev();
+        return prev != null && position >= pointer.position - prev.getLength();
+    }
+
+    /**
+     * Merges all adjacent segments in given area and on its boundaries.
+     *
+     * @param position start position
+     * @param length length of the area
+     */
     private void tryMergeArea(long position, long length) {
-        tryMergeSegments(position);
-        // TODO
-        tryMergeSegments(position + length);
+        if (getDataSize() == 0) {
+            return;
+        }
+
+        // Start with segment ending at or after the start of the area
+        focusSegment(position > 0 ? position - 1 : 0);
+        DataSegment segment = pointer.segment;
+        long segmentPosition = pointer.position;
+        if (segment == null) {
+            return;
+        }
+
+        long endPosition = position + length;
+        while (segment.getNext() != null && segmentPosition + segment.getLength() <= endPosition) {
+            if (!mergeWithNext(segment)) {
+                segmentPosition += segment.getLength();
+                segment = segment.getNext();
+            }
+        }
+        pointer.setPointer(segmentPosition, segment);
     }
 
     /**
@@ -635,25 +958,51 @@ public class DeltaDocumentWindow {
      *
      * @param position target position
      */
-    private boolean tryMergeSegments(long position) {
+    private void tryMergeSegments(long position) {
         if (position == 0 || position >= getDataSize()) {
+            return;
+        }
+
+        tryMergeArea(position, 0);
+    }
+
+    /**
+     * Merges segment with following segment if possible.
+     *
+     * File segments are merged if they are contiguous in the same source.
+     * Fill segments are merged if they have the same fill value.
+     * Memory segments are merged if they are contiguous in the same source or
+     * if following segment is short and can be appended to the end of the
+     * source of given segment.
+     *
+     * @param segment segment
+     * @return true if segments were merged
+     */
+    private boolean mergeWithNext(@Nonnull DataSegment segment) {
+        DataSegment nextSegment = segment.getNext();
+        if (nextSegment == null) {
             return false;
         }
 
         DefaultDoublyLinkedList<DataSegment> segments = document.getSegments();
         SegmentsRepository repository = document.getRepository();
-        focusSegment(position);
-        DataSegment nextSegment = pointer.segment;
-        focusSegment(position - 1);
-        DataSegment segment = pointer.segment;
-        if (segment == nextSegment) {
+        if (segment instanceof FileSegment && nextSegment instanceof FileSegment) {
+            FileSegment fileSegment = (FileSegment) segment;
+            FileSegment nextFileSegment = (FileSegment) nextSegment;
+            if (fileSegment.getSource() == nextFileSegment.getSource()
+                    && fileSegment.getStartPosition() + fileSegment.getLength() == nextFileSegment.getStartPosition()) {
+                repository.updateSegmentLength(segment, segment.getLength() + nextSegment.getLength());
+                repository.dropSegment(nextSegment);
+                segments.remove(nextSegment);
+                return true;
+            }
+
             return false;
         }
 
-        if (segment instanceof FileSegment && nextSegment instanceof FileSegment) {
-            if (((FileSegment) segment).getStartPosition() + segment.getLength() == ((FileSegment) nextSegment).getStartPosition()) {
+        if (segment instanceof FillSegment && nextSegment instanceof FillSegment) {
+            if (((FillSegment) segment).getFillValue() == ((FillSegment) nextSegment).getFillValue()) {
                 repository.updateSegmentLength(segment, segment.getLength() + nextSegment.getLength());
-                repository.dropSegment(nextSegment);
                 segments.remove(nextSegment);
                 return true;
             }
@@ -664,20 +1013,38 @@ public class DeltaDocumentWindow {
         if (segment instanceof MemorySegment && nextSegment instanceof MemorySegment) {
             MemorySegment memorySegment = (MemorySegment) segment;
             MemorySegment nextMemorySegment = (MemorySegment) nextSegment;
-            if (memorySegment.getSource() == nextMemorySegment.getSource()) {
-                if (memorySegment.getStartPosition() + segment.getLength() == nextMemorySegment.getStartPosition()) {
-                    repository.updateSegmentLength(memorySegment, segment.getLength() + nextSegment.getLength());
-                    repository.dropSegment(nextSegment);
-                    segments.remove(nextSegment);
-                    return true;
-                }
+            MemoryDataSource source = memorySegment.getSource();
+            if (source == nextMemorySegment.getSource()
+                    && memorySegment.getStartPosition() + segment.getLength() == nextMemorySegment.getStartPosition()) {
+                repository.updateSegmentLength(memorySegment, segment.getLength() + nextSegment.getLength());
+                repository.dropSegment(nextSegment);
+                segments.remove(nextSegment);
+                return true;
+            }
+
+            // Copy is skipped if it would exceed memory budget
+            if (nextSegment.getLength() <= MERGE_COPY_LIMIT
+                    && memorySegment.getStartPosition() + segment.getLength() == source.getDataSize()
+                    && repository.isWithinMemoryBudget(nextSegment.getLength())) {
+                source.insert(source.getDataSize(), nextMemorySegment.getSource(), nextMemorySegment.getStartPosition(), nextSegment.getLength());
+                repository.updateSegmentLength(memorySegment, segment.getLength() + nextSegment.getLength());
+                repository.dropSegment(nextSegment);
+                segments.remove(nextSegment);
+                return true;
             }
-            // TODO join two single memory segments?
         }
 
         return false;
     }
 
+    /**
+     * Merges all adjacent segments of the document.
+     */
+    public void compact() {
+        tryMergeArea(0, getDataSize());
+        document.notifyChangeListeners(this);
+    }
+
     public void validatePointerPosition() {
         if (pointer.segment == null) {
             if (pointer.position > 0 && pointer.position < getDataSize()) {
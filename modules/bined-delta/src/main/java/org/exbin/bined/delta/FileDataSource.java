@@ -19,16 +19,27 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Data source for access to file resource locking it for exclusive access.
  *
- * @version 0.2.0 2018/04/27
+ * While the file is modified by in-place save, reads return original content
+ * of the file using journal of the save.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class FileDataSource {
@@ -36,17 +47,35 @@ public class FileDataSource {
     @Nonnull
     private final File file;
     @Nonnull
-    private final RandomAccessFile accessFile;
+    private final EditationMode editationMode;
+    @Nonnull
+    private RandomAccessFile accessFile;
     @Nonnull
     private final DeltaDataPageWindow window;
+    @Nullable
+    private final DeltaDataMappedWindow mappedWindow;
+    @Nonnull
+    private final CacheMode cacheMode;
+    /**
+     * Journal of running in-place save or null.
+     */
+    @Nullable
+    private volatile SaveJournal saveJournal = null;
     private boolean closed = false;
 
     private final List<CacheClearListener> listeners = new ArrayList<>();
 
-    public FileDataSource(@Nonnull File sourceFile, @Nonnull EditationMode editationMode) throws FileNotFoundException, IOException {
+    public FileDataSource(@Nonnull File sourceFile, @Nonnull EditationMode editationMode, @Nonnull CacheMode cacheMode) throws FileNotFoundException, IOException {
         file = sourceFile;
+        this.editationMode = editationMode;
+        this.cacheMode = cacheMode;
         accessFile = new RandomAccessFile(sourceFile, editationMode.getFileAccessMode());
         window = new DeltaDataPageWindow(this);
+        mappedWindow = cacheMode == CacheMode.MAPPED ? new DeltaDataMappedWindow(this, window) : null;
+    }
+
+    public FileDataSource(@Nonnull File sourceFile, @Nonnull EditationMode editationMode) throws FileNotFoundException, IOException {
+        this(sourceFile, editationMode, CacheMode.PAGED);
     }
 
     public FileDataSource(@Nonnull File sourceFile) throws FileNotFoundException, IOException {
@@ -55,11 +84,19 @@ public class FileDataSource {
 
     public long getFileLength() throws IOException {
         checkClosed();
+        SaveJournal journal = saveJournal;
+        if (journal != null) {
+            return journal.getOriginalLength();
+        }
+
         return accessFile.length();
     }
 
     public void setFileLength(long length) throws IOException {
         checkClosed();
+        // Mapped regions must not outlive truncated part of the file
+        unmapRegions();
+        clearCache();
         accessFile.setLength(length);
     }
 
@@ -74,9 +111,138 @@ public class FileDataSource {
         return accessFile;
     }
 
+    @Nonnull
+    public EditationMode getEditationMode() {
+        return editationMode;
+    }
+
+    @Nonnull
+    public CacheMode getCacheMode() {
+        return cacheMode;
+    }
+
+    /**
+     * Returns page cache window shared by all segments of this source.
+     *
+     * Can be used to configure cache layout and to read cache statistics.
+     *
+     * @return page window
+     */
+    @Nonnull
+    public DeltaDataPageWindow getPageWindow() {
+        return window;
+    }
+
     public byte getByte(long position) {
         checkClosed();
-        return window.getByte(position);
+        byte value = mappedWindow != null ? mappedWindow.getByte(position) : window.getByte(position);
+        SaveJournal journal = saveJournal;
+        if (journal != null) {
+            byte[] data = new byte[]{value};
+            readPreimages(journal, position, ByteBuffer.wrap(data));
+            value = data[0];
+        }
+
+        return value;
+    }
+
+    /**
+     * Copies data from file to given array.
+     *
+     * @param position source position
+     * @param target target array
+     * @param offset offset in target array
+     * @param length length of copied data
+     * @throws UncheckedIOException if data cannot be read
+     */
+    public void copyToArray(long position, @Nonnull byte[] target, int offset, int length) {
+        checkClosed();
+        if (mappedWindow != null) {
+            mappedWindow.copyToArray(position, target, offset, length);
+        } else if (length > window.getPageSize()) {
+            // Read larger blocks directly without polluting page cache
+            readDirectly(position, target, offset, length);
+        } else {
+            window.copyToArray(position, target, offset, length);
+        }
+
+        SaveJournal journal = saveJournal;
+        if (journal != null) {
+            readPreimages(journal, position, ByteBuffer.wrap(target, offset, length));
+        }
+    }
+
+    /**
+     * Copies data from file to given buffer.
+     *
+     * Buffers without accessible array, such as direct buffers, are filled
+     * from mapped regions or by reading from file channel without
+     * intermediate array.
+     *
+     * @param position source position
+     * @param target target buffer, position is advanced by length
+     * @param length length of copied data
+     * @throws UncheckedIOException if data cannot be read
+     */
+    public void copyToBuffer(long position, @Nonnull ByteBuffer target, int length) {
+        checkClosed();
+        if (target.hasArray()) {
+            int targetPosition = target.position();
+            copyToArray(position, target.array(), target.arrayOffset() + targetPosition, length);
+            target.position(targetPosition + length);
+            return;
+        }
+
+        ByteBuffer buffer = target.duplicate();
+        buffer.limit(buffer.position() + length);
+        if (mappedWindow != null) {
+            mappedWindow.copyToBuffer(position, target, length);
+        } else {
+            readDirectly(position, buffer.duplicate());
+            target.position(target.position() + length);
+        }
+
+        SaveJournal journal = saveJournal;
+        if (journal != null) {
+            readPreimages(journal, position, buffer);
+        }
+    }
+
+    private void readDirectly(long position, @Nonnull byte[] target, int offset, int length) {
+        readDirectly(position, ByteBuffer.wrap(target, offset, length));
+    }
+
+    private void readDirectly(long position, @Nonnull ByteBuffer buffer) {
+        FileChannel channel = accessFile.getChannel();
+        try {
+            while (buffer.hasRemaining()) {
+                int red = channel.read(buffer, position);
+                if (red < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                position += red;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read file data", ex);
+        }
+    }
+
+    /**
+     * Sets journal of running in-place save, which provides original content
+     * of overwritten regions.
+     *
+     * @param saveJournal journal or null when save is finished
+     */
+    /* package */ void setSaveJournal(@Nullable SaveJournal saveJournal) {
+        this.saveJournal = saveJournal;
+    }
+
+    private void readPreimages(@Nonnull SaveJournal journal, long position, @Nonnull ByteBuffer target) {
+        try {
+            journal.readPreimages(position, target);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read original data from save journal", ex);
+        }
     }
 
     /**
@@ -88,8 +254,53 @@ public class FileDataSource {
         }
     }
 
+    /**
+     * Unmaps memory mapped regions, so that the file can be truncated or
+     * replaced.
+     */
+    private void unmapRegions() {
+        if (mappedWindow != null) {
+            mappedWindow.unmapRegions();
+        }
+    }
+
+    /**
+     * Replaces the file by given file and reopens it.
+     *
+     * Replacement file is moved over the source file atomically if supported
+     * by the file system. File permissions are preserved where possible.
+     *
+     * @param replacementFile file with new content
+     * @throws IOException if input/output error
+     */
+    /* package */ void replaceFile(@Nonnull File replacementFile) throws IOException {
+        checkClosed();
+        unmapRegions();
+        clearCache();
+        Path targetPath = file.toPath();
+        Path sourcePath = replacementFile.toPath();
+        try {
+            Files.setPosixFilePermissions(sourcePath, Files.getPosixFilePermissions(targetPath));
+        } catch (UnsupportedOperationException ex) {
+            // Not a POSIX file system
+        }
+
+        // File must be closed before move on some platforms
+        accessFile.close();
+        try {
+            try {
+                Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            accessFile = new RandomAccessFile(file, editationMode.getFileAccessMode());
+        }
+    }
+
     public void close() {
         checkClosed();
+        clearCache();
         try {
             accessFile.close();
         } catch (IOException ex) {
@@ -117,6 +328,22 @@ public class FileDataSource {
         public void clearCache();
     }
 
+    public static enum CacheMode {
+        /**
+         * Data are read in small pages using random access file.
+         */
+        PAGED,
+        /**
+         * Data are read from lazily memory mapped regions of the file.
+         *
+         * Page window is used as fallback if file cannot be mapped. Regions
+         * are unmapped before the file is truncated or replaced, where
+         * runtime doesn't support it, truncation or replacement can fail on
+         * Windows while regions are not garbage collected.
+         */
+        MAPPED
+    }
+
     public static enum EditationMode {
         READ_WRITE("rw"),
         READ_ONLY("r");
@@ -48,6 +48,7 @@ public class FileSegment extends DataSegment {
 
     public void setStartPosition(long startPosition) {
         this.startPosition = startPosition;
+        notifyPositionChanged();
     }
 
     @Override
@@ -57,12 +58,17 @@ public class FileSegment extends DataSegment {
 
     public void setLength(long length) {
         this.length = length;
+        notifyLengthChanged();
     }
 
     public byte getByte(long position) {
         return source.getByte(position);
     }
 
+    public void copyToArray(long position, @Nonnull byte[] target, int offset, int length) {
+        source.copyToArray(position, target, offset, length);
+    }
+
     @Nonnull
     @Override
     public DataSegment copy() {
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Data segment of single repeated byte value.
+ *
+ * Only length and value are stored, segment has no data source.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class FillSegment extends DataSegment {
+
+    private long length;
+    private final byte fillValue;
+
+    public FillSegment(long length, byte fillValue) {
+        this.length = length;
+        this.fillValue = fillValue;
+    }
+
+    @Override
+    public long getStartPosition() {
+        return 0;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+        notifyLengthChanged();
+    }
+
+    public byte getFillValue() {
+        return fillValue;
+    }
+
+    public byte getByte(long position) {
+        return fillValue;
+    }
+
+    public void copyToArray(long position, @Nonnull byte[] target, int offset, int length) {
+        Arrays.fill(target, offset, offset + length, fillValue);
+    }
+
+    @Nonnull
+    @Override
+    public DataSegment copy() {
+        return new FillSegment(length, fillValue);
+    }
+}
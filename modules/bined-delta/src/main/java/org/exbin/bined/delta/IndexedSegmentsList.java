@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.exbin.bined.delta.list.DefaultDoublyLinkedList;
+
+/**
+ * Doubly linked list of data segments indexed by balanced tree.
+ *
+ * Tree is ordered in the same way as the list and each node keeps total
+ * length of segments in its subtree, which allows to find segment for given
+ * position and position of given segment in logarithmic time. Changes of
+ * segment length and data position are propagated to the tree by the segment
+ * itself.
+ *
+ * Tree can be shared with snapshots of the document. Nodes existing at the
+ * time of sharing are never modified later, node is copied together with the
+ * path to the root instead, so sharing doesn't copy anything and each later
+ * change copies only logarithmic count of nodes. Parent links are valid only
+ * for the current tree.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class IndexedSegmentsList extends DefaultDoublyLinkedList<DataSegment> {
+
+    @Nullable
+    private TreeNode root = null;
+    @Nonnull
+    private final Random random = new Random();
+    /**
+     * Version of the tree, nodes of older versions are shared.
+     */
+    private long version = 0;
+
+    public IndexedSegmentsList() {
+    }
+
+    @Override
+    public boolean add(@Nonnull DataSegment segment) {
+        super.add(segment);
+        insertNode(segment);
+        return true;
+    }
+
+    @Override
+    public void add(int index, @Nonnull DataSegment segment) {
+        if (index == 0 && isEmpty()) {
+            add(segment);
+            return;
+        }
+
+        super.add(index, segment);
+        insertNode(segment);
+    }
+
+    @Override
+    public void addAfter(@Nonnull DataSegment positionItem, @Nonnull DataSegment segment) {
+        super.addAfter(positionItem, segment);
+        insertNode(segment);
+    }
+
+    @Override
+    public void addBefore(@Nonnull DataSegment positionItem, @Nonnull DataSegment segment) {
+        super.addBefore(positionItem, segment);
+        insertNode(segment);
+    }
+
+    @Nonnull
+    @Override
+    public DataSegment set(int index, @Nonnull DataSegment segment) {
+        DataSegment item = get(index);
+        addBefore(item, segment);
+        remove(item);
+        return item;
+    }
+
+    @Nullable
+    @Override
+    public DataSegment remove(int index) {
+        DataSegment item = get(index);
+        if (item != null) {
+            remove(item);
+        }
+
+        return item;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        removeNode((DataSegment) o);
+        return super.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        DataSegment segment = first();
+        while (segment != null) {
+            segment.setTreeNode(null);
+            segment = segment.getNext();
+        }
+        root = null;
+        super.clear();
+    }
+
+    /**
+     * Returns root of the current tree and marks all nodes as shared.
+     *
+     * Returned tree keeps the current content while the list is modified.
+     *
+     * @return root node or null for empty list
+     */
+    @Nullable
+    /* package */ TreeNode share() {
+        version++;
+        return root;
+    }
+
+    /**
+     * Returns root of the current tree.
+     *
+     * @return root node or null for empty list
+     */
+    @Nullable
+    /* package */ TreeNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns total length of all segments.
+     *
+     * @return length in bytes
+     */
+    public long getTotalLength() {
+        return root == null ? 0 : root.subtreeLength;
+    }
+
+    /**
+     * Returns segment containing given position.
+     *
+     * @param position position
+     * @return segment or null if position is out of segments
+     */
+    @Nullable
+    public DataSegment findSegment(long position) {
+        TreeNode node = root;
+        while (node != null) {
+            long leftLength = node.left == null ? 0 : node.left.subtreeLength;
+            if (position < leftLength) {
+                node = node.left;
+            } else if (position < leftLength + node.length) {
+                return node.segment;
+            } else {
+                position -= leftLength + node.length;
+                node = node.right;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns position of the start of the given segment.
+     *
+     * @param segment segment in this list
+     * @return start position
+     */
+    public long getSegmentPosition(@Nonnull DataSegment segment) {
+        TreeNode node = segment.getTreeNode();
+        if (node == null) {
+            throw new IllegalArgumentException("Segment is not indexed");
+        }
+
+        long position = node.left == null ? 0 : node.left.subtreeLength;
+        while (node.parent != null) {
+            TreeNode parent = node.parent;
+            if (parent.right == node) {
+                position += parent.length + (parent.left == null ? 0 : parent.left.subtreeLength);
+            }
+            node = parent;
+        }
+
+        return position;
+    }
+
+    /**
+     * Returns node of the current version for given node of the current tree.
+     *
+     * Shared node is copied together with all shared nodes on the path to the
+     * root.
+     *
+     * @param node node of the current tree
+     * @return node which can be modified
+     */
+    @Nonnull
+    private TreeNode own(@Nonnull TreeNode node) {
+        if (node.version == version) {
+            return node;
+        }
+
+        TreeNode parent = node.parent == null ? null : own(node.parent);
+        TreeNode copy = new TreeNode(node, version);
+        if (parent == null) {
+            root = copy;
+        } else if (parent.left == node) {
+            parent.left = copy;
+        } else {
+            parent.right = copy;
+        }
+        if (copy.left != null) {
+            copy.left.parent = copy;
+        }
+        if (copy.right != null) {
+            copy.right.parent = copy;
+        }
+        copy.segment.setTreeNode(copy);
+        return copy;
+    }
+
+    private void insertNode(@Nonnull DataSegment segment) {
+        TreeNode node = new TreeNode(this, segment, random.nextInt(), version);
+        segment.setTreeNode(node);
+
+        DataSegment prev = segment.getPrev();
+        TreeNode prevNode = prev == null ? null : prev.getTreeNode();
+        if (root == null) {
+            root = node;
+            return;
+        }
+
+        if (prevNode == null) {
+            TreeNode parent = own(root);
+            while (parent.left != null) {
+                parent = own(parent.left);
+            }
+            parent.left = node;
+            node.parent = parent;
+        } else if (prevNode.right == null) {
+            prevNode = own(prevNode);
+            prevNode.right = node;
+            node.parent = prevNode;
+        } else {
+            TreeNode parent = own(prevNode.right);
+            while (parent.left != null) {
+                parent = own(parent.left);
+            }
+            parent.left = node;
+            node.parent = parent;
+        }
+
+        TreeNode parent = node.parent;
+        while (parent != null) {
+            parent.subtreeLength += node.length;
+            parent = parent.parent;
+        }
+
+        while (node.parent != null && node.parent.priority < node.priority) {
+            rotateUp(node);
+        }
+    }
+
+    private void removeNode(@Nonnull DataSegment segment) {
+        TreeNode node = segment.getTreeNode();
+        if (node == null) {
+            return;
+        }
+
+        node = own(node);
+        while (node.left != null && node.right != null) {
+            rotateUp(own(node.left.priority > node.right.priority ? node.left : node.right));
+        }
+
+        TreeNode child = node.left != null ? node.left : node.right;
+        TreeNode parent = node.parent;
+        if (child != null) {
+            child.parent = parent;
+        }
+        if (parent == null) {
+            root = child;
+        } else {
+            if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+
+            while (parent != null) {
+                parent.subtreeLength -= node.length;
+                parent = parent.parent;
+            }
+        }
+
+        node.parent = null;
+        node.left = null;
+        node.right = null;
+        segment.setTreeNode(null);
+    }
+
+    /**
+     * Rotates given node one level up.
+     *
+     * Node and all it's ancestors must be of the current version.
+     *
+     * @param node node
+     */
+    private void rotateUp(@Nonnull TreeNode node) {
+        TreeNode parent = node.parent;
+        TreeNode grandParent = parent.parent;
+        if (parent.left == node) {
+            parent.left = node.right;
+            if (node.right != null) {
+                node.right.parent = parent;
+            }
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+            if (node.left != null) {
+                node.left.parent = parent;
+            }
+            node.left = parent;
+        }
+        parent.parent = node;
+        node.parent = grandParent;
+        if (grandParent == null) {
+            root = node;
+        } else if (grandParent.left == parent) {
+            grandParent.left = node;
+        } else {
+            grandParent.right = node;
+        }
+
+        parent.updateSubtreeLength();
+        node.updateSubtreeLength();
+    }
+
+    /**
+     * Tree node for indexed segment.
+     *
+     * Node keeps copy of the segment data position, so that shared node keeps
+     * referencing the same data after the segment is changed.
+     */
+    /* package */ static class TreeNode {
+
+        @Nonnull
+        final IndexedSegmentsList list;
+        @Nonnull
+        final DataSegment segment;
+        final int priority;
+        final long version;
+        @Nullable
+        Object source;
+        long startPosition;
+        long length;
+        long subtreeLength;
+        @Nullable
+        TreeNode parent;
+        @Nullable
+        TreeNode left;
+        @Nullable
+        TreeNode right;
+
+        TreeNode(@Nonnull IndexedSegmentsList list, @Nonnull DataSegment segment, int priority, long version) {
+            this.list = list;
+            this.segment = segment;
+            this.priority = priority;
+            this.version = version;
+            source = getSource(segment);
+            startPosition = segment.getStartPosition();
+            length = segment.getLength();
+            subtreeLength = length;
+        }
+
+        TreeNode(@Nonnull TreeNode node, long version) {
+            list = node.list;
+            segment = node.segment;
+            priority = node.priority;
+            this.version = version;
+            source = node.source;
+            startPosition = node.startPosition;
+            length = node.length;
+            subtreeLength = node.subtreeLength;
+            parent = node.parent;
+            left = node.left;
+            right = node.right;
+        }
+
+        void updateSubtreeLength() {
+            subtreeLength = length + (left == null ? 0 : left.subtreeLength) + (right == null ? 0 : right.subtreeLength);
+        }
+
+        /**
+         * Propagates change of the segment length up to the root.
+         */
+        void lengthChanged() {
+            long difference = segment.getLength() - length;
+            if (difference == 0) {
+                return;
+            }
+
+            TreeNode node = list.own(this);
+            node.length += difference;
+            while (node != null) {
+                node.subtreeLength += difference;
+                node = node.parent;
+            }
+        }
+
+        /**
+         * Updates copy of the segment data position.
+         */
+        void positionChanged() {
+            Object segmentSource = getSource(segment);
+            if (segmentSource == source && segment.getStartPosition() == startPosition) {
+                return;
+            }
+
+            TreeNode node = list.own(this);
+            node.source = segmentSource;
+            node.startPosition = segment.getStartPosition();
+        }
+
+        /**
+         * Returns byte of data of the node.
+         *
+         * @param offset offset in the node
+         * @return byte value
+         */
+        byte getByte(long offset) {
+            if (source instanceof MemoryDataSource) {
+                return ((MemoryDataSource) source).getByte(startPosition + offset);
+            } else if (source instanceof FileDataSource) {
+                return ((FileDataSource) source).getByte(startPosition + offset);
+            }
+
+            return ((FillSegment) segment).getFillValue();
+        }
+
+        /**
+         * Copies data of the node.
+         *
+         * @param offset offset in the node
+         * @param target target array
+         * @param targetOffset offset in the target array
+         * @param count count of bytes
+         */
+        void copyToArray(long offset, @Nonnull byte[] target, int targetOffset, int count) {
+            if (source instanceof MemoryDataSource) {
+                ((MemoryDataSource) source).copyToArray(startPosition + offset, target, targetOffset, count);
+            } else if (source instanceof FileDataSource) {
+                ((FileDataSource) source).copyToArray(startPosition + offset, target, targetOffset, count);
+            } else {
+                Arrays.fill(target, targetOffset, targetOffset + count, ((FillSegment) segment).getFillValue());
+            }
+        }
+
+        @Nullable
+        private static Object getSource(@Nonnull DataSegment segment) {
+            if (segment instanceof MemorySegment) {
+                return ((MemorySegment) segment).getSource();
+            } else if (segment instanceof FileSegment) {
+                return ((FileSegment) segment).getSource();
+            }
+
+            return null;
+        }
+    }
+}
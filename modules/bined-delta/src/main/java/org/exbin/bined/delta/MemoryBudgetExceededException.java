@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+/**
+ * Exception thrown when modification would exceed memory budget of segments
+ * repository.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class MemoryBudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long requiredSize;
+    private final long memoryBudget;
+
+    public MemoryBudgetExceededException(long requiredSize, long memoryBudget) {
+        super("Memory budget of " + memoryBudget + " bytes exceeded by request of " + requiredSize + " bytes");
+        this.requiredSize = requiredSize;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getRequiredSize() {
+        return requiredSize;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+}
@@ -26,19 +26,19 @@ import org.exbin.utils.binary_data.PagedData;
 /**
  * Data source for binary data stored in memory.
  *
- * @version 0.2.0 2018/04/27
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class MemoryDataSource implements EditableBinaryData {
 
     @Nonnull
-    private final PagedData data;
+    private final EditableBinaryData data;
 
     public MemoryDataSource() {
         data = new PagedData();
     }
 
-    public MemoryDataSource(@Nonnull PagedData data) {
+    public MemoryDataSource(@Nonnull EditableBinaryData data) {
         this.data = data;
     }
 
@@ -69,7 +69,7 @@ public class MemoryDataSource implements EditableBinaryData {
 
     @Override
     public void insert(long startFrom, @Nonnull BinaryData insertedData) {
-        data.insert(startFrom, insertedData);
+        data.insert(startFrom, unwrap(insertedData));
     }
 
     @Override
@@ -121,7 +121,7 @@ public class MemoryDataSource implements EditableBinaryData {
 
     @Override
     public void insert(long startFrom, @Nonnull BinaryData insertedData, long insertedDataOffset, long insertedDataLength) {
-        data.insert(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+        data.insert(startFrom, unwrap(insertedData), insertedDataOffset, insertedDataLength);
     }
 
     @Override
@@ -186,8 +186,29 @@ public class MemoryDataSource implements EditableBinaryData {
         return data.getDataInputStream();
     }
 
+    /**
+     * Returns size of heap memory used by data of this source.
+     *
+     * @return size in bytes
+     */
+    public long getResidentSize() {
+        return data instanceof SpillablePagedData ? ((SpillablePagedData) data).getResidentSize() : data.getDataSize();
+    }
+
     @Override
     public void dispose() {
         data.dispose();
     }
+
+    /**
+     * Returns backing data of memory source so that data can share it's
+     * content if possible.
+     *
+     * @param binaryData binary data
+     * @return backing data or binary data itself
+     */
+    @Nonnull
+    private static BinaryData unwrap(@Nonnull BinaryData binaryData) {
+        return binaryData instanceof MemoryDataSource ? ((MemoryDataSource) binaryData).data : binaryData;
+    }
 }
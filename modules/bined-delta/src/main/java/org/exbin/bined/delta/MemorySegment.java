@@ -43,6 +43,7 @@ public class MemorySegment extends DataSegment {
 
     public void setSource(@Nonnull MemoryDataSource source) {
         this.source = source;
+        notifyPositionChanged();
     }
 
     @Override
@@ -52,6 +53,7 @@ public class MemorySegment extends DataSegment {
 
     public void setStartPosition(long startPosition) {
         this.startPosition = startPosition;
+        notifyPositionChanged();
     }
 
     @Override
@@ -61,12 +63,17 @@ public class MemorySegment extends DataSegment {
 
     public void setLength(long length) {
         this.length = length;
+        notifyLengthChanged();
     }
 
     public byte getByte(long position) {
         return source.getByte(position);
     }
 
+    public void copyToArray(long position, @Nonnull byte[] target, int offset, int length) {
+        source.copyToArray(position, target, offset, length);
+    }
+
     @Nonnull
     @Override
     public DataSegment copy() {
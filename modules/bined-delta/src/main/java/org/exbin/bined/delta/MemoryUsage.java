@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * Snapshot of memory usage of segments repository.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class MemoryUsage {
+
+    private final int memorySourcesCount;
+    private final int memorySegmentsCount;
+    private final int fileSourcesCount;
+    private final int fileSegmentsCount;
+    private final long allocatedSize;
+    private final long liveSize;
+    private final long heapSize;
+    private final long spilledSize;
+    @Nonnull
+    private final Map<MemoryDataSource, Long> sourceHeapSizes;
+    @Nonnull
+    private final Map<DeltaDocument, Long> documentMemorySizes;
+
+    /* package */ MemoryUsage(int memorySourcesCount, int memorySegmentsCount, int fileSourcesCount, int fileSegmentsCount, long allocatedSize, long liveSize, long heapSize, long spilledSize, @Nonnull Map<MemoryDataSource, Long> sourceHeapSizes, @Nonnull Map<DeltaDocument, Long> documentMemorySizes) {
+        this.memorySourcesCount = memorySourcesCount;
+        this.memorySegmentsCount = memorySegmentsCount;
+        this.fileSourcesCount = fileSourcesCount;
+        this.fileSegmentsCount = fileSegmentsCount;
+        this.allocatedSize = allocatedSize;
+        this.liveSize = liveSize;
+        this.heapSize = heapSize;
+        this.spilledSize = spilledSize;
+        this.sourceHeapSizes = Collections.unmodifiableMap(sourceHeapSizes);
+        this.documentMemorySizes = Collections.unmodifiableMap(documentMemorySizes);
+    }
+
+    public int getMemorySourcesCount() {
+        return memorySourcesCount;
+    }
+
+    public int getMemorySegmentsCount() {
+        return memorySegmentsCount;
+    }
+
+    public int getFileSourcesCount() {
+        return fileSourcesCount;
+    }
+
+    public int getFileSegmentsCount() {
+        return fileSegmentsCount;
+    }
+
+    /**
+     * Returns total size of data of all memory sources.
+     *
+     * @return size in bytes
+     */
+    public long getAllocatedSize() {
+        return allocatedSize;
+    }
+
+    /**
+     * Returns size of data of memory sources referenced by segments.
+     *
+     * @return size in bytes
+     */
+    public long getLiveSize() {
+        return liveSize;
+    }
+
+    /**
+     * Returns size of memory pages held in heap.
+     *
+     * @return size in bytes
+     */
+    public long getHeapSize() {
+        return heapSize;
+    }
+
+    /**
+     * Returns size of scratch file of spill store.
+     *
+     * @return size in bytes
+     */
+    public long getSpilledSize() {
+        return spilledSize;
+    }
+
+    /**
+     * Returns ratio of allocated memory data not referenced by any segment.
+     *
+     * @return fragmentation ratio from 0 to 1
+     */
+    public double getFragmentation() {
+        return allocatedSize == 0 ? 0 : (double) (allocatedSize - liveSize) / allocatedSize;
+    }
+
+    /**
+     * Returns heap size used by each memory source.
+     *
+     * Pages shared by multiple sources are included for each of them.
+     *
+     * @return map of memory source to size in bytes
+     */
+    @Nonnull
+    public Map<MemoryDataSource, Long> getSourceHeapSizes() {
+        return sourceHeapSizes;
+    }
+
+    /**
+     * Returns size of memory data referenced by each document.
+     *
+     * @return map of document to size in bytes
+     */
+    @Nonnull
+    public Map<DeltaDocument, Long> getDocumentMemorySizes() {
+        return documentMemorySizes;
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.exbin.bined.search.BytePattern;
+import org.exbin.bined.search.IndexableMatcher;
+import org.exbin.bined.search.SearchIndex;
+import org.exbin.bined.search.SearchMatcher;
+
+/**
+ * Persistent index of 4-grams of read-only file for repeated searches.
+ *
+ * File is split into blocks and for each block, set of hashes of 4-grams
+ * starting in the block is stored as bitmap. Search for pattern is then
+ * limited to blocks containing all 4-grams of the pattern. Bitmaps of 64
+ * blocks are stored together, so that bits of single hash can be read for
+ * all blocks with one read per 64 blocks. With default settings index takes
+ * one eighth of the file size.
+ *
+ * Index is stored in index file together with size and modification time of
+ * the indexed file and it's used only while both match. Index file should be
+ * therefore stored in location not writable by other users.
+ *
+ * Positions returned by the index are positions in the file, so it can be
+ * used only for search in unmodified content of the file, see
+ * {@link #isIndexOf(DeltaDocument)}.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class NgramIndex implements SearchIndex, Closeable {
+
+    public static final int GRAM_LENGTH = 4;
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_BUCKETS_COUNT = 1024 * 1024;
+
+    private static final long FORMAT_MAGIC = 0x42696e456449647aL;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 4 + 4;
+    private static final int BLOCKS_PER_GROUP = 64;
+    private static final int MAX_QUERY_GRAMS = 8;
+    private static final int HASH_MULTIPLIER = 0x9e3779b1;
+
+    @Nonnull
+    private final FileDataSource source;
+    @Nonnull
+    private final File sourceFile;
+    @Nonnull
+    private final File indexFile;
+    private final int blockSize;
+    private final int bucketsCount;
+    private final int hashShift;
+
+    @Nullable
+    private volatile RandomAccessFile indexAccessFile = null;
+    private volatile long indexedLength = 0;
+
+    public NgramIndex(@Nonnull FileDataSource source, @Nonnull File indexFile) {
+        this(source, indexFile, DEFAULT_BLOCK_SIZE, DEFAULT_BUCKETS_COUNT);
+    }
+
+    /**
+     * Creates index of read-only file source and opens index file if it's
+     * valid.
+     *
+     * @param source file source
+     * @param indexFile index file
+     * @param blockSize size of indexed block in bytes
+     * @param bucketsCount count of hash buckets, power of two
+     */
+    public NgramIndex(@Nonnull FileDataSource source, @Nonnull File indexFile, int blockSize, int bucketsCount) {
+        if (source.getEditationMode() != FileDataSource.EditationMode.READ_ONLY) {
+            throw new IllegalArgumentException("Only read-only file source can be indexed");
+        }
+        if (blockSize < GRAM_LENGTH) {
+            throw new IllegalArgumentException("Block size is too small");
+        }
+        if (bucketsCount < 2 || Integer.bitCount(bucketsCount) != 1) {
+            throw new IllegalArgumentException("Count of buckets must be power of two");
+        }
+
+        this.source = source;
+        this.sourceFile = source.getFile();
+        this.indexFile = indexFile;
+        this.blockSize = blockSize;
+        this.bucketsCount = bucketsCount;
+        hashShift = Integer.SIZE - Integer.numberOfTrailingZeros(bucketsCount);
+        openIndexFile();
+    }
+
+    /**
+     * Returns default location of index file for given file in cache
+     * directory of the current user.
+     *
+     * Index is trusted while size and modification time of the file match,
+     * so the directory is created accessible only by its owner and it's
+     * rejected if other users can modify it.
+     *
+     * @param sourceFile indexed file
+     * @return index file
+     * @throws IOException if directory cannot be created or is not private
+     */
+    @Nonnull
+    public static File getDefaultIndexFile(@Nonnull File sourceFile) throws IOException {
+        Path indexDirectory = Paths.get(System.getProperty("user.home"), ".cache", "bined-index");
+        Path cacheDirectory = indexDirectory.getParent();
+        Files.createDirectories(cacheDirectory);
+        boolean posix = Files.getFileStore(cacheDirectory).supportsFileAttributeView(PosixFileAttributeView.class);
+        if (!Files.isDirectory(indexDirectory, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                if (posix) {
+                    Files.createDirectory(indexDirectory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectory(indexDirectory);
+                }
+            } catch (FileAlreadyExistsException ex) {
+                // Checked below
+            }
+        }
+        checkPrivateDirectory(indexDirectory, posix);
+
+        String path = sourceFile.getAbsolutePath();
+        return indexDirectory.resolve(sourceFile.getName() + "-" + Integer.toHexString(path.hashCode()) + ".ngi").toFile();
+    }
+
+    private static void checkPrivateDirectory(@Nonnull Path directory, boolean posix) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Index directory " + directory + " is not a directory");
+        }
+        if (!posix) {
+            return;
+        }
+
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal userHomeOwner = Files.getOwner(Paths.get(System.getProperty("user.home")));
+        Set<PosixFilePermission> permissions = attributes.permissions();
+        if (!attributes.owner().equals(userHomeOwner)
+                || permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("Index directory " + directory + " is not private to the current user");
+        }
+    }
+
+    @Nonnull
+    public FileDataSource getSource() {
+        return source;
+    }
+
+    @Nonnull
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Returns true if index is built and matches current state of the file.
+     *
+     * @return true if index can be used
+     */
+    public boolean isReady() {
+        RandomAccessFile accessFile = indexAccessFile;
+        if (accessFile == null) {
+            return false;
+        }
+
+        try {
+            return isValidHeader(accessFile);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns count of bytes indexed by running or last build.
+     *
+     * @return count of bytes
+     */
+    public long getIndexedLength() {
+        return indexedLength;
+    }
+
+    /**
+     * Returns true if content of given document is unmodified content of
+     * the indexed file, so that the index can be used for search in it.
+     *
+     * @param document document
+     * @return true if index applies to the document
+     */
+    public boolean isIndexOf(@Nonnull DeltaDocument document) {
+        Lock lock = document.getRepository().getLock().readLock();
+        lock.lock();
+        try {
+            long dataSize = document.getDataSize();
+            if (dataSize != sourceFile.length()) {
+                return false;
+            }
+            if (dataSize == 0) {
+                return true;
+            }
+
+            DataSegment segment = document.getSegments().first();
+            return document.getSegmentsCount() == 1 && segment instanceof FileSegment
+                    && ((FileSegment) segment).getSource() == source && segment.getStartPosition() == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Builds index on given executor.
+     *
+     * Build can be cancelled with interruption.
+     *
+     * @param executor executor to run build on
+     * @return build task
+     */
+    @Nonnull
+    public Future<Void> buildAsync(@Nonnull Executor executor) {
+        FutureTask<Void> buildTask = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                build();
+                return null;
+            }
+        });
+        executor.execute(buildTask);
+        return buildTask;
+    }
+
+    /**
+     * Builds index and stores it to index file.
+     *
+     * Index is written to temporary file first and replaces the index file
+     * only when complete.
+     *
+     * @throws IOException if input/output error
+     */
+    public void build() throws IOException {
+        long sourceLength = sourceFile.length();
+        long sourceModified = sourceFile.lastModified();
+        File indexDirectory = indexFile.getAbsoluteFile().getParentFile();
+        if (!indexDirectory.isDirectory() && !indexDirectory.mkdirs()) {
+            throw new IOException("Unable to create index directory " + indexDirectory);
+        }
+
+        File tempFile = File.createTempFile("bined-index", ".tmp", indexDirectory);
+        boolean completed = false;
+        try {
+            try (RandomAccessFile sourceAccessFile = new RandomAccessFile(sourceFile, "r"); RandomAccessFile tempAccessFile = new RandomAccessFile(tempFile, "rw")) {
+                writeHeader(tempAccessFile, sourceLength, sourceModified);
+                writeBitmaps(sourceAccessFile.getChannel(), tempAccessFile.getChannel(), sourceLength);
+            }
+            if (sourceFile.length() != sourceLength || sourceFile.lastModified() != sourceModified) {
+                throw new IOException("File was modified during indexing");
+            }
+
+            synchronized (this) {
+                closeIndexFile();
+                try {
+                    Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                completed = true;
+                openIndexFile();
+            }
+        } finally {
+            if (!completed) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public long[] findCandidateRanges(@Nonnull SearchMatcher matcher) {
+        if (!(matcher instanceof IndexableMatcher)) {
+            return null;
+        }
+
+        RandomAccessFile accessFile = indexAccessFile;
+        try {
+            if (accessFile == null || !isValidHeader(accessFile)) {
+                return null;
+            }
+
+            long sourceLength = sourceFile.length();
+            long blocksCount = (sourceLength + blockSize - 1) / blockSize;
+            int groupsCount = (int) ((blocksCount + BLOCKS_PER_GROUP - 1) / BLOCKS_PER_GROUP);
+            long[] candidateBlocks = new long[groupsCount];
+            for (BytePattern pattern : ((IndexableMatcher) matcher).getMatchedPatterns()) {
+                int[] grams = getQueryGrams(pattern);
+                if (grams.length == 0) {
+                    return null;
+                }
+
+                long[] patternBlocks = new long[groupsCount];
+                Arrays.fill(patternBlocks, -1L);
+                for (int gram : grams) {
+                    long[] gramBlocks = readBucket(accessFile.getChannel(), getBucket(gram), groupsCount);
+                    for (int group = 0; group < groupsCount; group++) {
+                        // Gram can be in the next block for match starting near the end of block
+                        long nextBlocks = (gramBlocks[group] >>> 1) | (group + 1 < groupsCount ? gramBlocks[group + 1] << (BLOCKS_PER_GROUP - 1) : 0);
+                        patternBlocks[group] &= gramBlocks[group] | nextBlocks;
+                    }
+                }
+                for (int group = 0; group < groupsCount; group++) {
+                    candidateBlocks[group] |= patternBlocks[group];
+                }
+            }
+
+            return toRanges(candidateBlocks, blocksCount, sourceLength);
+        } catch (IOException ex) {
+            Logger.getLogger(NgramIndex.class.getName()).log(Level.WARNING, "Unable to read search index", ex);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeIndexFile();
+    }
+
+    private void writeHeader(@Nonnull RandomAccessFile accessFile, long sourceLength, long sourceModified) throws IOException {
+        accessFile.writeLong(FORMAT_MAGIC);
+        accessFile.writeInt(FORMAT_VERSION);
+        accessFile.writeLong(sourceLength);
+        accessFile.writeLong(sourceModified);
+        accessFile.writeInt(blockSize);
+        accessFile.writeInt(bucketsCount);
+    }
+
+    private boolean isValidHeader(@Nonnull RandomAccessFile accessFile) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(accessFile.getChannel(), header, 0);
+        header.flip();
+        return header.getLong() == FORMAT_MAGIC
+                && header.getInt() == FORMAT_VERSION
+                && header.getLong() == sourceFile.length()
+                && header.getLong() == sourceFile.lastModified()
+                && header.getInt() == blockSize
+                && header.getInt() == bucketsCount;
+    }
+
+    private void writeBitmaps(@Nonnull FileChannel sourceChannel, @Nonnull FileChannel indexChannel, long sourceLength) throws IOException {
+        long blocksCount = (sourceLength + blockSize - 1) / blockSize;
+        ByteBuffer groupBuffer = ByteBuffer.allocate(bucketsCount * 8);
+        long[] groupBitmaps = new long[bucketsCount];
+        ByteBuffer blockBuffer = ByteBuffer.allocate(blockSize + GRAM_LENGTH - 1);
+        byte[] blockData = blockBuffer.array();
+        long indexPosition = HEADER_SIZE;
+        indexedLength = 0;
+        for (long groupStart = 0; groupStart < blocksCount; groupStart += BLOCKS_PER_GROUP) {
+            Arrays.fill(groupBitmaps, 0);
+            for (int blockInGroup = 0; blockInGroup < BLOCKS_PER_GROUP && groupStart + blockInGroup < blocksCount; blockInGroup++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Index build was interrupted");
+                }
+
+                long blockPosition = (groupStart + blockInGroup) * blockSize;
+                int length = (int) Math.min(blockData.length, sourceLength - blockPosition);
+                blockBuffer.clear();
+                blockBuffer.limit(length);
+                readFully(sourceChannel, blockBuffer, blockPosition);
+
+                long blockBit = 1L << blockInGroup;
+                int gramsCount = Math.min(blockSize, length - GRAM_LENGTH + 1);
+                int gram = 0;
+                for (int i = 0; i < GRAM_LENGTH - 1 && i < length; i++) {
+                    gram = (gram << 8) | (blockData[i] & 0xff);
+                }
+                for (int i = 0; i < gramsCount; i++) {
+                    gram = (gram << 8) | (blockData[i + GRAM_LENGTH - 1] & 0xff);
+                    groupBitmaps[getBucket(gram)] |= blockBit;
+                }
+                indexedLength = blockPosition + Math.min(blockSize, length);
+            }
+
+            groupBuffer.clear();
+            groupBuffer.asLongBuffer().put(groupBitmaps);
+            while (groupBuffer.hasRemaining()) {
+                indexPosition += indexChannel.write(groupBuffer, indexPosition);
+            }
+        }
+    }
+
+    @Nonnull
+    private long[] readBucket(@Nonnull FileChannel indexChannel, int bucket, int groupsCount) throws IOException {
+        long[] bitmaps = new long[groupsCount];
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        for (int group = 0; group < groupsCount; group++) {
+            buffer.clear();
+            readFully(indexChannel, buffer, HEADER_SIZE + ((long) group * bucketsCount + bucket) * 8);
+            bitmaps[group] = buffer.getLong(0);
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Returns up to {@link #MAX_QUERY_GRAMS} distinct 4-grams of exact bytes
+     * spread over the pattern.
+     */
+    @Nonnull
+    private int[] getQueryGrams(@Nonnull BytePattern pattern) {
+        List<Integer> grams = new ArrayList<>();
+        int exactLength = 0;
+        int gram = 0;
+        int limit = Math.min(pattern.getLength(), blockSize);
+        for (int i = 0; i < limit; i++) {
+            if (pattern.getMask(i) == (byte) 0xff) {
+                exactLength++;
+                gram = (gram << 8) | (pattern.getValue(i) & 0xff);
+                if (exactLength >= GRAM_LENGTH && !grams.contains(gram)) {
+                    grams.add(gram);
+                }
+            } else {
+                exactLength = 0;
+            }
+        }
+
+        int count = Math.min(grams.size(), MAX_QUERY_GRAMS);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = grams.get((int) ((long) i * grams.size() / count));
+        }
+        return result;
+    }
+
+    private int getBucket(int gram) {
+        return (gram * HASH_MULTIPLIER) >>> hashShift;
+    }
+
+    @Nonnull
+    private long[] toRanges(@Nonnull long[] candidateBlocks, long blocksCount, long sourceLength) {
+        List<Long> ranges = new ArrayList<>();
+        long rangeStartBlock = -1;
+        for (long block = 0; block <= blocksCount; block++) {
+            boolean candidate = block < blocksCount && (candidateBlocks[(int) (block / BLOCKS_PER_GROUP)] & (1L << (block % BLOCKS_PER_GROUP))) != 0;
+            if (candidate && rangeStartBlock < 0) {
+                rangeStartBlock = block;
+            } else if (!candidate && rangeStartBlock >= 0) {
+                ranges.add(rangeStartBlock * blockSize);
+                ranges.add(Math.min(block * blockSize, sourceLength));
+                rangeStartBlock = -1;
+            }
+        }
+
+        long[] result = new long[ranges.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ranges.get(i);
+        }
+        return result;
+    }
+
+    private void openIndexFile() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        try {
+            RandomAccessFile accessFile = new RandomAccessFile(indexFile, "r");
+            if (accessFile.length() >= HEADER_SIZE && isValidHeader(accessFile)) {
+                indexAccessFile = accessFile;
+            } else {
+                accessFile.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(NgramIndex.class.getName()).log(Level.WARNING, "Unable to open search index", ex);
+        }
+    }
+
+    private void closeIndexFile() {
+        RandomAccessFile accessFile = indexAccessFile;
+        indexAccessFile = null;
+        if (accessFile != null) {
+            try {
+                accessFile.close();
+            } catch (IOException ex) {
+                Logger.getLogger(NgramIndex.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private static void readFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+            position += count;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+
+/**
+ * Journal for crash-safe in-place save.
+ *
+ * Before any region of the saved file is overwritten, it's original content
+ * is appended to the sidecar journal file and the journal is forced to the
+ * disk. When all data is written, commit record with final file length is
+ * stored. The journal is deleted after the file is truncated and forced.
+ *
+ * Interrupted save is recovered on next opening of the file for writing:
+ * without commit record all regions are restored in reverse order and
+ * original length is set, with commit record only final length is set.
+ * Opening of such file as read-only fails until it's recovered.
+ *
+ * While the save is running, original content of overwritten regions can be
+ * read from the journal, see {@link #readPreimages(long, ByteBuffer)}.
+ * Journal which is not durable skips forcing of the data to the disk and
+ * serves only for reading of original content and roll back of cancelled
+ * save.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SaveJournal implements Closeable {
+
+    public static final String JOURNAL_FILE_SUFFIX = ".bjournal";
+
+    private static final long JOURNAL_MAGIC = 0x42494e45444a4e4cL;
+    private static final int JOURNAL_VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int ENTRY_HEADER_SIZE = 13;
+    private static final int CHECKSUM_SIZE = 8;
+    private static final byte REGION_ENTRY = 1;
+    private static final byte COMMIT_ENTRY = 2;
+    private static final int RECOVERY_BUFFER_SIZE = 1024 * 1024;
+
+    @Nonnull
+    private final File journalFile;
+    @Nonnull
+    private final RandomAccessFile journalAccessFile;
+    @Nonnull
+    private final FileChannel journalChannel;
+    @Nonnull
+    private final FileChannel dataChannel;
+    private final long originalLength;
+    private final boolean durable;
+    private long journalLength;
+    @Nonnull
+    private ByteBuffer entryBuffer = ByteBuffer.allocate(0);
+    /**
+     * First recorded original content of the regions by region position.
+     *
+     * Regions don't overlap. Guarded by itself.
+     */
+    @Nonnull
+    private final TreeMap<Long, PreimageRegion> preimages = new TreeMap<>();
+
+    private SaveJournal(@Nonnull File journalFile, @Nonnull FileChannel dataChannel, boolean durable) throws IOException {
+        this.journalFile = journalFile;
+        this.dataChannel = dataChannel;
+        this.durable = durable;
+        journalAccessFile = new RandomAccessFile(journalFile, "rw");
+        journalChannel = journalAccessFile.getChannel();
+        originalLength = dataChannel.size();
+    }
+
+    /**
+     * Returns journal file for given data file.
+     *
+     * @param file data file
+     * @return journal file
+     */
+    @Nonnull
+    public static File getJournalFile(@Nonnull File file) {
+        return new File(file.getPath() + JOURNAL_FILE_SUFFIX);
+    }
+
+    /**
+     * Creates new journal for save of given file.
+     *
+     * @param file saved file
+     * @param dataChannel channel of the saved file
+     * @return save journal
+     * @throws IOException if input/output error
+     */
+    @Nonnull
+    /* package */ static SaveJournal create(@Nonnull File file, @Nonnull FileChannel dataChannel) throws IOException {
+        return create(file, dataChannel, true);
+    }
+
+    /**
+     * Creates new journal for save of given file.
+     *
+     * @param file saved file
+     * @param dataChannel channel of the saved file
+     * @param durable true to force journal and data to the disk, so that
+     * interrupted save can be recovered
+     * @return save journal
+     * @throws IOException if input/output error
+     */
+    @Nonnull
+    /* package */ static SaveJournal create(@Nonnull File file, @Nonnull FileChannel dataChannel, boolean durable) throws IOException {
+        SaveJournal journal = new SaveJournal(getJournalFile(file), dataChannel, durable);
+        journal.journalAccessFile.setLength(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(JOURNAL_MAGIC).putInt(JOURNAL_VERSION).putLong(journal.originalLength);
+        header.flip();
+        writeFully(journal.journalChannel, header, 0);
+        journal.journalLength = HEADER_SIZE;
+        if (durable) {
+            journal.journalChannel.force(true);
+        }
+        return journal;
+    }
+
+    /**
+     * Returns length of the file before save.
+     *
+     * @return length in bytes
+     */
+    /* package */ long getOriginalLength() {
+        return originalLength;
+    }
+
+    /**
+     * Stores original content of the region which is going to be
+     * overwritten.
+     *
+     * Region beyond original file length is not stored as it is removed on
+     * recovery.
+     *
+     * @param position region position
+     * @param length region length
+     * @throws IOException if input/output error
+     */
+    /* package */ void recordRegion(long position, long length) throws IOException {
+        if (position >= originalLength || length <= 0) {
+            return;
+        }
+        if (position + length > originalLength) {
+            length = originalLength - position;
+        }
+
+        int entryLength = ENTRY_HEADER_SIZE + (int) length + CHECKSUM_SIZE;
+        if (entryBuffer.capacity() < entryLength) {
+            entryBuffer = ByteBuffer.allocate(entryLength);
+        }
+        entryBuffer.clear();
+        entryBuffer.put(REGION_ENTRY).putLong(position).putInt((int) length);
+        entryBuffer.limit(ENTRY_HEADER_SIZE + (int) length);
+        readFully(dataChannel, entryBuffer, position);
+        entryBuffer.limit(entryLength);
+        long dataPosition = journalLength + ENTRY_HEADER_SIZE;
+        appendEntry(entryLength);
+        synchronized (preimages) {
+            addPreimage(position, dataPosition, length);
+        }
+    }
+
+    /**
+     * Indexes parts of the recorded region which were not recorded before.
+     */
+    private void addPreimage(long position, long dataPosition, long length) {
+        long endPosition = position + length;
+        long current = position;
+        Map.Entry<Long, PreimageRegion> previous = preimages.floorEntry(current);
+        if (previous != null && previous.getValue().getEndPosition() > current) {
+            current = previous.getValue().getEndPosition();
+        }
+        while (current < endPosition) {
+            Map.Entry<Long, PreimageRegion> next = preimages.ceilingEntry(current);
+            long partEnd = next == null || next.getKey() > endPosition ? endPosition : next.getKey();
+            if (partEnd > current) {
+                preimages.put(current, new PreimageRegion(current, dataPosition + current - position, partEnd - current));
+            }
+            if (next == null || next.getKey() >= endPosition) {
+                break;
+            }
+            current = next.getValue().getEndPosition();
+        }
+    }
+
+    /**
+     * Replaces data in given buffer by original content of regions recorded
+     * so far.
+     *
+     * Buffer contains data read from the saved file starting from given
+     * position, it's position and limit are not changed.
+     *
+     * @param position position of the data in the file
+     * @param target buffer with data read from the file
+     * @throws IOException if input/output error
+     */
+    /* package */ void readPreimages(long position, @Nonnull ByteBuffer target) throws IOException {
+        long endPosition = position + target.remaining();
+        synchronized (preimages) {
+            if (preimages.isEmpty()) {
+                return;
+            }
+
+            Long fromKey = preimages.floorKey(position);
+            for (PreimageRegion region : preimages.subMap(fromKey == null ? position : fromKey, true, endPosition, false).values()) {
+                long partStart = Math.max(region.position, position);
+                long partEnd = Math.min(region.getEndPosition(), endPosition);
+                if (partEnd > partStart) {
+                    ByteBuffer part = target.duplicate();
+                    part.position(target.position() + (int) (partStart - position));
+                    part.limit(target.position() + (int) (partEnd - position));
+                    readFully(journalChannel, part, region.dataPosition + partStart - region.position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes original content of all recorded regions back to the file.
+     *
+     * File length is not restored.
+     *
+     * @throws IOException if input/output error
+     */
+    /* package */ void restorePreimages() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECOVERY_BUFFER_SIZE);
+        synchronized (preimages) {
+            for (PreimageRegion region : preimages.values()) {
+                long processed = 0;
+                while (processed < region.length) {
+                    int blockLength = (int) Math.min(region.length - processed, RECOVERY_BUFFER_SIZE);
+                    buffer.clear();
+                    buffer.limit(blockLength);
+                    readFully(journalChannel, buffer, region.dataPosition + processed);
+                    buffer.flip();
+                    writeFully(dataChannel, buffer, region.position + processed);
+                    processed += blockLength;
+                }
+            }
+        }
+        if (durable) {
+            dataChannel.force(true);
+        }
+    }
+
+    /**
+     * Marks all data as written.
+     *
+     * @param finalLength final length of the file
+     * @throws IOException if input/output error
+     */
+    /* package */ void commit(long finalLength) throws IOException {
+        if (durable) {
+            dataChannel.force(true);
+        }
+        int entryLength = ENTRY_HEADER_SIZE + CHECKSUM_SIZE;
+        if (entryBuffer.capacity() < entryLength) {
+            entryBuffer = ByteBuffer.allocate(entryLength);
+        }
+        entryBuffer.clear();
+        entryBuffer.put(COMMIT_ENTRY).putLong(finalLength).putInt(0);
+        entryBuffer.limit(entryLength);
+        appendEntry(entryLength);
+    }
+
+    /**
+     * Forces saved file and removes journal.
+     *
+     * @throws IOException if input/output error
+     */
+    /* package */ void finish() throws IOException {
+        if (durable) {
+            dataChannel.force(true);
+        }
+        close();
+        if (!journalFile.delete()) {
+            throw new IOException("Unable to delete journal file " + journalFile.getPath());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        journalAccessFile.close();
+    }
+
+    private void appendEntry(int entryLength) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(entryBuffer.array(), 0, entryLength - CHECKSUM_SIZE);
+        entryBuffer.position(entryLength - CHECKSUM_SIZE);
+        entryBuffer.putLong(checksum.getValue());
+        entryBuffer.flip();
+        writeFully(journalChannel, entryBuffer, journalLength);
+        journalLength += entryLength;
+        if (durable) {
+            journalChannel.force(false);
+        }
+    }
+
+    /**
+     * Returns true if journal of interrupted save exists for given file.
+     *
+     * @param file data file
+     * @return true if file needs recovery
+     */
+    public static boolean isRecoveryNeeded(@Nonnull File file) {
+        return getJournalFile(file).exists();
+    }
+
+    /**
+     * Recovers file from interrupted save if journal exists.
+     *
+     * @param file data file
+     * @return true if journal was found and processed
+     * @throws IOException if input/output error
+     */
+    public static boolean recover(@Nonnull File file) throws IOException {
+        File journalFile = getJournalFile(file);
+        if (!journalFile.exists()) {
+            return false;
+        }
+
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "r")) {
+            FileChannel journalChannel = journal.getChannel();
+            long journalSize = journalChannel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            // Incomplete header means that nothing was written yet
+            if (journalSize >= HEADER_SIZE) {
+                readFully(journalChannel, header, 0);
+                header.flip();
+                if (header.getLong() != JOURNAL_MAGIC || header.getInt() != JOURNAL_VERSION) {
+                    throw new IOException("Invalid journal file " + journalFile.getPath());
+                }
+                long originalLength = header.getLong();
+
+                List<JournalEntry> entries = new ArrayList<>();
+                long finalLength = -1;
+                long journalPosition = HEADER_SIZE;
+                ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+                while (journalPosition + ENTRY_HEADER_SIZE + CHECKSUM_SIZE <= journalSize) {
+                    entryHeader.clear();
+                    readFully(journalChannel, entryHeader, journalPosition);
+                    entryHeader.flip();
+                    byte entryType = entryHeader.get();
+                    long position = entryHeader.getLong();
+                    int length = entryHeader.getInt();
+                    long entryEnd = journalPosition + ENTRY_HEADER_SIZE + length + CHECKSUM_SIZE;
+                    if (length < 0 || entryEnd > journalSize) {
+                        break;
+                    }
+
+                    ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + length + CHECKSUM_SIZE);
+                    readFully(journalChannel, entry, journalPosition);
+                    CRC32 checksum = new CRC32();
+                    checksum.update(entry.array(), 0, ENTRY_HEADER_SIZE + length);
+                    entry.position(ENTRY_HEADER_SIZE + length);
+                    if (entry.getLong() != checksum.getValue()) {
+                        // Torn write of the last entry
+                        break;
+                    }
+
+                    if (entryType == COMMIT_ENTRY) {
+                        finalLength = position;
+                        break;
+                    }
+                    entries.add(new JournalEntry(position, journalPosition + ENTRY_HEADER_SIZE, length));
+                    journalPosition = entryEnd;
+                }
+
+                try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+                    FileChannel dataChannel = data.getChannel();
+                    if (finalLength >= 0) {
+                        // Roll forward, all data was already written
+                        data.setLength(finalLength);
+                    } else {
+                        // Roll back in reverse order
+                        ByteBuffer buffer = ByteBuffer.allocate(RECOVERY_BUFFER_SIZE);
+                        for (int i = entries.size() - 1; i >= 0; i--) {
+                            JournalEntry entry = entries.get(i);
+                            int processed = 0;
+                            while (processed < entry.length) {
+                                int blockLength = Math.min(entry.length - processed, RECOVERY_BUFFER_SIZE);
+                                buffer.clear();
+                                buffer.limit(blockLength);
+                                readFully(journalChannel, buffer, entry.journalPosition + processed);
+                                buffer.flip();
+                                writeFully(dataChannel, buffer, entry.position + processed);
+                                processed += blockLength;
+                            }
+                        }
+                        data.setLength(originalLength);
+                    }
+                    dataChannel.force(true);
+                }
+            }
+        }
+
+        if (!journalFile.delete()) {
+            throw new IOException("Unable to delete journal file " + journalFile.getPath());
+        }
+        return true;
+    }
+
+    private static void readFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += count;
+        }
+    }
+
+    private static void writeFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Original content of the region of the file stored in the journal.
+     */
+    private static class PreimageRegion {
+
+        final long position;
+        final long dataPosition;
+        final long length;
+
+        PreimageRegion(long position, long dataPosition, long length) {
+            this.position = position;
+            this.dataPosition = dataPosition;
+            this.length = length;
+        }
+
+        long getEndPosition() {
+            return position + length;
+        }
+    }
+
+    /**
+     * Stored region of the original file.
+     */
+    private static class JournalEntry {
+
+        final long position;
+        final long journalPosition;
+        final int length;
+
+        JournalEntry(long position, long journalPosition, int length) {
+            this.position = position;
+            this.journalPosition = journalPosition;
+            this.length = length;
+        }
+    }
+}
@@ -16,13 +16,31 @@
 package org.exbin.bined.delta;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -34,7 +52,22 @@ import org.exbin.utils.binary_data.BinaryData;
 /**
  * Repository of delta segments.
  *
- * @version 0.2.0 2018/04/27
+ * Documents of the repository share segment sources, so access to all of them
+ * is guarded by single read-write lock of the repository. Any count of
+ * threads can read documents concurrently, while modification or save of any
+ * document is exclusive. Methods of documents and public methods of the
+ * repository acquire the lock themselves, lower level operations on segments
+ * expect the write lock to be held by the caller. Lock can be also held
+ * explicitly to perform multiple operations atomically, except for save of
+ * document, which manages the lock itself.
+ *
+ * Heap memory used by memory sources can be limited by memory budget, see
+ * {@link #setMemoryBudget(long)} and {@link #getMemoryUsage()}.
+ *
+ * Data sources can be pinned by snapshots of documents, see
+ * {@link #pinEpoch()}.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class SegmentsRepository {
@@ -43,46 +76,369 @@ public class SegmentsRepository {
     private final Map<FileDataSource, DataSegmentsMap> fileSources = new HashMap<>();
     @Nonnull
     private final Map<MemoryDataSource, DataSegmentsMap> memorySources = new HashMap<>();
+    /**
+     * File sources over scratch files created for imported streams.
+     */
+    @Nonnull
+    private final Set<FileDataSource> scratchSources = new HashSet<>();
 
     @Nonnull
     private final List<DeltaDocument> documents = new ArrayList<>();
+    @Nonnull
+    private final List<DeltaDocumentSnapshot> snapshots = new ArrayList<>();
+    @Nonnull
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Lock allowing only single save at a time.
+     */
+    @Nonnull
+    private final ReentrantLock saveLock = new ReentrantLock();
+    /**
+     * Plan of the running save or null.
+     */
+    @Nullable
+    private SavePlan runningSave = null;
+    /**
+     * Last used epoch, see {@link #pinEpoch()}.
+     */
+    private long currentEpoch = 0;
     /**
-     * Limit for save processing in bytes.
+     * Epochs pinned by open snapshots and running save.
      */
-    private static final int PROCESSING_LIMIT = 4096;
+    @Nonnull
+    private final TreeSet<Long> pinnedEpochs = new TreeSet<>();
+    /**
+     * Sources no longer used by segments, which are kept for pinned epochs.
+     */
+    @Nonnull
+    private final List<RetiredSource> retiredSources = new ArrayList<>();
+    /**
+     * Size of the buffer for save transfers in bytes.
+     */
+    private static final int SAVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Minimum ratio of moved bytes to document size for which automatic save
+     * strategy uses temporary file.
+     */
+    private static final double TEMPORARY_FILE_SAVE_RATIO = 0.5;
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    /**
+     * Size of the buffer for copying imported streams to scratch files.
+     */
+    private static final int IMPORT_BUFFER_SIZE = 64 * 1024;
+
+    private boolean saveJournalEnabled = false;
+    @Nonnull
+    private SaveStrategy saveStrategy = SaveStrategy.IN_PLACE;
+    @Nullable
+    private SpillStore spillStore = null;
+    /**
+     * Store for memory sources without spill store, pages are never spilled.
+     */
+    @Nonnull
+    private final SpillStore memoryStore = new SpillStore(SpillStore.DEFAULT_PAGE_SIZE, SpillStore.UNLIMITED_RESIDENT_PAGES);
+
+    /**
+     * Memory budget value for no limit.
+     */
+    public static final long UNLIMITED_MEMORY_BUDGET = Long.MAX_VALUE;
+    private long memoryBudget = UNLIMITED_MEMORY_BUDGET;
+    @Nonnull
+    private MemoryBudgetPolicy memoryBudgetPolicy = MemoryBudgetPolicy.COMPACT;
+    /**
+     * Heap size after last compaction triggered by memory budget.
+     */
+    private long compactedHeapSize = -1;
 
     public SegmentsRepository() {
     }
 
+    /**
+     * Returns lock guarding all documents and sources of this repository.
+     *
+     * @return read-write lock
+     */
+    @Nonnull
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Returns true if in-place save uses journal to be able to recover from
+     * interrupted save.
+     *
+     * @return true if journal is enabled
+     */
+    public boolean isSaveJournalEnabled() {
+        return saveJournalEnabled;
+    }
+
+    /**
+     * Enables journal for in-place save.
+     *
+     * Journal stores original content of all overwritten regions, so save
+     * writes up to twice as much data.
+     *
+     * @param saveJournalEnabled true to enable journal
+     */
+    public void setSaveJournalEnabled(boolean saveJournalEnabled) {
+        this.saveJournalEnabled = saveJournalEnabled;
+    }
+
+    @Nonnull
+    public SaveStrategy getSaveStrategy() {
+        return saveStrategy;
+    }
+
+    /**
+     * Sets strategy for saving documents.
+     *
+     * @param saveStrategy save strategy
+     */
+    public void setSaveStrategy(@Nonnull SaveStrategy saveStrategy) {
+        this.saveStrategy = saveStrategy;
+    }
+
+    @Nullable
+    public SpillStore getSpillStore() {
+        return spillStore;
+    }
+
+    /**
+     * Sets store for memory sources opened after this call.
+     *
+     * With spill store, data of memory sources are kept in memory only up to
+     * the limit of the store and spilled to the scratch file otherwise.
+     *
+     * @param spillStore spill store or null for data kept in memory only
+     */
+    public void setSpillStore(@Nullable SpillStore spillStore) {
+        this.spillStore = spillStore;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets limit of heap memory used by memory sources.
+     *
+     * Budget is checked before document modifications which store data in
+     * memory and it's handling depends on memory budget policy.
+     *
+     * @param memoryBudget budget in bytes or UNLIMITED_MEMORY_BUDGET
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget cannot be negative");
+        }
+
+        lock.writeLock().lock();
+        try {
+            this.memoryBudget = memoryBudget;
+            compactedHeapSize = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Nonnull
+    public MemoryBudgetPolicy getMemoryBudgetPolicy() {
+        return memoryBudgetPolicy;
+    }
+
+    public void setMemoryBudgetPolicy(@Nonnull MemoryBudgetPolicy memoryBudgetPolicy) {
+        this.memoryBudgetPolicy = memoryBudgetPolicy;
+    }
+
     @Nonnull
     public FileDataSource openFileSource(@Nonnull File sourceFile) throws IOException {
-        FileDataSource fileSource = new FileDataSource(sourceFile);
-        fileSources.put(fileSource, new DataSegmentsMap());
-        return fileSource;
+        lock.writeLock().lock();
+        try {
+            recoverInterruptedSave(sourceFile, FileDataSource.EditationMode.READ_WRITE);
+            FileDataSource fileSource = new FileDataSource(sourceFile);
+            fileSources.put(fileSource, new DataSegmentsMap());
+            return fileSource;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Nonnull
     public FileDataSource openFileSource(@Nonnull File sourceFile, @Nonnull FileDataSource.EditationMode editationMode) throws IOException {
-        FileDataSource fileSource = new FileDataSource(sourceFile, editationMode);
-        fileSources.put(fileSource, new DataSegmentsMap());
-        return fileSource;
+        lock.writeLock().lock();
+        try {
+            recoverInterruptedSave(sourceFile, editationMode);
+            FileDataSource fileSource = new FileDataSource(sourceFile, editationMode);
+            fileSources.put(fileSource, new DataSegmentsMap());
+            return fileSource;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Nonnull
+    public FileDataSource openFileSource(@Nonnull File sourceFile, @Nonnull FileDataSource.EditationMode editationMode, @Nonnull FileDataSource.CacheMode cacheMode) throws IOException {
+        lock.writeLock().lock();
+        try {
+            recoverInterruptedSave(sourceFile, editationMode);
+            FileDataSource fileSource = new FileDataSource(sourceFile, editationMode, cacheMode);
+            fileSources.put(fileSource, new DataSegmentsMap());
+            return fileSource;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recovers file from interrupted save before it's opened.
+     *
+     * Read-only opening must not modify the file, so it fails if recovery is
+     * needed.
+     */
+    private static void recoverInterruptedSave(@Nonnull File sourceFile, @Nonnull FileDataSource.EditationMode editationMode) throws IOException {
+        if (editationMode == FileDataSource.EditationMode.READ_ONLY) {
+            if (SaveJournal.isRecoveryNeeded(sourceFile)) {
+                throw new IOException("File " + sourceFile.getPath() + " needs recovery of interrupted save, it has to be opened for writing first");
+            }
+            return;
+        }
+
+        SaveJournal.recover(sourceFile);
     }
 
     public void closeFileSource(@Nonnull FileDataSource fileSource) {
-        // TODO
+        lock.writeLock().lock();
+        try {
+            if (scratchSources.contains(fileSource)) {
+                closeScratchSource(fileSource);
+                return;
+            }
+
+            if (runningSave != null && runningSave.usesSource(fileSource)) {
+                throw new IllegalStateException("File source is used by running save");
+            }
+
+            // TODO
+            fileSource.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies data from given stream to new scratch file and opens it as file
+     * source.
+     *
+     * Stream is copied without holding the repository lock using buffer of
+     * constant size. Scratch source is closed and it's file is deleted when
+     * the last segment of the source is dropped, or when the source is
+     * closed.
+     *
+     * @param inputStream input stream
+     * @param maximumDataSize maximum size of copied data or -1 for unlimited
+     * @return file source of the scratch file
+     * @throws IOException if input/output error
+     */
+    @Nonnull
+    public FileDataSource openScratchSource(@Nonnull InputStream inputStream, long maximumDataSize) throws IOException {
+        File scratchFile = File.createTempFile("bined-import", TEMPORARY_FILE_SUFFIX);
+        scratchFile.deleteOnExit();
+        try {
+            try (FileOutputStream outputStream = new FileOutputStream(scratchFile)) {
+                byte[] buffer = new byte[IMPORT_BUFFER_SIZE];
+                long processed = 0;
+                while (maximumDataSize < 0 || processed < maximumDataSize) {
+                    int toRead = buffer.length;
+                    if (maximumDataSize >= 0 && maximumDataSize - processed < toRead) {
+                        toRead = (int) (maximumDataSize - processed);
+                    }
+                    int count = inputStream.read(buffer, 0, toRead);
+                    if (count < 0) {
+                        break;
+                    }
+                    outputStream.write(buffer, 0, count);
+                    processed += count;
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                FileDataSource fileSource = new FileDataSource(scratchFile, FileDataSource.EditationMode.READ_ONLY);
+                fileSources.put(fileSource, new DataSegmentsMap());
+                scratchSources.add(fileSource);
+                return fileSource;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException | RuntimeException ex) {
+            scratchFile.delete();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns true if given file source was created for imported stream.
+     *
+     * @param fileSource file source
+     * @return true for scratch source
+     */
+    public boolean isScratchSource(@Nonnull FileDataSource fileSource) {
+        lock.readLock().lock();
+        try {
+            return scratchSources.contains(fileSource);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void closeScratchSource(@Nonnull FileDataSource fileSource) {
+        scratchSources.remove(fileSource);
+        DataSegmentsMap segmentsMap = fileSources.remove(fileSource);
+        if (segmentsMap != null && isPinned(segmentsMap)) {
+            retiredSources.add(new RetiredSource(fileSource, segmentsMap.epoch, currentEpoch));
+            return;
+        }
+
         fileSource.close();
+        if (!fileSource.getFile().delete()) {
+            Logger.getLogger(SegmentsRepository.class.getName()).log(Level.WARNING, "Unable to delete scratch file {0}", fileSource.getFile());
+        }
     }
 
     @Nonnull
     public MemoryDataSource openMemorySource() {
-        MemoryDataSource memorySource = new MemoryDataSource();
-        memorySources.put(memorySource, new DataSegmentsMap());
-        return memorySource;
+        lock.writeLock().lock();
+        try {
+            MemoryDataSource memorySource = new MemoryDataSource(new SpillablePagedData(spillStore == null ? memoryStore : spillStore));
+            memorySources.put(memorySource, new DataSegmentsMap());
+            return memorySource;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Closes memory source.
+     *
+     * Source pinned by snapshot is released when the snapshot is closed.
+     *
+     * @param memorySource memory source
+     */
     public void closeMemorySource(@Nonnull MemoryDataSource memorySource) {
-        // TODO
-        memorySource.clear();
+        lock.writeLock().lock();
+        try {
+            DataSegmentsMap segmentsMap = memorySources.remove(memorySource);
+            if (segmentsMap != null && isPinned(segmentsMap)) {
+                retiredSources.add(new RetiredSource(memorySource, segmentsMap.epoch, currentEpoch));
+                return;
+            }
+
+            memorySource.dispose();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -92,9 +448,14 @@ public class SegmentsRepository {
      */
     @Nonnull
     public DeltaDocument createDocument() {
-        DeltaDocument document = new DeltaDocument(this);
-        documents.add(document);
-        return document;
+        lock.writeLock().lock();
+        try {
+            DeltaDocument document = new DeltaDocument(this);
+            documents.add(document);
+            return document;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -106,9 +467,14 @@ public class SegmentsRepository {
      */
     @Nonnull
     public DeltaDocument createDocument(FileDataSource fileSource) throws IOException {
-        DeltaDocument document = new DeltaDocument(this, fileSource);
-        documents.add(document);
-        return document;
+        lock.writeLock().lock();
+        try {
+            DeltaDocument document = new DeltaDocument(this, fileSource);
+            documents.add(document);
+            return document;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -116,426 +482,693 @@ public class SegmentsRepository {
      *
      * @param savedDocument document to save
      * @throws java.io.IOException if input/output error
+     * @throws IllegalStateException if repository lock is held by the
+     * current thread
      */
     public void saveDocument(@Nonnull DeltaDocument savedDocument) throws IOException {
-        FileDataSource fileSource = savedDocument.getFileSource();
+        saveDocument(savedDocument, null);
+    }
 
-        // Create save transformation
-        Map<DataSegment, Long> saveMap = createSaveTransformation(savedDocument);
+    /**
+     * Saves document to it's source file and update all documents.
+     *
+     * All data transfers are planned first and then performed in large
+     * blocks. Sections of the saved file are moved in order which doesn't
+     * overwrite data still needed by other sections, cyclic dependencies are
+     * resolved by copying source section to scratch file.
+     *
+     * Write lock is held for the whole save, use
+     * {@link DeltaDocument#saveAsync(java.util.concurrent.Executor, org.exbin.bined.delta.SaveProgressListener)}
+     * to write data without holding the lock. Save must not be called while
+     * the current thread holds repository lock, as it would wait for
+     * asynchronous save running at the same time, which needs the lock to
+     * finish.
+     *
+     * @param savedDocument document to save
+     * @param progressListener listener for save progress or null
+     * @throws java.io.IOException if input/output error
+     * @throws IllegalStateException if repository lock is held by the
+     * current thread
+     */
+    public void saveDocument(@Nonnull DeltaDocument savedDocument, @Nullable SaveProgressListener progressListener) throws IOException {
+        saveDocument(savedDocument, progressListener, null);
+    }
 
-        // Apply transformation to other documents
-        for (DeltaDocument document : documents) {
-            if (document != savedDocument) {
-                applySaveMap(document, saveMap, fileSource);
-            }
+    /**
+     * Saves document with optional cancellation check.
+     *
+     * Without save task, write lock is held for the whole save. With save
+     * task, write lock is held only while the save is planned and while
+     * documents are updated, data are written without the lock. Only one save
+     * runs at a time, so this method must not be called with the lock held.
+     *
+     * @param savedDocument document to save
+     * @param progressListener listener for save progress or null
+     * @param saveTask asynchronous save task or null
+     * @throws java.io.IOException if input/output error
+     * @throws java.util.concurrent.CancellationException if save task was
+     * cancelled before all data was written
+     * @throws IllegalStateException if repository lock is held by the
+     * current thread
+     */
+    /* package */ void saveDocument(@Nonnull DeltaDocument savedDocument, @Nullable SaveProgressListener progressListener, @Nullable DeltaDocumentSaveTask saveTask) throws IOException {
+        // Save lock is always acquired before the repository lock
+        if (lock.isWriteLockedByCurrentThread() || lock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Document cannot be saved while holding repository lock");
         }
 
-        DefaultDoublyLinkedList<DataSegment> segments = savedDocument.getSegments();
+        saveLock.lock();
+        try {
+            if (saveTask == null) {
+                lock.writeLock().lock();
+                try {
+                    performSave(savedDocument, progressListener, null);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } else {
+                performSave(savedDocument, progressListener, saveTask);
+            }
+        } finally {
+            saveLock.unlock();
+        }
+    }
 
-        // Save all non-overlapping segments
-        List<DataArea> releasedSegments = new LinkedList<>();
-        {
-            DataSegment segment = segments.first();
-            long segmentDocumentPosition = 0;
-            while (segment != null) {
-                processSegmentForSave(segment, fileSource, segmentDocumentPosition, savedDocument, saveMap, releasedSegments);
+    private void performSave(@Nonnull DeltaDocument savedDocument, @Nullable SaveProgressListener progressListener, @Nullable DeltaDocumentSaveTask saveTask) throws IOException {
+        SavePlan plan;
+        lock.writeLock().lock();
+        try {
+            plan = createSavePlan(savedDocument);
+            runningSave = plan;
+        } finally {
+            lock.writeLock().unlock();
+        }
 
-                segmentDocumentPosition += segment.getLength();
-                segment = savedDocument.getSegment(segmentDocumentPosition);
+        try {
+            if (isTemporaryFileSave(plan)) {
+                saveUsingTemporaryFile(savedDocument, plan, progressListener, saveTask);
+            } else {
+                saveInPlace(savedDocument, plan, progressListener, saveTask);
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                runningSave = null;
+                unpinEpoch(plan.epoch);
+            } finally {
+                lock.writeLock().unlock();
             }
         }
+    }
 
-        // Handle all released segments
-        while (!releasedSegments.isEmpty()) {
-            DataArea dataArea = releasedSegments.remove(releasedSegments.size() - 1);
-            DataSegment segment = savedDocument.getSegment(dataArea.startFrom);
-            while (segment != null) {
-                long segmentPosition = saveMap.get(segment);
-                if (segmentPosition > dataArea.startFrom + dataArea.length) {
-                    break;
-                }
-
-                DataSegment nextSegment = segment.getNext();
-                if (!(segment instanceof SpaceSegment)) {
-                    long segmentDocumentPosition = saveMap.get(segment);
-                    processSegmentForSave(segment, fileSource, segmentDocumentPosition, savedDocument, saveMap, releasedSegments);
-                }
+    private void saveUsingTemporaryFile(@Nonnull DeltaDocument savedDocument, @Nonnull SavePlan plan, @Nullable SaveProgressListener progressListener, @Nullable DeltaDocumentSaveTask saveTask) throws IOException {
+        // Original file is not modified while temporary file is written
+        File temporaryFile = writeTemporaryFile(plan, new SaveProgress(plan.dataSize, progressListener, saveTask));
+        if (saveTask != null && !saveTask.startCommit()) {
+            temporaryFile.delete();
+            throw new CancellationException("Save was cancelled");
+        }
 
-                segment = nextSegment;
+        lock.writeLock().lock();
+        try {
+            // Load data of documents which is not kept by the save
+            List<DeltaDocument> updatedDocuments = getUpdatedDocuments(savedDocument, plan);
+            for (DeltaDocument document : updatedDocuments) {
+                applyKeptSections(document, plan, false);
             }
-        }
 
-        // Save all remaining segments
-        // Loads overlaping areas to memory before next segment is saved
-        {
-            DataSegment segment = segments.first();
-            long segmentDocumentPosition = 0;
-            while (segment != null) {
-                if (!(segment instanceof SpaceSegment)) {
-                    long currentSegmentDocumentPosition = saveMap.get(segment);
-                    long currentSegmentLength = segment.getLength();
-                    long processed = 0;
-                    while (currentSegmentLength > 0) {
-                        long length = currentSegmentLength;
-                        if (length > PROCESSING_LIMIT) {
-                            length = PROCESSING_LIMIT;
-                        }
+            try {
+                plan.fileSource.replaceFile(temporaryFile);
+            } catch (IOException | RuntimeException ex) {
+                temporaryFile.delete();
+                throw ex;
+            }
 
-                        saveSegmentSection(currentSegmentDocumentPosition + processed, length, fileSource, saveMap, savedDocument);
+            // Move documents to after save positions only when file was saved
+            for (DeltaDocument document : updatedDocuments) {
+                applyKeptSections(document, plan, true);
+            }
+            finishSave(savedDocument, plan);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-                        currentSegmentLength -= length;
-                        processed += length;
-                        if (currentSegmentLength > 0) {
-                            DataSegment nextSegment = savedDocument.getSegment(segmentDocumentPosition + processed);
-                            if (nextSegment != null) {
-                                saveMap.put(nextSegment, currentSegmentDocumentPosition + processed);
-                            }
-                        }
-                    }
+    private void saveInPlace(@Nonnull DeltaDocument savedDocument, @Nonnull SavePlan plan, @Nullable SaveProgressListener progressListener, @Nullable DeltaDocumentSaveTask saveTask) throws IOException {
+        FileDataSource fileSource = plan.fileSource;
+        SaveJournal journal = null;
+        if (saveJournalEnabled || saveTask != null) {
+            // Readers get original content of overwritten regions from journal
+            journal = SaveJournal.create(fileSource.getFile(), fileSource.getAccessFile().getChannel(), saveJournalEnabled);
+            fileSource.setSaveJournal(journal);
+        } else {
+            // Original content is not available once the file is modified
+            lock.writeLock().lock();
+            try {
+                for (DeltaDocument document : getUpdatedDocuments(savedDocument, plan)) {
+                    applyKeptSections(document, plan, false);
                 }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
 
-                segmentDocumentPosition += segment.getLength();
-                segment = savedDocument.getSegment(segmentDocumentPosition);
+        try {
+            executeSavePlan(plan, journal, saveTask != null, new SaveProgress(plan.getMovedLength(), progressListener, saveTask));
+            if (saveTask != null && !saveTask.startCommit()) {
+                throw new CancellationException("Save was cancelled");
+            }
+            if (journal != null) {
+                journal.commit(plan.dataSize);
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (journal != null) {
+                rollBackSave(fileSource, journal, ex);
             }
+            throw ex;
         }
 
-        // Update document segments
-        long fileLength = savedDocument.getDataSize();
-        savedDocument.clear();
-        DataSegment fullFileSegment = createFileSegment(fileSource, 0, fileLength);
-        savedDocument.getSegments().add(fullFileSegment);
-        savedDocument.setDataLength(fileLength);
-        fileSource.setFileLength(fileLength);
+        lock.writeLock().lock();
+        try {
+            for (DeltaDocument document : getUpdatedDocuments(savedDocument, plan)) {
+                applyKeptSections(document, plan, false);
+                applyKeptSections(document, plan, true);
+            }
+            fileSource.setSaveJournal(null);
+            finishSave(savedDocument, plan);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (journal != null) {
+            journal.finish();
+        }
+    }
+
+    /**
+     * Replaces segments of the saved document by single segment of the saved
+     * file, unless the document was modified during the save, and sets final
+     * length of the file.
+     *
+     * @param savedDocument saved document
+     * @param plan save plan
+     * @throws IOException if input/output error
+     */
+    private void finishSave(@Nonnull DeltaDocument savedDocument, @Nonnull SavePlan plan) throws IOException {
+        FileDataSource fileSource = plan.fileSource;
+        if (documents.contains(savedDocument) && !isModifiedDuringSave(savedDocument, plan)) {
+            for (DataSegment segment : savedDocument.getSegments()) {
+                dropSegment(segment);
+            }
+            savedDocument.clear();
+            DataSegment fullFileSegment = createFileSegment(fileSource, 0, plan.dataSize);
+            savedDocument.getSegments().add(fullFileSegment);
+            savedDocument.setDataLength(plan.dataSize);
+        }
+        fileSource.setFileLength(plan.dataSize);
         fileSource.clearCache();
     }
 
-    private void processSegmentForSave(@Nonnull DataSegment segment, @Nonnull FileDataSource fileSource, long segmentDocumentPosition, @Nonnull DeltaDocument savedDocument, @Nonnull Map<DataSegment, Long> saveMap, @Nonnull List<DataArea> releasedSegments) {
-        boolean saveSegment = true;
-        boolean hasOverlaps = hasFileOverlaps(segmentDocumentPosition, segment, fileSource);
-        if (!hasOverlaps) {
-            if (segment instanceof FileSegment) {
-                FileSegment fileSegment = (FileSegment) segment;
-                long segmentLength = segment.getLength();
-                FileDataSource source = fileSegment.getSource();
-                if (source == savedDocument.getFileSource() && segmentDocumentPosition == fileSegment.getStartPosition()) {
-                    // Segment points to the original position, replace with empty space placeholder without saving
-                    SpaceSegment spaceSegment = new SpaceSegment(segmentLength);
-                    savedDocument.replaceSegment(segmentDocumentPosition, spaceSegment);
-                    saveMap.put(spaceSegment, segmentDocumentPosition);
-                    saveSegment = false;
-                } else {
-                    releasedSegments.add(new DataArea(segment.getStartPosition(), segmentLength));
-                }
+    /**
+     * Restores original content of the file after failed or cancelled in-place
+     * save, so that documents keep reading data on their original positions.
+     *
+     * Data are restored without holding the lock as readers still get original
+     * content from the journal. If restoration fails, journal is left for
+     * recovery on next open.
+     */
+    private void rollBackSave(@Nonnull FileDataSource fileSource, @Nonnull SaveJournal journal, @Nonnull Exception failure) {
+        boolean restored = false;
+        try {
+            journal.restorePreimages();
+            restored = true;
+        } catch (IOException | RuntimeException ex) {
+            failure.addSuppressed(ex);
+        }
+
+        lock.writeLock().lock();
+        try {
+            fileSource.setSaveJournal(null);
+            if (restored) {
+                fileSource.setFileLength(journal.getOriginalLength());
+                journal.finish();
+            } else {
+                journal.close();
             }
+        } catch (IOException | RuntimeException ex) {
+            failure.addSuppressed(ex);
+        } finally {
+            fileSource.clearCache();
+            lock.writeLock().unlock();
+        }
+    }
 
-            if (saveSegment) {
-                // Save segment to file and replace it with placeholder
-                saveSegment(fileSource, segmentDocumentPosition, segment);
-                SpaceSegment spaceSegment = new SpaceSegment(segment.getLength());
-                savedDocument.replaceSegment(segmentDocumentPosition, spaceSegment);
-                saveMap.put(spaceSegment, segmentDocumentPosition);
+    /**
+     * Creates list of all data transfers needed to save document.
+     *
+     * Sources read by the save are pinned, so that they are not modified
+     * while the data are written.
+     *
+     * @param savedDocument saved document
+     * @return save plan
+     */
+    @Nonnull
+    private SavePlan createSavePlan(@Nonnull DeltaDocument savedDocument) {
+        List<SaveOperation> operations = new ArrayList<>();
+        long position = 0;
+        for (DataSegment segment : savedDocument.getSegments()) {
+            long length = segment.getLength();
+            if (length > 0) {
+                operations.add(new SaveOperation(segment, position));
             }
+            position += length;
         }
+
+        return new SavePlan(savedDocument.getFileSource(), operations, position, pinEpoch(), savedDocument.getIndexedSegments().share());
     }
 
-    private boolean hasFileOverlaps(long startPosition, @Nonnull DataSegment segment, @Nonnull FileDataSource fileSource) {
-        DataSegmentsMap segmentsMap = fileSources.get(fileSource);
-        SegmentRecord record = segmentsMap.focusFirstOverlay(startPosition, segment.getLength());
-        while (record != null && record.getStartPosition() < startPosition + segment.getLength()) {
-            if (record.dataSegment == segment || (record.getStartPosition() + record.getLength() <= startPosition)) {
-                record = record.next;
-            } else {
+    private boolean isTemporaryFileSave(@Nonnull SavePlan plan) {
+        switch (saveStrategy) {
+            case IN_PLACE:
+                return false;
+            case TEMPORARY_FILE:
                 return true;
+            case AUTOMATIC:
+                return plan.getMovedLength() > plan.dataSize * TEMPORARY_FILE_SAVE_RATIO;
+            default:
+                throw new IllegalStateException("Unexpected save strategy " + saveStrategy);
+        }
+    }
+
+    /**
+     * Returns documents which have to be updated after the file is saved.
+     *
+     * Snapshots which might reference the saved file are converted to
+     * documents first. Saved document is included only if it was modified
+     * during the save.
+     *
+     * @param savedDocument saved document
+     * @param plan save plan
+     * @return list of documents
+     */
+    @Nonnull
+    private List<DeltaDocument> getUpdatedDocuments(@Nonnull DeltaDocument savedDocument, @Nonnull SavePlan plan) {
+        detachSnapshots(plan.fileSource);
+        List<DeltaDocument> updatedDocuments = new ArrayList<>();
+        for (DeltaDocument document : documents) {
+            if (document != savedDocument || isModifiedDuringSave(savedDocument, plan)) {
+                updatedDocuments.add(document);
             }
         }
 
-        return false;
+        return updatedDocuments;
+    }
+
+    private static boolean isModifiedDuringSave(@Nonnull DeltaDocument savedDocument, @Nonnull SavePlan plan) {
+        // Index is shared by the plan, so any modification replaces it's root
+        return savedDocument.getIndexedSegments().getRoot() != plan.savedRoot;
     }
 
     /**
-     * Processes section of the segment for overlaps and then save it.
+     * Writes whole document sequentially to temporary file in the directory
+     * of the saved file.
      *
-     * @param savePosition start of the section
-     * @param saveLength length of the section
+     * @param plan save plan
+     * @param progress save progress
+     * @return temporary file
+     * @throws IOException if input/output error
      */
-    private void saveSegmentSection(long savePosition, long saveLength, @Nonnull FileDataSource fileSource, @Nonnull Map<DataSegment, Long> saveMap, @Nonnull DeltaDocument savedDocument) {
-        DataSegment segment = savedDocument.getSegment(savePosition);
-        Long segmentSavePosition = saveMap.get(segment);
-        if (segmentSavePosition == null) {
-            throw new IllegalStateException("Unexpected missing save position");
+    @Nonnull
+    private File writeTemporaryFile(@Nonnull SavePlan plan, @Nonnull SaveProgress progress) throws IOException {
+        File file = plan.fileSource.getFile();
+        File temporaryFile = File.createTempFile("." + file.getName() + "-", TEMPORARY_FILE_SUFFIX, file.getAbsoluteFile().getParentFile());
+        try (RandomAccessFile temporaryAccessFile = new RandomAccessFile(temporaryFile, "rw")) {
+            FileChannel channel = temporaryAccessFile.getChannel();
+            for (SaveOperation operation : plan.operations) {
+                writeSection(channel, operation, 0, null, null, progress);
+            }
+            // Trailing holes are not written
+            temporaryAccessFile.setLength(plan.dataSize);
+            channel.force(true);
+        } catch (IOException | RuntimeException ex) {
+            temporaryFile.delete();
+            throw ex;
         }
-        long segmentDocumentPosition = segmentSavePosition;
-        long sectionStart = savePosition - segmentDocumentPosition;
-        DataSegmentsMap segmentsMap = fileSources.get(fileSource);
-        SegmentRecord firstRecord = segmentsMap.focusFirstOverlay(segmentDocumentPosition + sectionStart, saveLength);
-        while (firstRecord != null && (!saveMap.containsKey(firstRecord.dataSegment) || firstRecord.dataSegment == segment)) {
-            firstRecord = firstRecord.next;
-            if (firstRecord != null && firstRecord.getStartPosition() >= segmentDocumentPosition + sectionStart + saveLength) {
-                firstRecord = null;
-                break;
+
+        return temporaryFile;
+    }
+
+    /**
+     * Performs in-place save of the file.
+     *
+     * @param plan save plan
+     * @param journal save journal or null
+     * @param concurrentAccess true if the file can be read by other threads
+     * while it's written
+     * @param progress save progress
+     * @throws IOException if input/output error
+     */
+    private void executeSavePlan(@Nonnull SavePlan plan, @Nullable SaveJournal journal, boolean concurrentAccess, @Nonnull SaveProgress progress) throws IOException {
+        FileChannel channel = plan.fileSource.getAccessFile().getChannel();
+        // Area past the end of original file can be left unwritten for zeros
+        long sparseFrom = channel.size();
+        List<SaveOperation> fileMoves = new ArrayList<>();
+        List<SaveOperation> writes = new ArrayList<>();
+        for (SaveOperation operation : plan.operations) {
+            if (operation.fileSource == plan.fileSource) {
+                if (operation.sourcePosition != operation.targetPosition) {
+                    fileMoves.add(operation);
+                }
+            } else {
+                writes.add(operation);
             }
         }
 
-        if (firstRecord != null) {
-            SegmentRecord record = firstRecord.next;
-            if (record != null && record.getStartPosition() >= segmentDocumentPosition + sectionStart + saveLength) {
-                record = null;
+        // Move sections of the saved file, sections moved forward are processed
+        // from the end and sections moved backward from the beginning
+        Collections.sort(fileMoves, new Comparator<SaveOperation>() {
+            @Override
+            public int compare(SaveOperation first, SaveOperation second) {
+                boolean firstForward = first.targetPosition > first.sourcePosition;
+                boolean secondForward = second.targetPosition > second.sourcePosition;
+                if (firstForward != secondForward) {
+                    return firstForward ? -1 : 1;
+                }
+
+                return firstForward
+                        ? Long.compare(second.targetPosition, first.targetPosition)
+                        : Long.compare(first.targetPosition, second.targetPosition);
             }
+        });
 
-            if (record != null) {
-                record = segmentsMap.focusFirstOverlay(segmentDocumentPosition + sectionStart, saveLength);
-                do {
-                    if (record == null || (record.getStartPosition() >= segmentDocumentPosition + sectionStart + saveLength)) {
-                        break;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SAVE_BUFFER_SIZE);
+        ByteBuffer transferBuffer = concurrentAccess ? buffer : null;
+        File scratchFile = null;
+        RandomAccessFile scratchAccessFile = null;
+        try {
+            if (!fileMoves.isEmpty()) {
+                PendingSourcesIndex pendingSources = new PendingSourcesIndex(fileMoves);
+                // Operations are checked again only when source overlapping
+                // their target was processed
+                ArrayDeque<SaveOperation> queue = new ArrayDeque<>(fileMoves);
+                List<SaveOperation> bySize = new ArrayList<>(fileMoves);
+                Collections.sort(bySize, new Comparator<SaveOperation>() {
+                    @Override
+                    public int compare(SaveOperation first, SaveOperation second) {
+                        return Long.compare(first.length, second.length);
                     }
-                    SegmentRecord nextRecord = record.next;
-                    if (record.dataSegment != segment) {
-                        long overlapLength = record.getLength();
-                        long overlapStart = 0;
-                        if (segmentDocumentPosition + sectionStart > record.getStartPosition()) {
-                            overlapStart = segmentDocumentPosition + sectionStart - record.getStartPosition();
-                            overlapLength -= overlapStart;
+                });
+                int smallestIndex = 0;
+                int remaining = fileMoves.size();
+                while (remaining > 0) {
+                    SaveOperation operation = queue.poll();
+                    if (operation == null) {
+                        // Cyclic dependency, copy smallest section to scratch file
+                        while (!bySize.get(smallestIndex).pending) {
+                            smallestIndex++;
                         }
-                        if (record.getStartPosition() + overlapStart + overlapLength > segmentDocumentPosition + sectionStart + saveLength) {
-                            overlapLength = segmentDocumentPosition + sectionStart + saveLength - firstRecord.getStartPosition() - overlapStart;
-                        }
-                        if (overlapLength > 0) {
-                            preloadSegmentSection(record.dataSegment, overlapStart, overlapLength, fileSource, saveMap, savedDocument);
+                        operation = bySize.get(smallestIndex);
+                        if (scratchAccessFile == null) {
+                            scratchFile = File.createTempFile("bined-save", TEMPORARY_FILE_SUFFIX);
+                            scratchAccessFile = new RandomAccessFile(scratchFile, "rw");
                         }
+                        operation.scratchPosition = scratchAccessFile.length();
+                        copyToScratchFile(channel, operation.sourcePosition, scratchAccessFile.getChannel(), operation.scratchPosition, operation.length, buffer);
+                        writes.add(operation);
+                    } else if (!operation.pending || pendingSources.isTargetBlocked(operation)) {
+                        continue;
+                    } else {
+                        moveFileSection(channel, operation.sourcePosition, operation.targetPosition, operation.length, buffer, journal, progress);
                     }
-                    record = nextRecord;
-                } while (record != null);
-            } else {
-                long overlapLength = firstRecord.getLength();
-                long overlapStart = 0;
-                if (segmentDocumentPosition + sectionStart > firstRecord.getStartPosition()) {
-                    overlapStart = segmentDocumentPosition + sectionStart - firstRecord.getStartPosition();
-                    overlapLength -= overlapStart;
-                }
-                if (firstRecord.getStartPosition() + overlapStart + overlapLength > segmentDocumentPosition + sectionStart + saveLength) {
-                    overlapLength = segmentDocumentPosition + sectionStart + saveLength - firstRecord.getStartPosition() - overlapStart;
+
+                    operation.pending = false;
+                    pendingSources.remove(operation);
+                    pendingSources.collectWaitingOn(operation, queue);
+                    remaining--;
                 }
-                if (overlapLength > 0) {
-                    long overlapPosition = saveMap.get(firstRecord.dataSegment);
-                    preloadSegmentSection(firstRecord.dataSegment, overlapStart, overlapLength, fileSource, saveMap, savedDocument);
-                    // TODO: Replace recursion with iteration
-                    saveSegmentSection(overlapPosition + overlapStart, overlapLength, fileSource, saveMap, savedDocument);
+            }
+
+            // Write data from memory, other files and scratch file
+            for (SaveOperation operation : writes) {
+                if (operation.scratchPosition >= 0) {
+                    transferFileSection(scratchAccessFile.getChannel(), operation.scratchPosition, channel, operation.targetPosition, operation.length, transferBuffer, journal, progress);
+                } else {
+                    writeSection(channel, operation, sparseFrom, transferBuffer, journal, progress);
                 }
             }
+        } finally {
+            if (scratchAccessFile != null) {
+                scratchAccessFile.close();
+            }
+            if (scratchFile != null && !scratchFile.delete()) {
+                Logger.getLogger(SegmentsRepository.class.getName()).log(Level.WARNING, "Unable to delete scratch file {0}", scratchFile);
+            }
+        }
+    }
+
+    private void writeSection(@Nonnull FileChannel channel, @Nonnull SaveOperation operation, long sparseFrom, @Nullable ByteBuffer transferBuffer, @Nullable SaveJournal journal, @Nonnull SaveProgress progress) throws IOException {
+        if (operation.memorySource != null) {
+            writeMemorySection(channel, operation.memorySource, operation.sourcePosition, operation.targetPosition, operation.length, journal, progress);
+        } else if (operation.fileSource != null) {
+            FileChannel sourceChannel = operation.fileSource.getAccessFile().getChannel();
+            transferFileSection(sourceChannel, operation.sourcePosition, channel, operation.targetPosition, operation.length, transferBuffer, journal, progress);
+        } else {
+            writeFillSection(channel, operation.fillValue, operation.targetPosition, operation.length, sparseFrom, journal, progress);
+        }
+    }
+
+    /**
+     * Moves section of the file to another position in the same file.
+     *
+     * Overlapping section moved forward is copied from the end.
+     */
+    private static void moveFileSection(@Nonnull FileChannel channel, long sourcePosition, long targetPosition, long length, @Nonnull ByteBuffer buffer, @Nullable SaveJournal journal, @Nonnull SaveProgress progress) throws IOException {
+        boolean backward = targetPosition > sourcePosition && targetPosition < sourcePosition + length;
+        long remaining = length;
+        while (remaining > 0) {
+            int blockLength = remaining < buffer.capacity() ? (int) remaining : buffer.capacity();
+            long offset = backward ? remaining - blockLength : length - remaining;
+            buffer.clear();
+            buffer.limit(blockLength);
+            readFully(channel, buffer, sourcePosition + offset);
+            buffer.flip();
+            if (journal != null) {
+                journal.recordRegion(targetPosition + offset, blockLength);
+            }
+            writeFully(channel, buffer, targetPosition + offset);
+            remaining -= blockLength;
+            progress.processed(blockLength);
         }
+    }
 
-        // Process all segments in given section and save them to file
-        long length = saveLength;
+    /**
+     * Copies section of other file.
+     *
+     * Without buffer, data are transferred directly between the channels,
+     * which uses position of the target channel. Position of the file is
+     * shared with page windows of readers, so buffer with positional access
+     * has to be used when the target file can be read concurrently.
+     *
+     * Source is read under read lock, as it can be accessed by other threads
+     * during the save.
+     */
+    private void transferFileSection(@Nonnull FileChannel sourceChannel, long sourcePosition, @Nonnull FileChannel channel, long targetPosition, long length, @Nullable ByteBuffer buffer, @Nullable SaveJournal journal, @Nonnull SaveProgress progress) throws IOException {
         long processed = 0;
-        while (length > 0) {
-            DataSegment savedSegment = savedDocument.getSegment(savePosition + processed);
-            long savedSegmentPosition = segmentDocumentPosition + processed;
-            long overlapLength = savedSegmentPosition + savedSegment.getLength() - savePosition;
-            long overlapStart = savePosition - savedSegmentPosition;
-
-            if (!(savedSegment instanceof SpaceSegment)) {
-                if (!(savedSegment instanceof FileSegment && ((FileSegment) savedSegment).getSource() == fileSource && savedSegmentPosition == savedSegment.getStartPosition())) {
-                    // Save only if there is actual change
-                    saveSegment(fileSource, savedSegmentPosition, savedSegment, overlapStart, overlapLength);
-                }
-                DataSegment originalSegment = savedDocument.getSegment(savedSegmentPosition + overlapStart);
-                saveMap.remove(originalSegment);
-                savedDocument.replaceSegment(savedSegmentPosition + overlapStart, new SpaceSegment(overlapLength));
-                if (savedSegmentPosition + overlapStart + overlapLength < segment.getLength()) {
-                    DataSegment followingSegment = savedDocument.getSegment(savedSegmentPosition + overlapStart + overlapLength);
-                    if (followingSegment != null) {
-                        saveMap.put(followingSegment, savedSegmentPosition + overlapStart + overlapLength);
+        while (processed < length) {
+            int blockLength = length - processed < SAVE_BUFFER_SIZE ? (int) (length - processed) : SAVE_BUFFER_SIZE;
+            if (journal != null) {
+                journal.recordRegion(targetPosition + processed, blockLength);
+            }
+            lock.readLock().lock();
+            try {
+                if (buffer == null) {
+                    channel.position(targetPosition + processed);
+                    long transferred = 0;
+                    while (transferred < blockLength) {
+                        long count = sourceChannel.transferTo(sourcePosition + processed + transferred, blockLength - transferred, channel);
+                        if (count <= 0) {
+                            throw new IOException("Unexpected end of file");
+                        }
+                        transferred += count;
                     }
+                } else {
+                    buffer.clear();
+                    buffer.limit(blockLength);
+                    readFully(sourceChannel, buffer, sourcePosition + processed);
                 }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (buffer != null) {
+                buffer.flip();
+                writeFully(channel, buffer, targetPosition + processed);
+            }
+            processed += blockLength;
+            progress.processed(blockLength);
+        }
+    }
+
+    /**
+     * Writes section of memory data.
+     *
+     * Source is read under read lock, as it can be accessed by other threads
+     * during the save.
+     */
+    private void writeMemorySection(@Nonnull FileChannel channel, @Nonnull BinaryData source, long sourcePosition, long targetPosition, long length, @Nullable SaveJournal journal, @Nonnull SaveProgress progress) throws IOException {
+        byte[] block = new byte[length < SAVE_BUFFER_SIZE ? (int) length : SAVE_BUFFER_SIZE];
+        long processed = 0;
+        while (processed < length) {
+            int blockLength = length - processed < block.length ? (int) (length - processed) : block.length;
+            lock.readLock().lock();
+            try {
+                source.copyToArray(sourcePosition + processed, block, 0, blockLength);
+            } finally {
+                lock.readLock().unlock();
             }
-
-            processed += overlapLength;
-            length -= overlapLength;
+            if (journal != null) {
+                journal.recordRegion(targetPosition + processed, blockLength);
+            }
+            writeFully(channel, ByteBuffer.wrap(block, 0, blockLength), targetPosition + processed);
+            processed += blockLength;
+            progress.processed(blockLength);
         }
     }
 
     /**
-     * Loads part of the file segment into memory for saving.
+     * Writes section of repeated byte value.
      *
-     * @param segment segment
-     * @param sectionStart section start
-     * @param sectionLength section length
-     * @param fileSource file source
+     * Zeros past given sparse limit are not written, so that they are left as
+     * holes of sparse file where supported by the file system. File length is
+     * extended by the caller.
      */
-    private void preloadSegmentSection(@Nonnull DataSegment segment, long sectionStart, long sectionLength, @Nonnull FileDataSource fileSource, @Nonnull Map<DataSegment, Long> saveMap, @Nonnull DeltaDocument savedDocument) {
-        Long segmentDocumentPosition = saveMap.get(segment);
-        if (segmentDocumentPosition == null) {
-            // Segment is from other document, should be converted elsewhere - skip
-            return;
+    private static void writeFillSection(@Nonnull FileChannel channel, byte fillValue, long targetPosition, long length, long sparseFrom, @Nullable SaveJournal journal, @Nonnull SaveProgress progress) throws IOException {
+        if (fillValue == 0) {
+            long writtenLength = sparseFrom - targetPosition;
+            if (writtenLength < length) {
+                long skippedLength = length - (writtenLength < 0 ? 0 : writtenLength);
+                length -= skippedLength;
+                progress.processed(skippedLength);
+            }
         }
-        if (segment == null || (!(segment instanceof FileSegment)) || ((FileSegment) segment).getSource() != fileSource) {
-            throw new IllegalArgumentException("Segment is not valid for preloading");
+        if (length <= 0) {
+            return;
         }
 
-        MemorySegment preloadedSegment = createMemorySegment();
-        preloadedSegment.setLength(sectionLength);
-        preloadedSegment.getSource().insert(0, savedDocument, segmentDocumentPosition + sectionStart, sectionLength);
-        savedDocument.replaceSegment(segmentDocumentPosition + sectionStart, preloadedSegment);
-        saveMap.put(preloadedSegment, segmentDocumentPosition + sectionStart);
-        DataSegment afterSegment = savedDocument.getSegment(segmentDocumentPosition + sectionStart + sectionLength);
-        if (afterSegment != null) {
-            saveMap.put(afterSegment, segmentDocumentPosition + sectionStart + sectionLength);
+        byte[] block = new byte[length < SAVE_BUFFER_SIZE ? (int) length : SAVE_BUFFER_SIZE];
+        Arrays.fill(block, fillValue);
+        long processed = 0;
+        while (processed < length) {
+            int blockLength = length - processed < block.length ? (int) (length - processed) : block.length;
+            if (journal != null) {
+                journal.recordRegion(targetPosition + processed, blockLength);
+            }
+            writeFully(channel, ByteBuffer.wrap(block, 0, blockLength), targetPosition + processed);
+            processed += blockLength;
+            progress.processed(blockLength);
         }
     }
 
-    private void saveSegment(@Nonnull FileDataSource fileSource, long targetPosition, @Nonnull DataSegment segment) {
-        saveSegment(fileSource, targetPosition, segment, 0, segment.getLength());
+    /**
+     * Copies section of the saved file to scratch file in blocks, so that
+     * only single buffer is needed regardless of the section length.
+     */
+    private static void copyToScratchFile(@Nonnull FileChannel channel, long sourcePosition, @Nonnull FileChannel scratchChannel, long scratchPosition, long length, @Nonnull ByteBuffer buffer) throws IOException {
+        long processed = 0;
+        while (processed < length) {
+            int blockLength = length - processed < buffer.capacity() ? (int) (length - processed) : buffer.capacity();
+            buffer.clear();
+            buffer.limit(blockLength);
+            readFully(channel, buffer, sourcePosition + processed);
+            buffer.flip();
+            writeFully(scratchChannel, buffer, scratchPosition + processed);
+            processed += blockLength;
+        }
     }
 
-    private void saveSegment(@Nonnull FileDataSource fileSource, long targetPosition, @Nonnull DataSegment segment, long segmentOffset, long segmentLimit) {
-        RandomAccessFile accessFile = fileSource.getAccessFile();
-        try {
-            if (segment instanceof MemorySegment) {
-                MemorySegment memorySegment = (MemorySegment) segment;
-                MemoryDataSource source = memorySegment.getSource();
-
-                accessFile.seek(targetPosition);
-                long sectionPosition = memorySegment.getStartPosition() + segmentOffset;
-                long sectionLength = segmentLimit;
-                byte[] buffer = new byte[PROCESSING_LIMIT];
-                while (sectionLength > 0) {
-                    int length = sectionLength < PROCESSING_LIMIT ? (int) sectionLength : PROCESSING_LIMIT;
-                    source.copyToArray(sectionPosition, buffer, 0, length);
-                    accessFile.write(buffer, 0, length);
-                    sectionPosition += length;
-                    sectionLength -= length;
-                }
-            } else {
-                FileSegment fileSegment = (FileSegment) segment;
-                FileDataSource source = fileSegment.getSource();
-                RandomAccessFile sourceFile = source.getAccessFile();
-
-                long sectionPosition = fileSegment.getStartPosition() + segmentOffset;
-                long sectionLength = segmentLimit;
-                long sectionProcessed = 0;
-
-                if (source == fileSource && targetPosition > sectionPosition && sectionPosition + sectionLength >= targetPosition) {
-                    // Saved segment overlaps itself, reverse writting is needed
-                    byte[] buffer = new byte[PROCESSING_LIMIT];
-                    while (sectionLength > 0) {
-                        int length = sectionLength < PROCESSING_LIMIT ? (int) sectionLength : PROCESSING_LIMIT;
-                        int toProcess = length;
-                        sourceFile.seek(sectionPosition + sectionLength - length);
-                        while (toProcess > 0) {
-                            int red = sourceFile.read(buffer, length - toProcess, toProcess);
-                            toProcess -= red;
-                        }
-                        accessFile.seek(targetPosition + sectionLength - length);
-                        accessFile.write(buffer, 0, length);
-
-                        sectionLength -= length;
-                        sectionProcessed += length;
-                    }
-                } else {
-                    byte[] buffer = new byte[PROCESSING_LIMIT];
-                    while (sectionLength > 0) {
-                        int length = sectionLength < PROCESSING_LIMIT ? (int) sectionLength : PROCESSING_LIMIT;
-                        sourceFile.seek(sectionPosition + sectionProcessed);
-                        length = sourceFile.read(buffer, 0, length);
-                        accessFile.seek(targetPosition + sectionProcessed);
-                        accessFile.write(buffer, 0, length);
-                        sectionLength -= length;
-                        sectionProcessed += length;
-                    }
-                }
+    private static void readFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file");
             }
-        } catch (IOException ex) {
-            Logger.getLogger(SegmentsRepository.class.getName()).log(Level.SEVERE, null, ex);
+            position += count;
         }
     }
 
-    @Nonnull
-    private Map<DataSegment, Long> createSaveTransformation(@Nonnull DeltaDocument savedDocument) {
-        Map<DataSegment, Long> transformation = new HashMap<>();
-        DefaultDoublyLinkedList<DataSegment> segments = savedDocument.getSegments();
-        long position = 0;
-        for (DataSegment segment : segments) {
-            transformation.put(segment, position);
-            position += segment.getLength();
+    private static void writeFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
         }
-
-        return transformation;
     }
 
     /**
-     * Transforms all file segments to after save location.
+     * Transforms file segments of the saved file to after save location.
      *
-     * Process all segments in given document and for file segments from the
-     * target document transform all overlaying parts to new positions.
+     * Process all segments in given document and for file segments of the
+     * saved file transform all parts kept by the save to new positions.
+     *
+     * Transformation is done in two phases. While original content of the
+     * file is still available, parts of file segments not kept by the save are
+     * loaded to memory, which keeps the document valid even if save fails.
+     * Only after the file is saved, kept parts are moved to new positions.
+     *
+     * Sections are collected first and replaced by document position, as
+     * replacement of segment can merge it's neighbours.
      *
      * @param document document to process
-     * @param saveMap save transformation map
-     * @param fileSource saved file file source
+     * @param plan save plan
+     * @param remap true to move kept parts to new positions, false to load
+     * parts not kept to memory
      */
-    private void applySaveMap(@Nonnull DeltaDocument document, @Nonnull Map<DataSegment, Long> saveMap, @Nonnull FileDataSource fileSource) {
-        DataSegmentsMap segmentsMap = fileSources.get(fileSource);
+    private void applyKeptSections(@Nonnull DeltaDocument document, @Nonnull SavePlan plan, boolean remap) {
+        FileDataSource fileSource = plan.fileSource;
+        List<DocumentSection> sections = new ArrayList<>();
         long documentPosition = 0;
-        DataSegment segment = document.getSegment(0);
-        while (segment != null) {
-            DataSegment nextSegment = segment.getNext();
+        for (DataSegment segment : document.getSegments()) {
             long segmentLength = segment.getLength();
             if (segment instanceof FileSegment && ((FileSegment) segment).getSource() == fileSource) {
                 long segmentPosition = segment.getStartPosition();
                 long segmentEnd = segmentPosition + segmentLength;
-                long processed = 0;
-
-                // Split segment by saved file segments
-                SegmentRecord record = segmentsMap.focusFirstOverlay(segmentPosition, segmentLength);
-                while (record != null && processed < segmentLength && record.getStartPosition() <= segmentEnd) {
-                    Long savePosition = saveMap.get(record.dataSegment);
-                    if (savePosition != null && record.getStartPosition() + record.getLength() >= segmentPosition + processed) {
-                        // Replace segment for file segment pointing to after-save position
-                        long replacedLength = record.getLength();
-                        long replacedPosition = record.getStartPosition();
-                        if (segmentPosition > replacedPosition) {
-                            replacedLength -= segmentPosition - replacedPosition;
-                            replacedPosition = segmentPosition;
-                        }
-                        if (replacedPosition + replacedLength > segmentEnd) {
-                            replacedLength = segmentEnd - replacedPosition;
-                        }
-
-                        if (replacedLength > 0) {
-                            long replacedOffset = replacedPosition - segmentPosition;
-                            if (processed < replacedOffset) {
-                                preloadDocumentSection(document, documentPosition + processed, replacedOffset - processed);
-                            }
-
-                            if (savePosition + replacedOffset != segmentPosition) {
-                                FileSegment newSegment = createFileSegment(fileSource, savePosition + replacedOffset, replacedLength);
-                                document.remove(documentPosition + replacedOffset, replacedLength);
-                                document.insertSegment(documentPosition + replacedOffset, newSegment);
-                            }
-                            processed = replacedOffset + replacedLength;
-                        }
+                long processedPosition = segmentPosition;
+                Long fromPosition = plan.keptSections.floorKey(segmentPosition);
+                for (KeptSection keptSection : plan.keptSections.subMap(fromPosition == null ? segmentPosition : fromPosition, true, segmentEnd, false).values()) {
+                    long keptStart = Math.max(keptSection.position, segmentPosition);
+                    long keptEnd = Math.min(keptSection.position + keptSection.length, segmentEnd);
+                    if (keptEnd <= keptStart) {
+                        continue;
                     }
 
-                    record = segmentsMap.records.nextTo(record);
-                    if (record == null) {
-                        break;
+                    if (!remap && processedPosition < keptStart) {
+                        sections.add(new DocumentSection(documentPosition + processedPosition - segmentPosition, keptStart - processedPosition, processedPosition));
+                    }
+                    long newPosition = keptSection.targetPosition + keptStart - keptSection.position;
+                    if (remap && newPosition != keptStart) {
+                        sections.add(new DocumentSection(documentPosition + keptStart - segmentPosition, keptEnd - keptStart, newPosition));
                     }
+                    processedPosition = keptEnd;
                 }
 
-                if (processed < segmentLength) {
-                    preloadDocumentSection(document, documentPosition + processed, segmentLength - processed);
+                if (!remap && processedPosition < segmentEnd) {
+                    sections.add(new DocumentSection(documentPosition + processedPosition - segmentPosition, segmentEnd - processedPosition, processedPosition));
                 }
             }
 
             documentPosition += segmentLength;
-            segment = nextSegment;
+        }
+
+        for (DocumentSection section : sections) {
+            if (remap) {
+                document.replaceSegment(section.documentPosition, createFileSegment(fileSource, section.filePosition, section.length));
+            } else {
+                preloadDocumentSection(document, section.documentPosition, section.length);
+            }
         }
         document.clearCache();
     }
 
     private void preloadDocumentSection(@Nonnull DeltaDocument document, long documentPosition, long sectionLength) {
         MemorySegment preloadedSegment = createMemorySegment();
-        preloadedSegment.setLength(sectionLength);
         preloadedSegment.getSource().insert(0, document, documentPosition, sectionLength);
+        updateSegmentLength(preloadedSegment, sectionLength);
         document.replaceSegment(documentPosition, preloadedSegment);
     }
 
@@ -556,8 +1189,12 @@ public class SegmentsRepository {
     }
 
     public void dropFileSegment(@Nonnull FileSegment fileSegment) {
-        DataSegmentsMap segmentsMap = fileSources.get(fileSegment.getSource());
+        FileDataSource fileSource = fileSegment.getSource();
+        DataSegmentsMap segmentsMap = fileSources.get(fileSource);
         segmentsMap.remove(fileSegment);
+        if (segmentsMap.isEmpty() && scratchSources.contains(fileSource)) {
+            closeScratchSource(fileSource);
+        }
     }
 
     @Nonnull
@@ -585,11 +1222,33 @@ public class SegmentsRepository {
         return memorySegment;
     }
 
+    /**
+     * Creates new segment of repeated byte value.
+     *
+     * @param length length
+     * @param fillValue fill value
+     * @return fill segment
+     */
     @Nonnull
+    public FillSegment createFillSegment(long length, byte fillValue) {
+        return new FillSegment(length, fillValue);
+    }
+
+    /**
+     * Updates position and length of the segment.
+     *
+     * Position of fill segment is ignored.
+     *
+     * @param segment segment
+     * @param position new start position
+     * @param length new length
+     */
     public void updateSegment(@Nonnull DataSegment segment, long position, long length) {
         if (segment instanceof MemorySegment) {
             DataSegmentsMap segmentsMap = memorySources.get(((MemorySegment) segment).getSource());
             segmentsMap.updateSegment(segment, position, length);
+        } else if (segment instanceof FillSegment) {
+            ((FillSegment) segment).setLength(length);
         } else {
             DataSegmentsMap segmentsMap = fileSources.get(((FileSegment) segment).getSource());
             segmentsMap.updateSegment(segment, position, length);
@@ -600,6 +1259,8 @@ public class SegmentsRepository {
         if (segment instanceof MemorySegment) {
             DataSegmentsMap segmentsMap = memorySources.get(((MemorySegment) segment).getSource());
             segmentsMap.updateSegmentLength(segment, length);
+        } else if (segment instanceof FillSegment) {
+            ((FillSegment) segment).setLength(length);
         } else {
             DataSegmentsMap segmentsMap = fileSources.get(((FileSegment) segment).getSource());
             segmentsMap.updateSegmentLength(segment, length);
@@ -607,8 +1268,12 @@ public class SegmentsRepository {
     }
 
     public void dropMemorySegment(@Nonnull MemorySegment memorySegment) {
-        DataSegmentsMap segmentsMap = memorySources.get(memorySegment.getSource());
+        MemoryDataSource memorySource = memorySegment.getSource();
+        DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         segmentsMap.remove(memorySegment);
+        if (segmentsMap.isEmpty()) {
+            closeMemorySource(memorySource);
+        }
     }
 
     public void dropSegment(@Nonnull DataSegment segment) {
@@ -620,11 +1285,16 @@ public class SegmentsRepository {
     }
 
     public void dropDocument(@Nonnull DeltaDocument document) {
-        for (DataSegment segment : document.getSegments()) {
-            dropSegment(segment);
+        lock.writeLock().lock();
+        try {
+            for (DataSegment segment : document.getSegments()) {
+                dropSegment(segment);
+            }
+            document.clear();
+            documents.remove(document);
+        } finally {
+            lock.writeLock().unlock();
         }
-        document.clear();
-        documents.remove(document);
     }
 
     /**
@@ -637,6 +1307,7 @@ public class SegmentsRepository {
      * @param value value to set
      */
     public void setMemoryByte(@Nonnull MemorySegment memorySegment, long segmentPosition, byte value) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 1);
@@ -652,6 +1323,7 @@ public class SegmentsRepository {
     }
 
     public void insertMemoryData(@Nonnull MemorySegment memorySegment, long segmentPosition, @Nonnull BinaryData insertedData) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 0);
@@ -663,6 +1335,7 @@ public class SegmentsRepository {
     }
 
     public void insertMemoryData(@Nonnull MemorySegment memorySegment, long segmentPosition, @Nonnull BinaryData insertedData, long insertedDataOffset, long insertedDataLength) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 0);
@@ -674,6 +1347,7 @@ public class SegmentsRepository {
     }
 
     public void insertMemoryData(@Nonnull MemorySegment memorySegment, long segmentPosition, byte[] insertedData) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 0);
@@ -685,6 +1359,7 @@ public class SegmentsRepository {
     }
 
     public void insertMemoryData(@Nonnull MemorySegment memorySegment, long segmentPosition, @Nonnull byte[] insertedData, int insertedDataOffset, int insertedDataLength) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 0);
@@ -696,6 +1371,7 @@ public class SegmentsRepository {
     }
 
     public void insertMemoryData(@Nonnull MemorySegment memorySegment, long segmentPosition, long length) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 0);
@@ -707,6 +1383,7 @@ public class SegmentsRepository {
     }
 
     public void insertUninitializedMemoryData(@Nonnull MemorySegment memorySegment, long segmentPosition, long length) {
+        unshareMemorySource(memorySegment.getSource());
         MemoryDataSource memorySource = memorySegment.getSource();
         DataSegmentsMap segmentsMap = memorySources.get(memorySource);
         detachMemoryArea(memorySegment, segmentPosition, 0);
@@ -717,6 +1394,34 @@ public class SegmentsRepository {
         segmentsMap.updateSegmentLength(memorySegment, memorySegment.getLength() + length);
     }
 
+    /**
+     * Moves all segments of memory source pinned by snapshot to copy of the
+     * source, so that the source can be modified.
+     *
+     * Pages of the data are shared with the original source, which is kept
+     * unchanged until the pinning snapshots are closed.
+     *
+     * @param memorySource memory source
+     */
+    private void unshareMemorySource(@Nonnull MemoryDataSource memorySource) {
+        DataSegmentsMap segmentsMap = memorySources.get(memorySource);
+        if (!isPinned(segmentsMap)) {
+            return;
+        }
+
+        MemoryDataSource newMemorySource = openMemorySource();
+        newMemorySource.insert(0, memorySource, 0, memorySource.getDataSize());
+        memorySources.remove(memorySource);
+        retiredSources.add(new RetiredSource(memorySource, segmentsMap.epoch, currentEpoch));
+        segmentsMap.epoch = currentEpoch;
+        memorySources.put(newMemorySource, segmentsMap);
+        SegmentRecord record = segmentsMap.records.first();
+        while (record != null) {
+            ((MemorySegment) record.dataSegment).setSource(newMemorySource);
+            record = record.getNext();
+        }
+    }
+
     /**
      * Detaches all other memory segments crossing given area of provided memory
      * segment.
@@ -749,13 +1454,25 @@ public class SegmentsRepository {
         }
     }
 
+    /**
+     * Moves memory segment to it's own memory source.
+     *
+     * Pages of the data are shared with the original source and copied only
+     * when modified.
+     *
+     * @param memorySegment memory segment
+     */
     public void detachSegment(@Nonnull MemorySegment memorySegment) {
         MemoryDataSource source = memorySegment.getSource();
         MemoryDataSource newMemorySource = openMemorySource();
-        newMemorySource.insert(0, source.copy(memorySegment.getStartPosition(), memorySegment.getLength()));
+        newMemorySource.insert(0, source, memorySegment.getStartPosition(), memorySegment.getLength());
         DataSegmentsMap segmentsMap = memorySources.get(source);
         segmentsMap.remove(memorySegment);
+        if (segmentsMap.isEmpty()) {
+            closeMemorySource(source);
+        }
         memorySegment.setSource(newMemorySource);
+        memorySegment.setStartPosition(0);
         DataSegmentsMap newSegmentsMap = memorySources.get(newMemorySource);
         newSegmentsMap.add(memorySegment);
     }
@@ -777,9 +1494,7 @@ public class SegmentsRepository {
         while (record != null) {
             SegmentRecord nextRecord = record.getNext();
             if (record.dataSegment != memorySegment && record.getStartPosition() >= position) {
-                MemorySegment segment = (MemorySegment) record.dataSegment;
-                segment.setStartPosition(segment.getStartPosition() + shift);
-                record.maxPosition += shift;
+                segmentsMap.shiftRecord(record, shift);
             }
             record = nextRecord;
         }
@@ -796,6 +1511,8 @@ public class SegmentsRepository {
         if (segment instanceof MemorySegment) {
             MemorySegment memorySegment = (MemorySegment) segment;
             return createMemorySegment(memorySegment.getSource(), memorySegment.getStartPosition(), memorySegment.getLength());
+        } else if (segment instanceof FillSegment) {
+            return createFillSegment(segment.getLength(), ((FillSegment) segment).getFillValue());
         } else {
             FileSegment fileSegment = (FileSegment) segment;
             return createFileSegment(fileSegment.getSource(), fileSegment.getStartPosition(), fileSegment.getLength());
@@ -815,6 +1532,8 @@ public class SegmentsRepository {
         if (segment instanceof MemorySegment) {
             MemorySegment memorySegment = (MemorySegment) segment;
             return createMemorySegment(memorySegment.getSource(), memorySegment.getStartPosition() + offset, length);
+        } else if (segment instanceof FillSegment) {
+            return createFillSegment(length, ((FillSegment) segment).getFillValue());
         } else {
             FileSegment fileSegment = (FileSegment) segment;
             return createFileSegment(fileSegment.getSource(), fileSegment.getStartPosition() + offset, length);
@@ -827,79 +1546,507 @@ public class SegmentsRepository {
      * @param fileSource file source
      */
     public void detachFileSource(@Nonnull FileDataSource fileSource) {
-        for (DeltaDocument document : documents) {
-            long documentPosition = 0;
-            while (documentPosition < document.getDataSize()) {
-                DataSegment segment = document.getSegment(documentPosition);
-                long segmentLength = segment.getLength();
-                if (segment instanceof FileSegment && ((FileSegment) segment).getSource() == fileSource) {
-                    preloadDocumentSection(document, documentPosition, segmentLength);
+        lock.writeLock().lock();
+        try {
+            detachSnapshots(fileSource);
+            for (DeltaDocument document : documents) {
+                long documentPosition = 0;
+                while (documentPosition < document.getDataSize()) {
+                    DataSegment segment = document.getSegment(documentPosition);
+                    long segmentLength = segment.getLength();
+                    if (segment instanceof FileSegment && ((FileSegment) segment).getSource() == fileSource) {
+                        preloadDocumentSection(document, documentPosition, segmentLength);
+                    }
+
+                    documentPosition += segmentLength;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Pins all data sources existing at this moment.
+     *
+     * Until the epoch is unpinned, data of pinned sources is not modified:
+     * memory source is copied before it's data are modified and closing of
+     * the source is postponed. This allows snapshots to reference data of
+     * segments without copying the segments.
+     *
+     * Expects write lock to be held.
+     *
+     * @return pinned epoch
+     */
+    /* package */ long pinEpoch() {
+        currentEpoch++;
+        pinnedEpochs.add(currentEpoch);
+        return currentEpoch;
+    }
+
+    /**
+     * Unpins given epoch and closes retired sources no longer pinned.
+     *
+     * Expects write lock to be held.
+     *
+     * @param epoch pinned epoch
+     */
+    /* package */ void unpinEpoch(long epoch) {
+        pinnedEpochs.remove(epoch);
+        Iterator<RetiredSource> iterator = retiredSources.iterator();
+        while (iterator.hasNext()) {
+            RetiredSource retiredSource = iterator.next();
+            if (!isPinned(retiredSource.epoch, retiredSource.retiredEpoch)) {
+                iterator.remove();
+                closeRetiredSource(retiredSource);
+            }
+        }
+    }
+
+    /**
+     * Registers open snapshot and pins it's epoch.
+     *
+     * Expects write lock to be held.
+     *
+     * @param snapshot snapshot
+     * @return epoch of the snapshot
+     */
+    /* package */ long addSnapshot(@Nonnull DeltaDocumentSnapshot snapshot) {
+        snapshots.add(snapshot);
+        return pinEpoch();
+    }
+
+    /**
+     * Unregisters snapshot and unpins it's epoch.
+     *
+     * Expects write lock to be held.
+     *
+     * @param snapshot snapshot
+     * @param epoch epoch of the snapshot
+     */
+    /* package */ void removeSnapshot(@Nonnull DeltaDocumentSnapshot snapshot, long epoch) {
+        snapshots.remove(snapshot);
+        unpinEpoch(epoch);
+    }
+
+    /**
+     * Converts snapshots which might reference given file source to separate
+     * documents, so that they are processed together with other documents
+     * when the file is changed.
+     *
+     * @param fileSource file source
+     */
+    private void detachSnapshots(@Nonnull FileDataSource fileSource) {
+        DataSegmentsMap segmentsMap = fileSources.get(fileSource);
+        for (DeltaDocumentSnapshot snapshot : new ArrayList<>(snapshots)) {
+            if (segmentsMap == null || snapshot.getEpoch() > segmentsMap.epoch) {
+                snapshot.detach();
+            }
+        }
+    }
+
+    /**
+     * Creates segment for part of data of the node of shared segments tree.
+     *
+     * Retired source of the node is used by segments again.
+     *
+     * @param node tree node
+     * @param offset offset in the node
+     * @param length length
+     * @return data segment
+     */
+    @Nonnull
+    /* package */ DataSegment createSegment(@Nonnull IndexedSegmentsList.TreeNode node, long offset, long length) {
+        if (node.source instanceof MemoryDataSource) {
+            MemoryDataSource memorySource = (MemoryDataSource) node.source;
+            if (!memorySources.containsKey(memorySource)) {
+                memorySources.put(memorySource, restoreRetiredSource(memorySource));
+            }
+            return createMemorySegment(memorySource, node.startPosition + offset, length);
+        } else if (node.source instanceof FileDataSource) {
+            FileDataSource fileSource = (FileDataSource) node.source;
+            if (!fileSources.containsKey(fileSource)) {
+                fileSources.put(fileSource, restoreRetiredSource(fileSource));
+                scratchSources.add(fileSource);
+            }
+            return createFileSegment(fileSource, node.startPosition + offset, length);
+        }
+
+        return createFillSegment(length, ((FillSegment) node.segment).getFillValue());
+    }
+
+    @Nonnull
+    private DataSegmentsMap restoreRetiredSource(@Nonnull Object source) {
+        Iterator<RetiredSource> iterator = retiredSources.iterator();
+        while (iterator.hasNext()) {
+            RetiredSource retiredSource = iterator.next();
+            if (retiredSource.source == source) {
+                iterator.remove();
+                DataSegmentsMap segmentsMap = new DataSegmentsMap();
+                segmentsMap.epoch = retiredSource.epoch;
+                return segmentsMap;
+            }
+        }
+
+        throw new IllegalStateException("Source is not available");
+    }
+
+    private void closeRetiredSource(@Nonnull RetiredSource retiredSource) {
+        if (retiredSource.source instanceof MemoryDataSource) {
+            ((MemoryDataSource) retiredSource.source).dispose();
+        } else {
+            FileDataSource fileSource = (FileDataSource) retiredSource.source;
+            fileSource.close();
+            if (!fileSource.getFile().delete()) {
+                Logger.getLogger(SegmentsRepository.class.getName()).log(Level.WARNING, "Unable to delete scratch file {0}", fileSource.getFile());
+            }
+        }
+    }
+
+    private boolean isPinned(@Nonnull DataSegmentsMap segmentsMap) {
+        return !pinnedEpochs.isEmpty() && pinnedEpochs.last() > segmentsMap.epoch;
+    }
+
+    /**
+     * Returns true if any epoch after given epoch up to given retired epoch is
+     * pinned.
+     *
+     * @param epoch epoch when source started to be used
+     * @param retiredEpoch last epoch when source was used
+     * @return true if pinned
+     */
+    private boolean isPinned(long epoch, long retiredEpoch) {
+        Long pinnedEpoch = pinnedEpochs.higher(epoch);
+        return pinnedEpoch != null && pinnedEpoch <= retiredEpoch;
+    }
+
+    /**
+     * Returns size of heap memory used by memory sources.
+     *
+     * Pages of spill store shared with other repositories are included.
+     *
+     * @return size in bytes
+     */
+    public long getMemoryHeapSize() {
+        return memoryStore.getResidentSize() + (spillStore == null ? 0 : spillStore.getResidentSize());
+    }
+
+    /**
+     * Returns snapshot of memory usage.
+     *
+     * @return memory usage
+     */
+    @Nonnull
+    public MemoryUsage getMemoryUsage() {
+        lock.readLock().lock();
+        try {
+            int memorySegmentsCount = 0;
+            long allocatedSize = 0;
+            long liveSize = 0;
+            Map<MemoryDataSource, Long> sourceHeapSizes = new HashMap<>();
+            for (Map.Entry<MemoryDataSource, DataSegmentsMap> entry : memorySources.entrySet()) {
+                MemoryDataSource memorySource = entry.getKey();
+                memorySegmentsCount += entry.getValue().recordsMap.size();
+                allocatedSize += memorySource.getDataSize();
+                liveSize += getLiveSize(entry.getValue());
+                sourceHeapSizes.put(memorySource, memorySource.getResidentSize());
+            }
+
+            int fileSegmentsCount = 0;
+            for (DataSegmentsMap segmentsMap : fileSources.values()) {
+                fileSegmentsCount += segmentsMap.recordsMap.size();
+            }
+
+            Map<DeltaDocument, Long> documentMemorySizes = new HashMap<>();
+            for (DeltaDocument document : documents) {
+                long documentMemorySize = 0;
+                for (DataSegment segment : document.getSegments()) {
+                    if (segment instanceof MemorySegment) {
+                        documentMemorySize += segment.getLength();
+                    }
                 }
+                documentMemorySizes.put(document, documentMemorySize);
+            }
+
+            long spilledSize = spillStore == null ? 0 : spillStore.getScratchFileSize();
+            return new MemoryUsage(memorySources.size(), memorySegmentsCount, fileSources.size(), fileSegmentsCount, allocatedSize, liveSize, getMemoryHeapSize(), spilledSize, sourceHeapSizes, documentMemorySizes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if storing of given count of bytes in memory fits into
+     * memory budget without compaction or spilling.
+     *
+     * Used by optional operations which are skipped instead of freeing
+     * memory.
+     *
+     * @param requiredSize count of bytes to store in memory
+     * @return true if within budget
+     */
+    /* package */ boolean isWithinMemoryBudget(long requiredSize) {
+        return memoryBudget == UNLIMITED_MEMORY_BUDGET || getMemoryHeapSize() + requiredSize <= memoryBudget;
+    }
+
+    /**
+     * Checks that storing of given count of bytes in memory fits into memory
+     * budget.
+     *
+     * Expects write lock to be held. If budget would be exceeded, memory
+     * sources are compacted, then pages are spilled if spill store is used
+     * and finally the request is rejected, depending on memory budget
+     * policy.
+     *
+     * @param requiredSize count of bytes to store in memory
+     * @throws MemoryBudgetExceededException if budget would be exceeded and
+     * policy rejects such request
+     */
+    /* package */ void checkMemoryBudget(long requiredSize) {
+        if (memoryBudget == UNLIMITED_MEMORY_BUDGET || getMemoryHeapSize() + requiredSize <= memoryBudget) {
+            return;
+        }
 
-                documentPosition += segmentLength;
+        // Repeated compaction is skipped until heap grows noticeably
+        if (compactedHeapSize < 0 || getMemoryHeapSize() > compactedHeapSize + memoryBudget / 16) {
+            compactMemorySources();
+            compactedHeapSize = getMemoryHeapSize();
+            if (compactedHeapSize + requiredSize <= memoryBudget) {
+                return;
+            }
+        }
+        if (memoryBudgetPolicy == MemoryBudgetPolicy.COMPACT) {
+            return;
+        }
+
+        if (spillStore != null) {
+            long targetSize = memoryBudget - requiredSize - memoryStore.getResidentSize();
+            spillStore.spillPages(targetSize < 0 ? 0 : targetSize);
+            if (getMemoryHeapSize() + requiredSize <= memoryBudget) {
+                return;
+            }
+        }
+        if (memoryBudgetPolicy == MemoryBudgetPolicy.SPILL) {
+            return;
+        }
+
+        throw new MemoryBudgetExceededException(requiredSize, memoryBudget);
+    }
+
+    /**
+     * Returns total size of data allocated by all memory sources.
+     *
+     * @return size in bytes
+     */
+    public long getMemoryAllocatedSize() {
+        lock.readLock().lock();
+        try {
+            long allocatedSize = 0;
+            for (MemoryDataSource memorySource : memorySources.keySet()) {
+                allocatedSize += memorySource.getDataSize();
+            }
+            return allocatedSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns total size of data of all memory sources referenced by at least
+     * one segment.
+     *
+     * Difference to allocated size can be released by compaction.
+     *
+     * @return size in bytes
+     */
+    public long getMemoryLiveSize() {
+        lock.readLock().lock();
+        try {
+            long liveSize = 0;
+            for (DataSegmentsMap segmentsMap : memorySources.values()) {
+                liveSize += getLiveSize(segmentsMap);
+            }
+            return liveSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long getLiveSize(@Nonnull DataSegmentsMap segmentsMap) {
+        long liveSize = 0;
+        long coveredEnd = 0;
+        SegmentRecord record = segmentsMap.records.first();
+        while (record != null) {
+            long startPosition = Math.max(record.getStartPosition(), coveredEnd);
+            if (record.getEndPosition() > startPosition) {
+                liveSize += record.getEndPosition() - startPosition;
+                coveredEnd = record.getEndPosition();
             }
+            record = record.getNext();
         }
+        return liveSize;
+    }
+
+    /**
+     * Compacts all memory sources.
+     *
+     * @return count of released bytes
+     * @see #compactMemorySource(org.exbin.bined.delta.MemoryDataSource)
+     */
+    public long compactMemorySources() {
+        lock.writeLock().lock();
+        try {
+            long releasedSize = 0;
+            for (MemoryDataSource memorySource : new ArrayList<>(memorySources.keySet())) {
+                releasedSize += compactMemorySource(memorySource);
+            }
+            return releasedSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes data of memory source which are not referenced by any segment
+     * and relocates remaining segments.
+     *
+     * Source without segments is closed. Source pinned by snapshot is not
+     * compacted.
+     *
+     * @param memorySource memory source
+     * @return count of released bytes
+     */
+    public long compactMemorySource(@Nonnull MemoryDataSource memorySource) {
+        lock.writeLock().lock();
+        try {
+            return performCompaction(memorySource);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long performCompaction(@Nonnull MemoryDataSource memorySource) {
+        DataSegmentsMap segmentsMap = memorySources.get(memorySource);
+        long sourceSize = memorySource.getDataSize();
+        if (segmentsMap.isEmpty()) {
+            closeMemorySource(memorySource);
+            return sourceSize;
+        }
+        if (isPinned(segmentsMap)) {
+            return 0;
+        }
+
+        // Records are ordered by start position so unreferenced gaps are
+        // found in single pass and each record is shifted by length of all
+        // gaps before it which keeps the order
+        long removedSize = 0;
+        long coveredEnd = 0;
+        SegmentRecord record = segmentsMap.records.first();
+        while (record != null) {
+            long startPosition = record.getStartPosition();
+            long endPosition = record.getEndPosition();
+            if (startPosition > coveredEnd) {
+                memorySource.remove(coveredEnd - removedSize, startPosition - coveredEnd);
+                removedSize += startPosition - coveredEnd;
+            }
+            if (removedSize > 0) {
+                segmentsMap.shiftRecord(record, -removedSize);
+            }
+            coveredEnd = Math.max(coveredEnd, endPosition);
+            record = record.getNext();
+        }
+
+        if (sourceSize > coveredEnd) {
+            memorySource.remove(coveredEnd - removedSize, sourceSize - coveredEnd);
+            removedSize += sourceSize - coveredEnd;
+        }
+
+        return removedSize;
     }
 
     /**
      * Mapping of segments to data source.
      *
-     * Segments are suppose to be kept ordered by start position and length with
-     * max position computed.
+     * Segments are suppose to be kept ordered by start position and length.
+     * Records are also indexed by balanced interval tree with maximum end
+     * position of each subtree, so that first overlapping record can be found
+     * in logarithmic time.
      */
     private class DataSegmentsMap {
 
         @Nonnull
         private final DefaultDoublyLinkedList<SegmentRecord> records = new DefaultDoublyLinkedList<>();
+        @Nonnull
+        private final Map<DataSegment, SegmentRecord> recordsMap = new HashMap<>();
         @Nullable
-        private SegmentRecord pointerRecord = null;
+        private SegmentRecord root = null;
+        @Nonnull
+        private final Random random = new Random();
+        /**
+         * Epoch when source started to be used by current segments.
+         */
+        private long epoch = currentEpoch;
 
         public DataSegmentsMap() {
         }
 
         private void add(@Nonnull DataSegment segment) {
-            focusSegment(segment.getStartPosition(), segment.getLength());
             SegmentRecord record = new SegmentRecord();
             record.dataSegment = segment;
+            record.priority = random.nextInt();
             addRecord(record);
         }
 
         /**
-         * Adds record after pointer record.
+         * Adds record after last record with lower or equal start position and
+         * length.
          *
          * @param record record
          */
         private void addRecord(@Nonnull SegmentRecord record) {
-            long startPosition = record.dataSegment.getStartPosition();
-            long length = record.getLength();
-            long maxPosition = startPosition + length;
-            if (pointerRecord == null) {
-                record.maxPosition = maxPosition;
+            SegmentRecord prevRecord = findLastRecord(record.getStartPosition(), record.getLength());
+            if (prevRecord == null) {
                 records.add(0, record);
-                SegmentRecord nextRecord = record.next;
-                while (nextRecord != null && nextRecord.maxPosition < maxPosition) {
-                    nextRecord.maxPosition = maxPosition;
-                    nextRecord = records.nextTo(nextRecord);
+            } else {
+                records.addAfter(prevRecord, record);
+            }
+            recordsMap.put(record.dataSegment, record);
+
+            record.maxPosition = record.getEndPosition();
+            if (root == null) {
+                root = record;
+                return;
+            }
+
+            if (prevRecord == null) {
+                SegmentRecord parent = root;
+                while (parent.left != null) {
+                    parent = parent.left;
                 }
+                parent.left = record;
+                record.parent = parent;
+            } else if (prevRecord.right == null) {
+                prevRecord.right = record;
+                record.parent = prevRecord;
             } else {
-                if (pointerRecord.maxPosition > maxPosition) {
-                    maxPosition = pointerRecord.maxPosition;
-                } else {
-                    SegmentRecord nextRecord = pointerRecord.next;
-                    while (nextRecord != null && maxPosition > nextRecord.maxPosition) {
-                        nextRecord.maxPosition = maxPosition;
-                        nextRecord = records.nextTo(nextRecord);
-                    }
+                SegmentRecord parent = prevRecord.right;
+                while (parent.left != null) {
+                    parent = parent.left;
                 }
-                record.maxPosition = maxPosition;
-                records.addAfter(pointerRecord, record);
+                parent.left = record;
+                record.parent = parent;
+            }
+
+            updateMaxPositions(record.parent);
+            while (record.parent != null && record.parent.priority < record.priority) {
+                rotateUp(record);
             }
         }
 
         private void remove(@Nonnull DataSegment segment) {
             SegmentRecord record = findRecord(segment);
 
-            if (record.dataSegment == segment) {
+            if (record != null) {
                 removeRecord(record);
             } else {
                 throw new IllegalStateException("Segment requested for removal was not found");
@@ -907,35 +2054,36 @@ public class SegmentsRepository {
         }
 
         private void removeRecord(@Nonnull SegmentRecord record) {
-            SegmentRecord prevRecord = records.prevTo(record);
-            SegmentRecord nextRecord = records.nextTo(record);
-            long recordEndPosition = record.getStartPosition() + record.getLength();
             records.remove(record);
-            pointerRecord = prevRecord;
-            long prevMaxPosition = 0;
-            if (prevRecord != null) {
-                prevMaxPosition = prevRecord.maxPosition;
+            recordsMap.remove(record.dataSegment);
+
+            while (record.left != null && record.right != null) {
+                rotateUp(record.left.priority > record.right.priority ? record.left : record.right);
             }
 
-            // Update maxPosition cached values
-            if (nextRecord != null && prevMaxPosition < recordEndPosition) {
-                long maxPosition = nextRecord.getStartPosition() + nextRecord.getLength();
-                if (prevMaxPosition > maxPosition) {
-                    maxPosition = prevMaxPosition;
+            SegmentRecord child = record.left != null ? record.left : record.right;
+            SegmentRecord parent = record.parent;
+            if (child != null) {
+                child.parent = parent;
+            }
+            if (parent == null) {
+                root = child;
+            } else {
+                if (parent.left == record) {
+                    parent.left = child;
+                } else {
+                    parent.right = child;
                 }
+                updateMaxPositions(parent);
+            }
 
-                while (nextRecord != null && maxPosition < nextRecord.maxPosition) {
-                    nextRecord.maxPosition = maxPosition;
-                    nextRecord = records.nextTo(nextRecord);
+            record.parent = null;
+            record.left = null;
+            record.right = null;
+        }
 
-                    if (nextRecord != null) {
-                        long nextMaxPosition = nextRecord.getStartPosition() + nextRecord.getLength();
-                        if (nextMaxPosition > maxPosition) {
-                            maxPosition = nextMaxPosition;
-                        }
-                    }
-                }
-            }
+        private boolean isEmpty() {
+            return records.first() == null;
         }
 
         private boolean hasMoreSegments() {
@@ -943,9 +2091,8 @@ public class SegmentsRepository {
         }
 
         private void updateSegment(@Nonnull DataSegment segment, long position, long length) {
-            // TODO optimalization - update only affected records without removing current record
             SegmentRecord record = findRecord(segment);
-            if (record.dataSegment == segment) {
+            if (record != null) {
                 removeRecord(record);
                 if (segment instanceof MemorySegment) {
                     ((MemorySegment) segment).setStartPosition(position);
@@ -954,7 +2101,6 @@ public class SegmentsRepository {
                     ((FileSegment) segment).setStartPosition(position);
                     ((FileSegment) segment).setLength(length);
                 }
-                focusSegment(segment.getStartPosition(), segment.getLength());
                 addRecord(record);
             } else {
                 throw new IllegalStateException("Segment requested for update was not found");
@@ -962,132 +2108,136 @@ public class SegmentsRepository {
         }
 
         private void updateSegmentLength(@Nonnull DataSegment segment, long length) {
-            // TODO optimalization - update only affected records without removing current record
             SegmentRecord record = findRecord(segment);
-            if (record.dataSegment == segment) {
+            if (record != null) {
                 removeRecord(record);
                 if (segment instanceof MemorySegment) {
                     ((MemorySegment) segment).setLength(length);
                 } else {
                     ((FileSegment) segment).setLength(length);
                 }
-                focusSegment(segment.getStartPosition(), segment.getLength());
                 addRecord(record);
             } else {
                 throw new IllegalStateException("Segment requested for update was not found");
             }
         }
 
+        /**
+         * Shifts start position of given record and updates cached maximum
+         * positions.
+         *
+         * Shift must not change order of the records.
+         *
+         * @param record record
+         * @param shift shift
+         */
+        private void shiftRecord(@Nonnull SegmentRecord record, long shift) {
+            MemorySegment segment = (MemorySegment) record.dataSegment;
+            segment.setStartPosition(segment.getStartPosition() + shift);
+            updateMaxPositions(record);
+        }
+
         @Nullable
         private SegmentRecord findRecord(@Nonnull DataSegment segment) {
-            focusSegment(segment.getStartPosition(), segment.getLength());
-            SegmentRecord record = pointerRecord;
-            if (record == null) {
-                return null;
-            }
-
-            while (record != null && record.dataSegment != segment
-                    && record.getStartPosition() == segment.getStartPosition()
-                    && record.getLength() == segment.getLength()) {
-                record = records.prevTo(record);
-            }
-
-            return record;
+            return recordsMap.get(segment);
         }
 
         /**
-         * Aligns focus pointer on last segment at given start position and
-         * length or last segment before given position or null if there is no
-         * such segment.
+         * Returns last record with lower or equal start position and length.
          *
          * @param startPosition start position
          * @param length length
+         * @return segment record or null
          */
-        private void focusSegment(long startPosition, long length) {
-            if (pointerRecord == null) {
-                pointerRecord = records.first();
-            }
-
-            if (pointerRecord == null) {
-                return;
-            }
-
-            if (pointerRecord.getStartPosition() < startPosition
-                    || (pointerRecord.getStartPosition() == startPosition && pointerRecord.getLength() <= length)) {
-                // Forward direction traversal
-                SegmentRecord record;
-                do {
-                    record = records.nextTo(pointerRecord);
-                    if (record != null) {
-                        if (record.getStartPosition() < startPosition
-                                || (record.getStartPosition() == startPosition && record.getLength() <= length)) {
-                            pointerRecord = record;
-                        } else {
-                            break;
-                        }
-                    }
-                } while (record != null);
-            } else {
-                // Backward direction traversal
-                while (pointerRecord.getStartPosition() > startPosition
-                        || (pointerRecord.getStartPosition() == startPosition && pointerRecord.getLength() > length)) {
-                    pointerRecord = records.prevTo(pointerRecord);
-                    if (pointerRecord == null) {
-                        break;
-                    }
+        @Nullable
+        private SegmentRecord findLastRecord(long startPosition, long length) {
+            SegmentRecord result = null;
+            SegmentRecord record = root;
+            while (record != null) {
+                if (record.getStartPosition() < startPosition
+                        || (record.getStartPosition() == startPosition && record.getLength() <= length)) {
+                    result = record;
+                    record = record.right;
+                } else {
+                    record = record.left;
                 }
             }
+
+            return result;
         }
 
         /**
          * Returns first segment record which overlays given area.
          *
+         * Returned record is the first record ending at or after given start
+         * position. Following records has to be checked for actual overlap.
+         *
          * @param startPosition start position
          * @param length length
          * @return segment record or null
          */
         @Nullable
         private SegmentRecord focusFirstOverlay(long startPosition, long length) {
-            if (pointerRecord == null) {
-                pointerRecord = records.first();
+            SegmentRecord record = root;
+            while (record != null) {
+                if (record.left != null && record.left.maxPosition >= startPosition) {
+                    record = record.left;
+                } else if (record.getEndPosition() >= startPosition) {
+                    return record.getStartPosition() < startPosition + length ? record : null;
+                } else {
+                    record = record.right;
+                }
             }
 
-            if (pointerRecord == null) {
-                return null;
-            }
+            return null;
+        }
 
-            long endPosition = startPosition + length;
-            if (pointerRecord.maxPosition < startPosition) {
-                // Forward direction traversal
-                while (pointerRecord != null) {
-                    SegmentRecord nextRecord = records.nextTo(pointerRecord);
-                    if (nextRecord != null && nextRecord.maxPosition < startPosition) {
-                        pointerRecord = nextRecord;
-                    } else {
-                        if (pointerRecord.getStartPosition() < endPosition) {
-                            return pointerRecord;
-                        }
+        /**
+         * Recomputes cached maximum positions from given record up to the
+         * root.
+         *
+         * @param record record
+         */
+        private void updateMaxPositions(@Nullable SegmentRecord record) {
+            while (record != null) {
+                record.updateMaxPosition();
+                record = record.parent;
+            }
+        }
 
-                        break;
-                    }
+        /**
+         * Rotates given record one level up in the tree.
+         *
+         * @param record record
+         */
+        private void rotateUp(@Nonnull SegmentRecord record) {
+            SegmentRecord parent = record.parent;
+            SegmentRecord grandParent = parent.parent;
+            if (parent.left == record) {
+                parent.left = record.right;
+                if (record.right != null) {
+                    record.right.parent = parent;
                 }
+                record.right = parent;
             } else {
-                // Backward direction traversal
-                while (pointerRecord != null) {
-                    SegmentRecord nextRecord = records.prevTo(pointerRecord);
-                    if (nextRecord != null && nextRecord.maxPosition >= startPosition) {
-                        pointerRecord = nextRecord;
-                    } else {
-                        if (pointerRecord.getStartPosition() < endPosition) {
-                            return pointerRecord;
-                        }
-
-                        break;
-                    }
+                parent.right = record.left;
+                if (record.left != null) {
+                    record.left.parent = parent;
                 }
+                record.left = parent;
+            }
+            parent.parent = record;
+            record.parent = grandParent;
+            if (grandParent == null) {
+                root = record;
+            } else if (grandParent.left == parent) {
+                grandParent.left = record;
+            } else {
+                grandParent.right = record;
             }
 
-            return null;
+            parent.updateMaxPosition();
+            record.updateMaxPosition();
         }
     }
 
@@ -1103,7 +2253,18 @@ public class SegmentsRepository {
 
         @Nonnull
         DataSegment dataSegment;
+
+        /**
+         * Maximum end position of all records in the subtree.
+         */
         long maxPosition;
+        int priority;
+        @Nullable
+        SegmentRecord parent = null;
+        @Nullable
+        SegmentRecord left = null;
+        @Nullable
+        SegmentRecord right = null;
 
         @Nullable
         @Override
@@ -1119,6 +2280,21 @@ public class SegmentsRepository {
             return dataSegment.getLength();
         }
 
+        public long getEndPosition() {
+            return dataSegment.getStartPosition() + dataSegment.getLength();
+        }
+
+        void updateMaxPosition() {
+            long position = getEndPosition();
+            if (left != null && left.maxPosition > position) {
+                position = left.maxPosition;
+            }
+            if (right != null && right.maxPosition > position) {
+                position = right.maxPosition;
+            }
+            maxPosition = position;
+        }
+
         @Override
         public void setNext(@Nullable SegmentRecord next) {
             this.next = next;
@@ -1136,14 +2312,411 @@ public class SegmentsRepository {
         }
     }
 
-    private static final class DataArea {
+    /**
+     * Source kept for snapshots after it was closed or replaced by copy.
+     */
+    private static final class RetiredSource {
+
+        @Nonnull
+        final Object source;
+        /**
+         * Epoch when source started to be used by segments.
+         */
+        final long epoch;
+        /**
+         * Last epoch when source was used by segments.
+         */
+        final long retiredEpoch;
+
+        RetiredSource(@Nonnull Object source, long epoch, long retiredEpoch) {
+            this.source = source;
+            this.epoch = epoch;
+            this.retiredEpoch = retiredEpoch;
+        }
+    }
+
+    /**
+     * Data transfers of the save planned when the save started.
+     *
+     * Plan doesn't reference segments, so that documents can be modified
+     * while the data are written.
+     */
+    private static final class SavePlan {
+
+        @Nonnull
+        final FileDataSource fileSource;
+        /**
+         * Transfers of all sections of the saved document in document order.
+         */
+        @Nonnull
+        final List<SaveOperation> operations;
+        /**
+         * Sections of the saved file kept by the save by original position.
+         *
+         * Sections don't overlap.
+         */
+        @Nonnull
+        final TreeMap<Long, KeptSection> keptSections = new TreeMap<>();
+        final long dataSize;
+        /**
+         * Epoch pinning sources read by the save.
+         */
+        final long epoch;
+        /**
+         * Shared root of segments index of the saved document.
+         */
+        @Nullable
+        final IndexedSegmentsList.TreeNode savedRoot;
+
+        SavePlan(@Nonnull FileDataSource fileSource, @Nonnull List<SaveOperation> operations, long dataSize, long epoch, @Nullable IndexedSegmentsList.TreeNode savedRoot) {
+            this.fileSource = fileSource;
+            this.operations = operations;
+            this.dataSize = dataSize;
+            this.epoch = epoch;
+            this.savedRoot = savedRoot;
+
+            List<SaveOperation> fileOperations = new ArrayList<>();
+            for (SaveOperation operation : operations) {
+                if (operation.fileSource == fileSource) {
+                    fileOperations.add(operation);
+                }
+            }
+            Collections.sort(fileOperations, new Comparator<SaveOperation>() {
+                @Override
+                public int compare(SaveOperation first, SaveOperation second) {
+                    return Long.compare(first.sourcePosition, second.sourcePosition);
+                }
+            });
+
+            // Section used multiple times is kept on it's first position
+            long coveredEnd = 0;
+            for (SaveOperation operation : fileOperations) {
+                long startPosition = Math.max(operation.sourcePosition, coveredEnd);
+                long endPosition = operation.sourcePosition + operation.length;
+                if (endPosition > startPosition) {
+                    keptSections.put(startPosition, new KeptSection(startPosition, operation.targetPosition + startPosition - operation.sourcePosition, endPosition - startPosition));
+                    coveredEnd = endPosition;
+                }
+            }
+        }
+
+        /**
+         * Returns length of data which has to be written to the saved file.
+         *
+         * @return length in bytes
+         */
+        long getMovedLength() {
+            long movedLength = 0;
+            for (SaveOperation operation : operations) {
+                if (operation.fileSource != fileSource || operation.sourcePosition != operation.targetPosition) {
+                    movedLength += operation.length;
+                }
+            }
+
+            return movedLength;
+        }
+
+        boolean usesSource(@Nonnull FileDataSource source) {
+            if (source == fileSource) {
+                return true;
+            }
+
+            for (SaveOperation operation : operations) {
+                if (operation.fileSource == source) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Single data transfer of the save plan.
+     */
+    private static final class SaveOperation {
+
+        @Nullable
+        final MemoryDataSource memorySource;
+        @Nullable
+        final FileDataSource fileSource;
+        final byte fillValue;
+        final long sourcePosition;
+        final long targetPosition;
+        final long length;
+        /**
+         * Index of the operation in pending sources index.
+         */
+        int sourceIndex;
+        /**
+         * Position of source data copied to scratch file to resolve cyclic
+         * dependency or -1.
+         */
+        long scratchPosition = -1;
+        /**
+         * True if file section was not moved yet.
+         */
+        boolean pending = true;
+
+        SaveOperation(@Nonnull DataSegment segment, long targetPosition) {
+            if (segment instanceof MemorySegment) {
+                memorySource = ((MemorySegment) segment).getSource();
+                fileSource = null;
+                fillValue = 0;
+            } else if (segment instanceof FillSegment) {
+                memorySource = null;
+                fileSource = null;
+                fillValue = ((FillSegment) segment).getFillValue();
+            } else {
+                memorySource = null;
+                fileSource = ((FileSegment) segment).getSource();
+                fillValue = 0;
+            }
+            sourcePosition = segment.getStartPosition();
+            this.targetPosition = targetPosition;
+            length = segment.getLength();
+        }
+    }
+
+    /**
+     * Section of the saved file kept by the save on new position.
+     */
+    private static final class KeptSection {
+
+        final long position;
+        final long targetPosition;
+        final long length;
+
+        KeptSection(long position, long targetPosition, long length) {
+            this.position = position;
+            this.targetPosition = targetPosition;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Section of the document to be replaced after save.
+     */
+    private static final class DocumentSection {
 
-        long startFrom;
-        long length;
+        final long documentPosition;
+        final long length;
+        /**
+         * Position in the saved file, original for loaded section or new for
+         * moved section.
+         */
+        final long filePosition;
 
-        public DataArea(long startFrom, long length) {
-            this.startFrom = startFrom;
+        DocumentSection(long documentPosition, long length, long filePosition) {
+            this.documentPosition = documentPosition;
             this.length = length;
+            this.filePosition = filePosition;
+        }
+    }
+
+    /**
+     * Index of source sections of the saved file which were not moved yet.
+     *
+     * Sections are sorted by start position with maximum end position kept in
+     * segment tree. Target sections don't overlap and are kept sorted by
+     * position to find operations waiting for given source section.
+     */
+    private static final class PendingSourcesIndex {
+
+        private final int size;
+        @Nonnull
+        private final long[] startPositions;
+        @Nonnull
+        private final long[] maxPositions;
+        @Nonnull
+        private final SaveOperation[] targets;
+
+        PendingSourcesIndex(@Nonnull List<SaveOperation> operations) {
+            size = operations.size();
+            List<SaveOperation> sorted = new ArrayList<>(operations);
+            Collections.sort(sorted, new Comparator<SaveOperation>() {
+                @Override
+                public int compare(SaveOperation first, SaveOperation second) {
+                    return Long.compare(first.sourcePosition, second.sourcePosition);
+                }
+            });
+
+            startPositions = new long[size];
+            maxPositions = new long[size * 2];
+            for (int i = 0; i < size; i++) {
+                SaveOperation operation = sorted.get(i);
+                operation.sourceIndex = i;
+                startPositions[i] = operation.sourcePosition;
+                maxPositions[size + i] = startPositions[i] + operation.length;
+            }
+            for (int i = size - 1; i > 0; i--) {
+                maxPositions[i] = Math.max(maxPositions[i * 2], maxPositions[i * 2 + 1]);
+            }
+
+            targets = operations.toArray(new SaveOperation[size]);
+            Arrays.sort(targets, new Comparator<SaveOperation>() {
+                @Override
+                public int compare(SaveOperation first, SaveOperation second) {
+                    return Long.compare(first.targetPosition, second.targetPosition);
+                }
+            });
+        }
+
+        /**
+         * Adds pending operations with target section overlapping source
+         * section of given operation.
+         *
+         * @param operation processed operation
+         * @param waiting collection to add operations to
+         */
+        void collectWaitingOn(@Nonnull SaveOperation operation, @Nonnull Collection<SaveOperation> waiting) {
+            long sourceEnd = operation.sourcePosition + operation.length;
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (targets[middle].targetPosition < sourceEnd) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            for (int index = low - 1; index >= 0; index--) {
+                SaveOperation target = targets[index];
+                if (target.targetPosition + target.length <= operation.sourcePosition) {
+                    break;
+                }
+                if (target.pending) {
+                    waiting.add(target);
+                }
+            }
+        }
+
+        void remove(@Nonnull SaveOperation operation) {
+            setEndPosition(operation.sourceIndex, Long.MIN_VALUE);
+        }
+
+        /**
+         * Returns true if target section of given operation overlaps source
+         * section of other pending operation.
+         *
+         * @param operation save operation
+         * @return true if operation has to wait
+         */
+        boolean isTargetBlocked(@Nonnull SaveOperation operation) {
+            long targetEnd = operation.targetPosition + operation.length;
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (startPositions[middle] < targetEnd) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            long endPosition = maxPositions[size + operation.sourceIndex];
+            setEndPosition(operation.sourceIndex, Long.MIN_VALUE);
+            long maxPosition = Long.MIN_VALUE;
+            for (int from = size, to = size + low; from < to; from >>= 1, to >>= 1) {
+                if ((from & 1) == 1) {
+                    maxPosition = Math.max(maxPosition, maxPositions[from++]);
+                }
+                if ((to & 1) == 1) {
+                    maxPosition = Math.max(maxPosition, maxPositions[--to]);
+                }
+            }
+            setEndPosition(operation.sourceIndex, endPosition);
+
+            return maxPosition > operation.targetPosition;
+        }
+
+        private void setEndPosition(int index, long endPosition) {
+            int node = size + index;
+            maxPositions[node] = endPosition;
+            for (node >>= 1; node > 0; node >>= 1) {
+                maxPositions[node] = Math.max(maxPositions[node * 2], maxPositions[node * 2 + 1]);
+            }
+        }
+    }
+
+    /**
+     * Tracking of save progress.
+     */
+    private static final class SaveProgress {
+
+        private final long totalLength;
+        @Nullable
+        private final SaveProgressListener listener;
+        @Nullable
+        private final DeltaDocumentSaveTask cancellableTask;
+        private long processedLength = 0;
+
+        /**
+         * Creates save progress.
+         *
+         * @param totalLength total length of data to write
+         * @param listener progress listener or null
+         * @param cancellableTask save task to check for cancellation or null
+         * if writing cannot be cancelled
+         */
+        SaveProgress(long totalLength, @Nullable SaveProgressListener listener, @Nullable DeltaDocumentSaveTask cancellableTask) {
+            this.totalLength = totalLength;
+            this.listener = listener;
+            this.cancellableTask = cancellableTask;
+        }
+
+        void processed(long length) {
+            processedLength += length;
+            if (listener != null) {
+                listener.progress(processedLength, totalLength);
+            }
+            if (cancellableTask != null && cancellableTask.isCancelled()) {
+                throw new CancellationException("Save was cancelled");
+            }
         }
     }
+
+    /**
+     * Strategy for saving document to it's source file.
+     */
+    public static enum SaveStrategy {
+        /**
+         * Only changed sections are written to the saved file.
+         */
+        IN_PLACE,
+        /**
+         * Whole document is written to temporary file which then replaces
+         * the saved file.
+         */
+        TEMPORARY_FILE,
+        /**
+         * Temporary file is used when large part of the document has to be
+         * moved.
+         */
+        AUTOMATIC
+    }
+
+    /**
+     * Handling of modifications which would exceed memory budget.
+     *
+     * Each policy performs steps of the preceding ones first.
+     */
+    public static enum MemoryBudgetPolicy {
+        /**
+         * Memory sources are compacted, budget can be exceeded.
+         */
+        COMPACT,
+        /**
+         * Pages of spill store are spilled to the scratch file, budget can be
+         * exceeded if spill store is not used.
+         */
+        SPILL,
+        /**
+         * Modification is rejected with MemoryBudgetExceededException.
+         */
+        REJECT
+    }
 }
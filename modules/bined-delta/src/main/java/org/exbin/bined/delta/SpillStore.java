@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Store of data pages with limited count of pages kept in memory.
+ *
+ * Least recently used pages over the limit are spilled to the scratch file,
+ * which is created on first spill and deleted when store is closed. Single
+ * store is shared by all memory sources of the segments repository.
+ *
+ * Pages are reference counted so that they can be shared by multiple data
+ * and copied only when modified.
+ *
+ * Store is thread safe, pages can be loaded from multiple threads.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SpillStore implements Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_RESIDENT_PAGES = 1024;
+    /**
+     * Pages are never spilled and resident pages are not tracked.
+     */
+    public static final int UNLIMITED_RESIDENT_PAGES = Integer.MAX_VALUE;
+
+    private final int pageSize;
+    private final int maxResidentPages;
+    @Nonnull
+    private final Map<Page, Page> residentPages = new LinkedHashMap<>(16, 0.75f, true);
+    @Nonnull
+    private final Deque<Long> freeSlots = new ArrayDeque<>();
+    private long slotsCount = 0;
+    private long residentSize = 0;
+
+    @Nullable
+    private File scratchFile = null;
+    @Nullable
+    private RandomAccessFile scratchAccessFile = null;
+    private boolean closed = false;
+
+    @Nonnull
+    private final Statistics statistics = new Statistics();
+
+    public SpillStore() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_RESIDENT_PAGES);
+    }
+
+    /**
+     * Creates spill store.
+     *
+     * @param pageSize maximum size of single page in bytes
+     * @param maxResidentPages maximum count of pages kept in memory
+     */
+    public SpillStore(int pageSize, int maxResidentPages) {
+        if (pageSize <= 0 || maxResidentPages <= 0) {
+            throw new IllegalArgumentException("Page size and resident pages count must be positive");
+        }
+
+        this.pageSize = pageSize;
+        this.maxResidentPages = maxResidentPages;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getMaxResidentPages() {
+        return maxResidentPages;
+    }
+
+    public synchronized int getResidentPagesCount() {
+        return residentPages.size();
+    }
+
+    @Nonnull
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Creates new empty resident page.
+     *
+     * @param capacity initial capacity of the page up to the page size
+     * @return page
+     */
+    @Nonnull
+    /* package */ synchronized Page createPage(int capacity) {
+        checkClosed();
+        Page page = new Page(new byte[capacity]);
+        page.dirty = true;
+        residentSize += capacity;
+        if (maxResidentPages != UNLIMITED_RESIDENT_PAGES) {
+            residentPages.put(page, page);
+            evictPages();
+        }
+        return page;
+    }
+
+    /**
+     * Adds reference to shared page.
+     *
+     * @param page page
+     * @return page
+     */
+    @Nonnull
+    /* package */ synchronized Page share(@Nonnull Page page) {
+        page.references++;
+        return page;
+    }
+
+    /**
+     * Returns private copy of the shared page and drops reference to the
+     * original page.
+     *
+     * @param page shared page
+     * @return new page with the same content
+     */
+    @Nonnull
+    /* package */ synchronized Page copyPage(@Nonnull Page page) {
+        byte[] data = load(page);
+        Page copy = createPage(page.length);
+        System.arraycopy(data, 0, copy.data, 0, page.length);
+        copy.length = page.length;
+        page.references--;
+        statistics.copiedPages++;
+        return copy;
+    }
+
+    /**
+     * Returns content of the page loading it from scratch file if needed.
+     *
+     * @param page page
+     * @return page content
+     */
+    @Nonnull
+    /* package */ synchronized byte[] load(@Nonnull Page page) {
+        byte[] data = page.data;
+        if (data != null) {
+            if (maxResidentPages != UNLIMITED_RESIDENT_PAGES) {
+                residentPages.get(page);
+            }
+            return data;
+        }
+
+        checkClosed();
+        data = new byte[page.length];
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, page.length);
+            FileChannel channel = scratchAccessFile.getChannel();
+            long position = page.slot * pageSize;
+            while (buffer.hasRemaining()) {
+                int count = channel.read(buffer, position);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of scratch file");
+                }
+                position += count;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to load spilled page", ex);
+        }
+        statistics.loadedPages++;
+
+        page.data = data;
+        page.dirty = false;
+        residentSize += data.length;
+        residentPages.put(page, page);
+        evictPages();
+        return data;
+    }
+
+    /**
+     * Marks page content as modified.
+     *
+     * Page has to be resident.
+     *
+     * @param page page
+     * @return page content
+     */
+    @Nonnull
+    /* package */ synchronized byte[] modify(@Nonnull Page page) {
+        byte[] data = load(page);
+        page.dirty = true;
+        return data;
+    }
+
+    /**
+     * Marks page content as modified and grows its capacity to at least given
+     * size.
+     *
+     * Capacity grows at least twice, up to the page size.
+     *
+     * @param page page
+     * @param capacity required capacity up to the page size
+     * @return page content
+     */
+    @Nonnull
+    /* package */ synchronized byte[] modify(@Nonnull Page page, int capacity) {
+        byte[] data = modify(page);
+        if (data.length < capacity) {
+            byte[] grownData = Arrays.copyOf(data, Math.min(pageSize, Math.max(capacity, data.length * 2)));
+            residentSize += grownData.length - data.length;
+            page.data = grownData;
+            data = grownData;
+        }
+        return data;
+    }
+
+    /**
+     * Drops reference to the page and releases page and it's slot in scratch
+     * file if it was the last reference.
+     *
+     * @param page page
+     */
+    /* package */ synchronized void release(@Nonnull Page page) {
+        if (--page.references > 0) {
+            return;
+        }
+
+        residentPages.remove(page);
+        if (page.data != null) {
+            residentSize -= page.data.length;
+            page.data = null;
+        }
+        if (page.slot >= 0) {
+            freeSlots.push(page.slot);
+            page.slot = -1;
+        }
+    }
+
+    private void evictPages() {
+        Iterator<Page> iterator = residentPages.keySet().iterator();
+        while (residentPages.size() > maxResidentPages && iterator.hasNext()) {
+            evict(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Spills least recently used pages until size of resident pages drops to
+     * given size.
+     *
+     * Store with unlimited resident pages doesn't spill.
+     *
+     * @param targetResidentSize target size of resident pages in bytes
+     * @return size of released pages in bytes
+     */
+    public synchronized long spillPages(long targetResidentSize) {
+        if (maxResidentPages == UNLIMITED_RESIDENT_PAGES) {
+            return 0;
+        }
+
+        checkClosed();
+        long originalSize = residentSize;
+        Iterator<Page> iterator = residentPages.keySet().iterator();
+        while (residentSize > targetResidentSize && iterator.hasNext()) {
+            evict(iterator.next());
+            iterator.remove();
+        }
+        return originalSize - residentSize;
+    }
+
+    private void evict(@Nonnull Page page) {
+        if (page.dirty || page.slot < 0) {
+            spill(page);
+        }
+        residentSize -= page.data.length;
+        page.data = null;
+    }
+
+    private void spill(@Nonnull Page page) {
+        try {
+            if (page.slot < 0) {
+                page.slot = allocateSlot();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(page.data, 0, page.length);
+            FileChannel channel = scratchAccessFile.getChannel();
+            long position = page.slot * pageSize;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to spill page", ex);
+        }
+        page.dirty = false;
+        statistics.spilledPages++;
+    }
+
+    private long allocateSlot() throws IOException {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.pop();
+        }
+
+        if (scratchAccessFile == null) {
+            scratchFile = File.createTempFile("bined-spill", ".tmp");
+            scratchFile.deleteOnExit();
+            scratchAccessFile = new RandomAccessFile(scratchFile, "rw");
+        }
+        return slotsCount++;
+    }
+
+    /**
+     * Returns size of all pages held in memory.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getResidentSize() {
+        return residentSize;
+    }
+
+    /**
+     * Returns size of given pages held in memory.
+     *
+     * @param pages pages
+     * @return size in bytes
+     */
+    /* package */ synchronized long getResidentSize(@Nonnull Iterable<Page> pages) {
+        long size = 0;
+        for (Page page : pages) {
+            if (page.data != null) {
+                size += page.data.length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns size of the scratch file in bytes.
+     *
+     * @return size of scratch file
+     */
+    public synchronized long getScratchFileSize() {
+        return slotsCount * pageSize;
+    }
+
+    /**
+     * Closes store and deletes scratch file.
+     *
+     * Data using this store cannot be accessed after close.
+     *
+     * @throws IOException if input/output error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        residentPages.clear();
+        residentSize = 0;
+        freeSlots.clear();
+        if (scratchAccessFile != null) {
+            scratchAccessFile.close();
+            scratchFile.delete();
+            scratchAccessFile = null;
+            scratchFile = null;
+        }
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("Spill store was closed");
+        }
+    }
+
+    /**
+     * Statistics of spill store usage.
+     */
+    public static class Statistics {
+
+        private long spilledPages;
+        private long loadedPages;
+        private long copiedPages;
+
+        public long getSpilledPages() {
+            return spilledPages;
+        }
+
+        public long getLoadedPages() {
+            return loadedPages;
+        }
+
+        /**
+         * Returns count of shared pages copied on modification.
+         *
+         * @return count of pages
+         */
+        public long getCopiedPages() {
+            return copiedPages;
+        }
+
+        public void reset() {
+            spilledPages = 0;
+            loadedPages = 0;
+            copiedPages = 0;
+        }
+    }
+
+    /**
+     * Page of data either resident in memory or stored in scratch file slot.
+     */
+    /* package */ static class Page {
+
+        @Nullable
+        byte[] data;
+        int length = 0;
+        long slot = -1;
+        boolean dirty = false;
+        int references = 1;
+
+        Page(@Nonnull byte[] data) {
+            this.data = data;
+        }
+    }
+}
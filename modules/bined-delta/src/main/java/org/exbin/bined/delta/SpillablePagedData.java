@@ -0,0 +1,671 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.delta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.exbin.utils.binary_data.BinaryData;
+import org.exbin.utils.binary_data.EditableBinaryData;
+import org.exbin.utils.binary_data.OutOfBoundsException;
+
+/**
+ * Editable binary data stored in pages of spill store.
+ *
+ * Pages have variable length up to the page size of the store, so insertion
+ * and removal only modify pages at the given position. Memory of the page
+ * grows with it's length, so that small data don't occupy whole page.
+ *
+ * Page content obtained from the store is valid only until another page is
+ * loaded or created, as that might spill it.
+ *
+ * Copy of the data from the same store shares whole pages, which are copied
+ * only when modified.
+ *
+ * Data can be read by multiple threads concurrently, modifications have to be
+ * exclusive.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class SpillablePagedData implements EditableBinaryData {
+
+    @Nonnull
+    private final SpillStore store;
+    private final int pageSize;
+    @Nonnull
+    private final List<SpillStore.Page> pages = new ArrayList<>();
+    private long dataSize = 0;
+
+    /**
+     * Start positions of the pages, valid only if pageStartsValid is set.
+     */
+    @Nonnull
+    private long[] pageStarts = new long[0];
+    private volatile boolean pageStartsValid = true;
+
+    public SpillablePagedData(@Nonnull SpillStore store) {
+        this.store = store;
+        pageSize = store.getPageSize();
+    }
+
+    @Nonnull
+    public SpillStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns count of pages.
+     *
+     * @return count of pages
+     */
+    public int getPagesCount() {
+        return pages.size();
+    }
+
+    /**
+     * Returns size of pages of this data held in memory.
+     *
+     * Pages shared with other data are included.
+     *
+     * @return size in bytes
+     */
+    public long getResidentSize() {
+        return store.getResidentSize(pages);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return dataSize == 0;
+    }
+
+    @Override
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    @Override
+    public byte getByte(long position) {
+        checkRange(position, 1);
+        int pageIndex = findPage(position);
+        return store.load(pages.get(pageIndex))[(int) (position - pageStarts[pageIndex])];
+    }
+
+    @Override
+    public void setByte(long position, byte value) {
+        checkRange(position, 1);
+        int pageIndex = findPage(position);
+        store.modify(exclusivePage(pageIndex))[(int) (position - pageStarts[pageIndex])] = value;
+    }
+
+    @Override
+    public void copyToArray(long startFrom, @Nonnull byte[] target, int offset, int length) {
+        checkRange(startFrom, length);
+        if (length == 0) {
+            return;
+        }
+
+        int pageIndex = findPage(startFrom);
+        int pageOffset = (int) (startFrom - pageStarts[pageIndex]);
+        while (length > 0) {
+            SpillStore.Page page = pages.get(pageIndex);
+            int copyLength = Math.min(page.length - pageOffset, length);
+            System.arraycopy(store.load(page), pageOffset, target, offset, copyLength);
+            offset += copyLength;
+            length -= copyLength;
+            pageIndex++;
+            pageOffset = 0;
+        }
+    }
+
+    @Override
+    public void insertUninitialized(long startFrom, long length) {
+        makeSpace(startFrom, length);
+    }
+
+    @Override
+    public void insert(long startFrom, long length) {
+        makeSpace(startFrom, length);
+        fillData(startFrom, length, (byte) 0);
+    }
+
+    @Override
+    public void insert(long startFrom, @Nonnull byte[] insertedData) {
+        insert(startFrom, insertedData, 0, insertedData.length);
+    }
+
+    @Override
+    public void insert(long startFrom, @Nonnull byte[] insertedData, int insertedDataOffset, int insertedDataLength) {
+        makeSpace(startFrom, insertedDataLength);
+        replace(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+    }
+
+    @Override
+    public void insert(long startFrom, @Nonnull BinaryData insertedData) {
+        insert(startFrom, insertedData, 0, insertedData.getDataSize());
+    }
+
+    @Override
+    public void insert(long startFrom, @Nonnull BinaryData insertedData, long insertedDataOffset, long insertedDataLength) {
+        if (insertedData instanceof SpillablePagedData && insertedData != this && insertedDataLength >= pageSize) {
+            SpillablePagedData sourceData = (SpillablePagedData) insertedData;
+            if (sourceData.store == store) {
+                insertShared(startFrom, sourceData, insertedDataOffset, insertedDataLength);
+                return;
+            }
+        }
+
+        makeSpace(startFrom, insertedDataLength);
+        replace(startFrom, insertedData, insertedDataOffset, insertedDataLength);
+    }
+
+    @Override
+    public long insert(long startFrom, @Nonnull InputStream inputStream, long maximumDataSize) throws IOException {
+        byte[] buffer = new byte[pageSize];
+        long processed = 0;
+        while (maximumDataSize < 0 || processed < maximumDataSize) {
+            int toRead = buffer.length;
+            if (maximumDataSize >= 0 && maximumDataSize - processed < toRead) {
+                toRead = (int) (maximumDataSize - processed);
+            }
+            int count = inputStream.read(buffer, 0, toRead);
+            if (count < 0) {
+                break;
+            }
+            insert(startFrom + processed, buffer, 0, count);
+            processed += count;
+        }
+
+        return processed;
+    }
+
+    @Override
+    public void replace(long targetPosition, @Nonnull BinaryData replacingData) {
+        replace(targetPosition, replacingData, 0, replacingData.getDataSize());
+    }
+
+    @Override
+    public void replace(long targetPosition, @Nonnull BinaryData replacingData, long startFrom, long length) {
+        ensureSize(targetPosition + length);
+        if (length == 0) {
+            return;
+        }
+
+        // Source might use the same store, copy through buffer as reading it
+        // could spill target page
+        byte[] buffer = new byte[(int) Math.min(pageSize, length)];
+        int pageIndex = findPage(targetPosition);
+        int pageOffset = (int) (targetPosition - pageStarts[pageIndex]);
+        while (length > 0) {
+            int copyLength = (int) Math.min(pages.get(pageIndex).length - pageOffset, length);
+            replacingData.copyToArray(startFrom, buffer, 0, copyLength);
+            System.arraycopy(buffer, 0, store.modify(exclusivePage(pageIndex)), pageOffset, copyLength);
+            startFrom += copyLength;
+            length -= copyLength;
+            pageIndex++;
+            pageOffset = 0;
+        }
+    }
+
+    @Override
+    public void replace(long targetPosition, @Nonnull byte[] replacingData) {
+        replace(targetPosition, replacingData, 0, replacingData.length);
+    }
+
+    @Override
+    public void replace(long targetPosition, @Nonnull byte[] replacingData, int replacingDataOffset, int length) {
+        ensureSize(targetPosition + length);
+        if (length == 0) {
+            return;
+        }
+
+        int pageIndex = findPage(targetPosition);
+        int pageOffset = (int) (targetPosition - pageStarts[pageIndex]);
+        while (length > 0) {
+            SpillStore.Page page = exclusivePage(pageIndex);
+            int copyLength = Math.min(page.length - pageOffset, length);
+            System.arraycopy(replacingData, replacingDataOffset, store.modify(page), pageOffset, copyLength);
+            replacingDataOffset += copyLength;
+            length -= copyLength;
+            pageIndex++;
+            pageOffset = 0;
+        }
+    }
+
+    @Override
+    public void fillData(long startFrom, long length) {
+        fillData(startFrom, length, (byte) 0);
+    }
+
+    @Override
+    public void fillData(long startFrom, long length, byte fill) {
+        checkRange(startFrom, length);
+        if (length == 0) {
+            return;
+        }
+
+        int pageIndex = findPage(startFrom);
+        int pageOffset = (int) (startFrom - pageStarts[pageIndex]);
+        while (length > 0) {
+            SpillStore.Page page = exclusivePage(pageIndex);
+            int fillLength = (int) Math.min(page.length - pageOffset, length);
+            Arrays.fill(store.modify(page), pageOffset, pageOffset + fillLength, fill);
+            length -= fillLength;
+            pageIndex++;
+            pageOffset = 0;
+        }
+    }
+
+    @Override
+    public void remove(long startFrom, long length) {
+        checkRange(startFrom, length);
+        if (length == 0) {
+            return;
+        }
+
+        int pageIndex = findPage(startFrom);
+        int pageOffset = (int) (startFrom - pageStarts[pageIndex]);
+        int firstPageIndex = pageIndex;
+        long remaining = length;
+        while (remaining > 0) {
+            SpillStore.Page page = pages.get(pageIndex);
+            int removedLength = (int) Math.min(page.length - pageOffset, remaining);
+            if (removedLength == page.length) {
+                store.release(page);
+                pages.remove(pageIndex);
+            } else {
+                page = exclusivePage(pageIndex);
+                if (pageOffset + removedLength < page.length) {
+                    byte[] data = store.modify(page);
+                    System.arraycopy(data, pageOffset + removedLength, data, pageOffset, page.length - pageOffset - removedLength);
+                }
+                page.length -= removedLength;
+                pageIndex++;
+            }
+            remaining -= removedLength;
+            pageOffset = 0;
+        }
+
+        dataSize -= length;
+        pageStartsValid = false;
+        if (firstPageIndex > 0) {
+            firstPageIndex--;
+        }
+        tryMergePages(firstPageIndex);
+    }
+
+    @Override
+    public void setDataSize(long size) {
+        if (size < dataSize) {
+            remove(size, dataSize - size);
+        } else if (size > dataSize) {
+            insert(dataSize, size - dataSize);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (SpillStore.Page page : pages) {
+            store.release(page);
+        }
+        pages.clear();
+        dataSize = 0;
+        pageStartsValid = false;
+    }
+
+    @Override
+    public void loadFromStream(@Nonnull InputStream inputStream) throws IOException {
+        clear();
+        insert(0, inputStream, -1);
+    }
+
+    @Override
+    public void saveToStream(@Nonnull OutputStream outputStream) throws IOException {
+        for (SpillStore.Page page : pages) {
+            outputStream.write(store.load(page), 0, page.length);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public OutputStream getDataOutputStream() {
+        return new OutputStream() {
+            private long position = 0;
+
+            @Override
+            public void write(int value) throws IOException {
+                ensureSize(position + 1);
+                setByte(position++, (byte) value);
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                replace(position, data, offset, length);
+                position += length;
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public InputStream getDataInputStream() {
+        return new InputStream() {
+            private long position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= dataSize) {
+                    return -1;
+                }
+
+                return getByte(position++) & 0xff;
+            }
+
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                if (position >= dataSize) {
+                    return -1;
+                }
+
+                int count = (int) Math.min(length, dataSize - position);
+                copyToArray(position, data, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(Integer.MAX_VALUE, dataSize - position);
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public BinaryData copy() {
+        return copy(0, dataSize);
+    }
+
+    @Nonnull
+    @Override
+    public BinaryData copy(long startFrom, long length) {
+        checkRange(startFrom, length);
+        SpillablePagedData copy = new SpillablePagedData(store);
+        copy.insert(0, this, startFrom, length);
+        return copy;
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+    }
+
+    /**
+     * Inserts space of given length at given position.
+     *
+     * Content of the inserted space is undefined.
+     *
+     * @param startFrom position
+     * @param length length of space
+     */
+    private void makeSpace(long startFrom, long length) {
+        if (startFrom < 0 || startFrom > dataSize) {
+            throw new OutOfBoundsException("Position " + startFrom + " is out of data");
+        }
+        if (length <= 0) {
+            return;
+        }
+
+        int pageIndex;
+        int pageOffset;
+        if (startFrom == dataSize) {
+            pageIndex = pages.size() - 1;
+            pageOffset = pageIndex < 0 ? 0 : pages.get(pageIndex).length;
+        } else {
+            pageIndex = findPage(startFrom);
+            pageOffset = (int) (startFrom - pageStarts[pageIndex]);
+            if (pageOffset == 0 && pageIndex > 0) {
+                // Prefer appending to the end of previous page
+                pageIndex--;
+                pageOffset = pages.get(pageIndex).length;
+            }
+        }
+
+        if (pageIndex >= 0 && !(pageOffset == pages.get(pageIndex).length && isShared(pageIndex))) {
+            SpillStore.Page page = exclusivePage(pageIndex);
+            if (page.length + length <= pageSize) {
+                // Space fits into current page
+                byte[] data = store.modify(page, page.length + (int) length);
+                System.arraycopy(data, pageOffset, data, pageOffset + (int) length, page.length - pageOffset);
+                page.length += (int) length;
+                dataSize += length;
+                pageStartsValid = false;
+                return;
+            }
+
+            if (pageOffset < page.length) {
+                // Split page, tail is moved to new page
+                int tailLength = page.length - pageOffset;
+                byte[] data = store.load(page);
+                SpillStore.Page tailPage = store.createPage(tailLength);
+                System.arraycopy(data, pageOffset, tailPage.data, 0, tailLength);
+                tailPage.length = tailLength;
+                page.length = pageOffset;
+                pages.add(pageIndex + 1, tailPage);
+            }
+
+            // Extend current page up to it's capacity
+            int extension = (int) Math.min(pageSize - page.length, length);
+            store.modify(page, page.length + extension);
+            page.length += extension;
+            length -= extension;
+            dataSize += extension;
+        }
+
+        int insertIndex = pageIndex + 1;
+        while (length > 0) {
+            SpillStore.Page newPage = store.createPage((int) Math.min(pageSize, length));
+            newPage.length = newPage.data.length;
+            pages.add(insertIndex, newPage);
+            insertIndex++;
+            length -= newPage.length;
+            dataSize += newPage.length;
+        }
+        pageStartsValid = false;
+    }
+
+    /**
+     * Inserts data sharing all pages of the source fully covered by inserted
+     * range.
+     *
+     * @param startFrom target position
+     * @param sourceData source data using the same store
+     * @param sourceOffset offset in source data
+     * @param length length of inserted data
+     */
+    private void insertShared(long startFrom, @Nonnull SpillablePagedData sourceData, long sourceOffset, long length) {
+        sourceData.checkRange(sourceOffset, length);
+        int insertIndex = splitPage(startFrom);
+        int firstIndex = insertIndex;
+        int sourceIndex = sourceData.findPage(sourceOffset);
+        int pageOffset = (int) (sourceOffset - sourceData.pageStarts[sourceIndex]);
+        long remaining = length;
+        while (remaining > 0) {
+            SpillStore.Page sourcePage = sourceData.pages.get(sourceIndex);
+            int partLength = (int) Math.min(sourcePage.length - pageOffset, remaining);
+            SpillStore.Page page;
+            if (partLength == sourcePage.length) {
+                page = store.share(sourcePage);
+            } else {
+                byte[] sourceContent = store.load(sourcePage);
+                page = store.createPage(partLength);
+                System.arraycopy(sourceContent, pageOffset, page.data, 0, partLength);
+                page.length = partLength;
+            }
+            pages.add(insertIndex, page);
+            insertIndex++;
+            remaining -= partLength;
+            sourceIndex++;
+            pageOffset = 0;
+        }
+
+        dataSize += length;
+        pageStartsValid = false;
+        tryMergePages(insertIndex - 1);
+        if (firstIndex > 0) {
+            tryMergePages(firstIndex - 1);
+        }
+    }
+
+    /**
+     * Splits page at given position so that position is at the page start.
+     *
+     * @param position position
+     * @return index of the page starting at given position
+     */
+    private int splitPage(long position) {
+        if (position < 0 || position > dataSize) {
+            throw new OutOfBoundsException("Position " + position + " is out of data");
+        }
+        if (position == dataSize) {
+            return pages.size();
+        }
+
+        int pageIndex = findPage(position);
+        int pageOffset = (int) (position - pageStarts[pageIndex]);
+        if (pageOffset == 0) {
+            return pageIndex;
+        }
+
+        SpillStore.Page page = exclusivePage(pageIndex);
+        int tailLength = page.length - pageOffset;
+        byte[] data = store.load(page);
+        SpillStore.Page tailPage = store.createPage(tailLength);
+        System.arraycopy(data, pageOffset, tailPage.data, 0, tailLength);
+        tailPage.length = tailLength;
+        page.length = pageOffset;
+        pages.add(pageIndex + 1, tailPage);
+        pageStartsValid = false;
+        return pageIndex + 1;
+    }
+
+    private boolean isShared(int pageIndex) {
+        return pages.get(pageIndex).references > 1;
+    }
+
+    /**
+     * Returns page for modification replacing shared page with it's copy.
+     *
+     * @param pageIndex page index
+     * @return page not shared with other data
+     */
+    @Nonnull
+    private SpillStore.Page exclusivePage(int pageIndex) {
+        SpillStore.Page page = pages.get(pageIndex);
+        if (page.references > 1) {
+            page = store.copyPage(page);
+            pages.set(pageIndex, page);
+        }
+        return page;
+    }
+
+    private void ensureSize(long size) {
+        if (size > dataSize) {
+            makeSpace(dataSize, size - dataSize);
+        }
+    }
+
+    /**
+     * Merges pages around given index if they fit into single page.
+     *
+     * @param pageIndex index of the first page
+     */
+    private void tryMergePages(int pageIndex) {
+        int index = pageIndex;
+        while (index <= pageIndex + 1 && index + 1 < pages.size()) {
+            SpillStore.Page page = pages.get(index);
+            SpillStore.Page nextPage = pages.get(index + 1);
+            if (page.length + nextPage.length <= pageSize && page.references == 1 && nextPage.references == 1) {
+                byte[] nextData = store.load(nextPage);
+                System.arraycopy(nextData, 0, store.modify(page, page.length + nextPage.length), page.length, nextPage.length);
+                page.length += nextPage.length;
+                store.release(nextPage);
+                pages.remove(index + 1);
+                pageStartsValid = false;
+            } else {
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Returns index of the page containing given position.
+     *
+     * @param position position
+     * @return page index
+     */
+    private int findPage(long position) {
+        if (!pageStartsValid) {
+            updatePageStarts();
+        }
+
+        int low = 0;
+        int high = pages.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pageStarts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Rebuilds start positions of pages.
+     *
+     * Synchronized as it can be performed by concurrent readers.
+     */
+    private synchronized void updatePageStarts() {
+        if (pageStartsValid) {
+            return;
+        }
+
+        long[] starts = pageStarts.length < pages.size() ? new long[pages.size() * 2] : pageStarts;
+        long start = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            starts[i] = start;
+            start += pages.get(i).length;
+        }
+        pageStarts = starts;
+        pageStartsValid = true;
+    }
+
+    private void checkRange(long startFrom, long length) {
+        if (startFrom < 0 || length < 0 || startFrom + length > dataSize) {
+            throw new OutOfBoundsException("Range " + startFrom + ":" + length + " is out of data");
+        }
+    }
+}
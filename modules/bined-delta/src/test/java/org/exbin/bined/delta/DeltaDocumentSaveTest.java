@@ -20,6 +20,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -32,7 +43,7 @@ import org.junit.Test;
 /**
  * Tests for delta document.
  *
- * @version 0.2.0 2018/04/27
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDocumentSaveTest {
@@ -721,8 +732,607 @@ public class DeltaDocumentSaveTest {
         closeTempDeltaDocument(document);
     }
 
+    @Test
+    public void testSaveProgress() {
+        DeltaDocument document = openTempDeltaDocument();
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+        EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+        document.remove(0, 128);
+        document.insert(128, halfCopy);
+        halfCopy.dispose();
+
+        final long[] progress = new long[]{0, 0, 0};
+        try {
+            document.getRepository().saveDocument(document, new SaveProgressListener() {
+                @Override
+                public void progress(long processedLength, long totalLength) {
+                    Assert.assertTrue(processedLength > progress[0]);
+                    progress[0] = processedLength;
+                    progress[1] = totalLength;
+                    progress[2]++;
+                }
+            });
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, progress[1]);
+        Assert.assertEquals(progress[1], progress[0]);
+        Assert.assertTrue(progress[2] >= 2);
+
+        document.validatePointerPosition();
+        document.clear();
+        Assert.assertEquals(0, document.getSegments().size());
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testSaveAsync() {
+        DeltaDocument document = openTempDeltaDocument();
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+        EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+        document.remove(0, 128);
+        document.insert(128, halfCopy);
+        halfCopy.dispose();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DeltaDocumentSaveTask saveTask = document.saveAsync(executor, null);
+            saveTask.get();
+            Assert.assertTrue(saveTask.isDone());
+            Assert.assertFalse(saveTask.isCancelled());
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, saveTask.getTotalLength());
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, saveTask.getProcessedLength());
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+        } catch (IOException | InterruptedException | ExecutionException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+
+        document.validatePointerPosition();
+        document.clear();
+        Assert.assertEquals(0, document.getSegments().size());
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testCancelSaveAsync() {
+        DeltaDocument document = openTempDeltaDocument();
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+        document.remove(0, 128);
+
+        final List<Runnable> scheduled = new ArrayList<>();
+        DeltaDocumentSaveTask saveTask = document.saveAsync(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                scheduled.add(command);
+            }
+        }, null);
+        Assert.assertTrue(saveTask.cancel(true));
+        scheduled.get(0).run();
+
+        Assert.assertTrue(saveTask.isDone());
+        Assert.assertTrue(saveTask.isCancelled());
+        Assert.assertFalse(saveTask.cancel(true));
+        try {
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getFileSource().getFileLength());
+            Assert.assertEquals(128, document.getDataSize());
+            Assert.assertEquals(-128, document.getByte(0));
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        document.clear();
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testAccessDuringSaveAsync() {
+        DeltaDocument document = openTempDeltaDocument();
+        SegmentsRepository repository = document.getRepository();
+        File file = document.getFileSource().getFile();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DeltaDocument otherDocument = repository.createDocument(document.getFileSource());
+            EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+            document.remove(0, 128);
+            document.insert(128, halfCopy);
+            halfCopy.dispose();
+
+            final CountDownLatch writingLatch = new CountDownLatch(1);
+            final CountDownLatch resumeLatch = new CountDownLatch(1);
+            DeltaDocumentSaveTask saveTask = document.saveAsync(executor, new SaveProgressListener() {
+                @Override
+                public void progress(long processedLength, long totalLength) {
+                    if (writingLatch.getCount() > 0) {
+                        writingLatch.countDown();
+                        try {
+                            resumeLatch.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            });
+            Assert.assertTrue(writingLatch.await(10, TimeUnit.SECONDS));
+
+            // First half of the file is already overwritten
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = otherDocument.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getFileSource().getFileLength());
+            Assert.assertEquals(-128, document.getByte(0));
+            document.setByte(0, (byte) 0x55);
+            resumeLatch.countDown();
+            saveTask.get();
+            Assert.assertFalse(SaveJournal.getJournalFile(file).exists());
+
+            try (InputStream dataInputStream = new FileInputStream(file)) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            try (InputStream dataInputStream = otherDocument.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+
+            // Modification performed during save is kept
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+            Assert.assertEquals(0x55, document.getByte(0));
+            document.setByte(0, (byte) -128);
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            otherDocument.dispose();
+        } catch (IOException | InterruptedException | ExecutionException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+
+        document.validate();
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testCancelSaveAsyncWhileWriting() {
+        DeltaDocument document = openTempDeltaDocument();
+        File file = document.getFileSource().getFile();
+        EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+        document.remove(0, 128);
+        document.insert(128, halfCopy);
+        halfCopy.dispose();
+
+        final List<Runnable> scheduled = new ArrayList<>();
+        final DeltaDocumentSaveTask[] saveTask = new DeltaDocumentSaveTask[1];
+        final boolean[] cancelled = new boolean[1];
+        saveTask[0] = document.saveAsync(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                scheduled.add(command);
+            }
+        }, new SaveProgressListener() {
+            @Override
+            public void progress(long processedLength, long totalLength) {
+                if (!cancelled[0]) {
+                    cancelled[0] = saveTask[0].cancel(false);
+                    // Task is done only after rollback
+                    Assert.assertFalse(saveTask[0].isDone());
+                }
+            }
+        });
+        scheduled.get(0).run();
+
+        Assert.assertTrue(cancelled[0]);
+        Assert.assertTrue(saveTask[0].isCancelled());
+        Assert.assertTrue(saveTask[0].isDone());
+        try {
+            saveTask[0].get();
+            Assert.fail("Cancelled save completed");
+        } catch (CancellationException ex) {
+            Assert.assertNull(ex.getCause());
+        } catch (InterruptedException | ExecutionException ex) {
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+        Assert.assertFalse(SaveJournal.getJournalFile(file).exists());
+        try {
+            // Written block was rolled back
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = new FileInputStream(file)) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        document.validate();
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testSaveWithLockHeld() {
+        DeltaDocument document = openTempDeltaDocument();
+        Lock lock = document.getRepository().getLock().writeLock();
+        lock.lock();
+        try {
+            document.setByte(0, (byte) 0x55);
+            document.save();
+            Assert.fail("Document was saved while holding repository lock");
+        } catch (IllegalStateException ex) {
+            // Expected
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            document.save();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+        Assert.assertEquals((byte) 0x55, document.getByte(0));
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testJournalSaveDocument() {
+        DeltaDocument document = openTempDeltaDocument();
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+        document.getRepository().setSaveJournalEnabled(true);
+        EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+        document.remove(0, 128);
+        document.insert(128, halfCopy);
+        halfCopy.dispose();
+
+        try {
+            document.save();
+            Assert.assertFalse(SaveJournal.getJournalFile(document.getFileSource().getFile()).exists());
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        document.validatePointerPosition();
+        document.clear();
+        Assert.assertEquals(0, document.getSegments().size());
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testFailedSaveDocument() {
+        DeltaDocument document = openTempDeltaDocument();
+        SegmentsRepository repository = document.getRepository();
+        repository.setSaveStrategy(SegmentsRepository.SaveStrategy.IN_PLACE);
+        repository.setSaveJournalEnabled(true);
+        File file = document.getFileSource().getFile();
+        try {
+            DeltaDocument otherDocument = repository.createDocument(document.getFileSource());
+            EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+            document.remove(0, 128);
+            document.insert(128, halfCopy);
+            halfCopy.dispose();
+
+            // Append data of another file which is truncated before save
+            File appendedFile = File.createTempFile("bined-appended", ".tmp");
+            try (FileOutputStream appendedOutput = new FileOutputStream(appendedFile)) {
+                appendedOutput.write(new byte[64]);
+            }
+            FileDataSource appendedSource = repository.openFileSource(appendedFile);
+            DeltaDocument appendedDocument = repository.createDocument(appendedSource);
+            document.insert(SAMPLE_ALLBYTES_SIZE, appendedDocument);
+            try (RandomAccessFile appendedAccessFile = new RandomAccessFile(appendedFile, "rw")) {
+                appendedAccessFile.setLength(0);
+            }
+
+            try {
+                document.save();
+                Assert.fail("Save should fail");
+            } catch (IOException ex) {
+                // Expected
+            }
+            Assert.assertFalse(SaveJournal.getJournalFile(file).exists());
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = otherDocument.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            try (InputStream dataInputStream = new FileInputStream(file)) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+
+            otherDocument.dispose();
+            appendedDocument.dispose();
+            appendedSource.close();
+            appendedFile.delete();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testSnapshotSaveDocument() {
+        DeltaDocument document = openTempDeltaDocument();
+        DeltaDocumentSnapshot snapshot = document.createSnapshot();
+        EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+        document.remove(0, 128);
+        document.insert(128, halfCopy);
+        halfCopy.dispose();
+
+        try {
+            document.save();
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = snapshot.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        snapshot.close();
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testJournalRecovery() {
+        DeltaDocument document = openTempDeltaDocument();
+        FileDataSource fileSource = document.getFileSource();
+        File file = fileSource.getFile();
+        try {
+            // Simulate save interrupted after first write
+            SaveJournal journal = SaveJournal.create(file, fileSource.getAccessFile().getChannel());
+            journal.recordRegion(64, 256);
+            fileSource.getAccessFile().seek(64);
+            fileSource.getAccessFile().write(new byte[256]);
+            journal.close();
+            document.dispose();
+            fileSource.close();
+            Assert.assertTrue(SaveJournal.getJournalFile(file).exists());
+
+            SegmentsRepository repository = new SegmentsRepository();
+            try {
+                repository.openFileSource(file, FileDataSource.EditationMode.READ_ONLY);
+                Assert.fail("Read-only opening of file needing recovery should fail");
+            } catch (IOException ex) {
+                // Expected
+            }
+            Assert.assertTrue(SaveJournal.getJournalFile(file).exists());
+
+            FileDataSource recoveredSource = repository.openFileSource(file);
+            Assert.assertFalse(SaveJournal.getJournalFile(file).exists());
+            DeltaDocument recoveredDocument = repository.createDocument(recoveredSource);
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = recoveredDocument.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            closeTempDeltaDocument(recoveredDocument);
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testTemporaryFileSaveDocument() {
+        DeltaDocument document = openTempDeltaDocument();
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+        SegmentsRepository repository = document.getRepository();
+        repository.setSaveStrategy(SegmentsRepository.SaveStrategy.TEMPORARY_FILE);
+        try {
+            DeltaDocument otherDocument = repository.createDocument(document.getFileSource());
+            EditableBinaryData halfCopy = (EditableBinaryData) document.copy(0, 128);
+            document.remove(0, 128);
+            document.insert(128, halfCopy);
+            halfCopy.dispose();
+
+            document.save();
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_SWAP_HALF).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+
+            try (InputStream dataInputStream = otherDocument.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+            otherDocument.dispose();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        document.validatePointerPosition();
+        document.clear();
+        Assert.assertEquals(0, document.getSegments().size());
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testMappedSaveDocument() {
+        DeltaDocument document = openTempDeltaDocument(FileDataSource.CacheMode.MAPPED);
+        SegmentsRepository repository = document.getRepository();
+        try {
+            // Map regions of the file before it's truncated
+            Assert.assertEquals((byte) 200, document.getByte(200));
+            document.remove(120, 2);
+            document.save();
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE - 2, document.getFileSource().getFileLength());
+            Assert.assertEquals((byte) 202, document.getByte(200));
+
+            InputStream comparisionFile;
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_REMOVED_MIDDLE).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+
+            repository.setSaveStrategy(SegmentsRepository.SaveStrategy.TEMPORARY_FILE);
+            document.insert(120, new byte[]{120, 121});
+            document.save();
+            Assert.assertEquals((byte) 200, document.getByte(200));
+            try (InputStream dataInputStream = document.getDataInputStream()) {
+                comparisionFile = new FileInputStream(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
+                TestUtils.assertEqualsInputStream(comparisionFile, dataInputStream);
+            }
+            comparisionFile.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        closeTempDeltaDocument(document);
+    }
+
+    @Test
+    public void testManySegmentsSaveDocument() {
+        int sectionsCount = 10000;
+        int sectionLength = 16;
+        try {
+            File tempFile = File.createTempFile("bined-example", ".tmp");
+            byte[] data = new byte[sectionsCount * sectionLength];
+            for (int position = 0; position < data.length; position++) {
+                data[position] = (byte) (position / sectionLength);
+            }
+            try (FileOutputStream fileOutput = new FileOutputStream(tempFile)) {
+                fileOutput.write(data);
+            }
+
+            SegmentsRepository segmentsRepository = new SegmentsRepository();
+            FileDataSource fileSource = segmentsRepository.openFileSource(tempFile);
+            DeltaDocument document = segmentsRepository.createDocument(fileSource);
+            document.remove(0, data.length);
+            for (int i = 0; i < sectionsCount; i++) {
+                document.insertSegment((long) i * sectionLength, segmentsRepository.createFileSegment(fileSource, (long) (sectionsCount - 1 - i) * sectionLength, sectionLength));
+            }
+            Assert.assertEquals(sectionsCount, document.getSegments().size());
+
+            document.save();
+
+            Assert.assertEquals(1, document.getSegments().size());
+            try (RandomAccessFile savedFile = new RandomAccessFile(tempFile, "r")) {
+                byte[] content = new byte[data.length];
+                savedFile.readFully(content);
+                for (int position = 0; position < content.length; position++) {
+                    Assert.assertEquals((byte) (sectionsCount - 1 - position / sectionLength), content[position]);
+                }
+            }
+            closeTempDeltaDocument(document);
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testFillSaveDocument() {
+        DeltaDocument document = openTempDeltaDocument();
+        long zerosLength = 4 * 1024 * 1024;
+        try {
+            document.fillData(16, 128, (byte) 0x7f);
+            document.setDataSize(SAMPLE_ALLBYTES_SIZE + zerosLength);
+            document.setByte(SAMPLE_ALLBYTES_SIZE + 1000, (byte) 0x11);
+            Assert.assertTrue(document.getSegment(SAMPLE_ALLBYTES_SIZE + 5000) instanceof FillSegment);
+
+            document.save();
+
+            File file = document.getFileSource().getFile();
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE + zerosLength, file.length());
+            try (RandomAccessFile savedFile = new RandomAccessFile(file, "r")) {
+                byte[] content = new byte[SAMPLE_ALLBYTES_SIZE + 2000];
+                savedFile.readFully(content);
+                for (int position = 0; position < content.length; position++) {
+                    byte expected;
+                    if (position >= 16 && position < 144) {
+                        expected = 0x7f;
+                    } else if (position < SAMPLE_ALLBYTES_SIZE) {
+                        expected = (byte) position;
+                    } else {
+                        expected = position == SAMPLE_ALLBYTES_SIZE + 1000 ? (byte) 0x11 : 0;
+                    }
+                    Assert.assertEquals(expected, content[position]);
+                }
+                savedFile.seek(SAMPLE_ALLBYTES_SIZE + zerosLength - 1);
+                Assert.assertEquals(0, savedFile.read());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+
+        closeTempDeltaDocument(document);
+    }
+
     @Nullable
     public static DeltaDocument openTempDeltaDocument() {
+        return openTempDeltaDocument(FileDataSource.CacheMode.PAGED);
+    }
+
+    @Nonnull
+    public static DeltaDocument openTempDeltaDocument(@Nonnull FileDataSource.CacheMode cacheMode) {
         SegmentsRepository segmentsRepository = new SegmentsRepository();
 
         File sampleFile = new File(DeltaDocumentSaveTest.class.getResource(SAMPLE_ALLBYTES).getFile());
@@ -741,7 +1351,7 @@ public class DeltaDocumentSaveTest {
                 }
             }
 
-            FileDataSource fileSource = segmentsRepository.openFileSource(tempFile);
+            FileDataSource fileSource = segmentsRepository.openFileSource(tempFile, FileDataSource.EditationMode.READ_WRITE, cacheMode);
             return segmentsRepository.createDocument(fileSource);
         } catch (IOException ex) {
             Logger.getLogger(DeltaDocumentSaveTest.class.getName()).log(Level.SEVERE, null, ex);
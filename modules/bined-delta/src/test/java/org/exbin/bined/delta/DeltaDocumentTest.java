@@ -15,12 +15,35 @@
  */
 package org.exbin.bined.delta;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import org.exbin.bined.delta.list.DefaultDoublyLinkedList;
+import org.exbin.bined.search.BinarySearchEngine;
+import org.exbin.bined.search.BytePatternMatcher;
+import org.exbin.bined.search.SearchListener;
+import org.exbin.bined.search.SearchMatches;
+import org.exbin.bined.search.SearchTask;
 import org.exbin.utils.binary_data.BinaryData;
 import org.junit.Assert;
 import org.junit.Test;
@@ -28,7 +51,7 @@ import org.junit.Test;
 /**
  * Tests for delta document.
  *
- * @version 0.2.0 2018/04/27
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DeltaDocumentTest {
@@ -119,6 +142,824 @@ public class DeltaDocumentTest {
         Assert.assertEquals(0, document.getSegments().size());
     }
 
+    @Test
+    public void testMappedFileSource() {
+        SegmentsRepository segmentsRepository = new SegmentsRepository();
+        try {
+            FileDataSource fileSource = segmentsRepository.openFileSource(new File(DeltaDocumentTest.class.getResource(SAMPLE_ALLBYTES).getFile()), FileDataSource.EditationMode.READ_ONLY, FileDataSource.CacheMode.MAPPED);
+            DeltaDocument document = segmentsRepository.createDocument(fileSource);
+            Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, document.getDataSize());
+            for (int position = 0; position < SAMPLE_ALLBYTES_SIZE; position++) {
+                Assert.assertEquals((byte) position, document.getByte(position));
+            }
+
+            byte[] data = new byte[16];
+            fileSource.copyToArray(120, data, 0, data.length);
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals((byte) (120 + i), data[i]);
+            }
+
+            document.dispose();
+            fileSource.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testFileSourceReadFailure() {
+        SegmentsRepository segmentsRepository = new SegmentsRepository();
+        try {
+            FileDataSource fileSource = segmentsRepository.openFileSource(new File(DeltaDocumentTest.class.getResource(SAMPLE_ALLBYTES).getFile()), FileDataSource.EditationMode.READ_ONLY);
+            // Block larger than page is read directly from the file
+            byte[] data = new byte[fileSource.getPageWindow().getPageSize() + 1];
+            try {
+                fileSource.copyToArray(SAMPLE_ALLBYTES_SIZE - 10, data, 0, data.length);
+                Assert.fail("Read past end of file succeeded");
+            } catch (UncheckedIOException ex) {
+                // Expected
+            }
+            fileSource.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testPageCacheStatistics() {
+        DeltaDocument document = openDeltaDocument();
+        DeltaDataPageWindow pageWindow = document.getFileSource().getPageWindow();
+        pageWindow.setCacheParameters(16, 2, DeltaDataPageWindow.EvictionPolicy.LRU);
+        pageWindow.getStatistics().reset();
+
+        Assert.assertEquals((byte) 0, document.getByte(0));
+        Assert.assertEquals((byte) 100, document.getByte(100));
+        Assert.assertEquals((byte) 1, document.getByte(1));
+        Assert.assertEquals((byte) 200, document.getByte(200));
+        Assert.assertEquals((byte) 2, document.getByte(2));
+
+        DeltaDataPageWindow.Statistics statistics = pageWindow.getStatistics();
+        Assert.assertEquals(2, statistics.getHits());
+        Assert.assertEquals(3, statistics.getMisses());
+        Assert.assertEquals(1, statistics.getEvictions());
+        Assert.assertEquals(48, statistics.getBytesRead());
+
+        pageWindow.setCacheParameters(16, 2, DeltaDataPageWindow.EvictionPolicy.CLOCK);
+        for (int position = 0; position < SAMPLE_ALLBYTES_SIZE; position++) {
+            Assert.assertEquals((byte) position, document.getByte(position));
+        }
+
+        document.dispose();
+    }
+
+    @Test
+    public void testCopyToArray() {
+        DeltaDocument document = openDeltaDocument();
+        document.insert(10, new byte[]{0x40, 0x41});
+        document.setByte(20, (byte) 0x42);
+        Assert.assertEquals(5, document.getSegments().size());
+
+        byte[] expected = new byte[(int) document.getDataSize()];
+        for (int position = 0; position < expected.length; position++) {
+            expected[position] = document.getByte(position);
+        }
+
+        byte[] data = new byte[expected.length + 2];
+        document.copyToArray(0, data, 1, expected.length);
+        for (int position = 0; position < expected.length; position++) {
+            Assert.assertEquals("Issue on position " + position, expected[position], data[position + 1]);
+        }
+
+        byte[] part = new byte[15];
+        document.copyToArray(8, part, 0, part.length);
+        for (int position = 0; position < part.length; position++) {
+            Assert.assertEquals("Issue on position " + position, expected[position + 8], part[position]);
+        }
+
+        document.validate();
+        document.dispose();
+    }
+
+    @Test
+    public void testRandomAccessAfterEdits() {
+        DeltaDocument document = openDeltaDocument();
+        List<Byte> expected = new ArrayList<>();
+        for (int position = 0; position < SAMPLE_ALLBYTES_SIZE; position++) {
+            expected.add((byte) position);
+        }
+
+        Random random = new Random(42);
+        for (int step = 0; step < 500; step++) {
+            int operation = random.nextInt(3);
+            if (operation == 0) {
+                int position = random.nextInt(expected.size() + 1);
+                byte[] data = new byte[1 + random.nextInt(4)];
+                random.nextBytes(data);
+                document.insert(position, data);
+                for (int i = 0; i < data.length; i++) {
+                    expected.add(position + i, data[i]);
+                }
+            } else if (operation == 1 && expected.size() > 10) {
+                int position = random.nextInt(expected.size() - 5);
+                int length = 1 + random.nextInt(4);
+                document.remove(position, length);
+                for (int i = 0; i < length; i++) {
+                    expected.remove(position);
+                }
+            } else {
+                int position = random.nextInt(expected.size());
+                byte value = (byte) random.nextInt();
+                document.setByte(position, value);
+                expected.set(position, value);
+            }
+        }
+
+        document.validate();
+        Assert.assertEquals(expected.size(), document.getDataSize());
+        for (int i = 0; i < 1000; i++) {
+            int position = random.nextInt(expected.size());
+            Assert.assertEquals("Issue on position " + position, (byte) expected.get(position), document.getByte(position));
+        }
+        for (int position = 0; position < expected.size(); position++) {
+            Assert.assertEquals("Issue on position " + position, (byte) expected.get(position), document.getByte(position));
+        }
+
+        document.dispose();
+    }
+
+    @Test
+    public void testSpillablePagedDataResidentSize() {
+        SpillStore store = new SpillStore(1024, SpillStore.UNLIMITED_RESIDENT_PAGES);
+        SpillablePagedData data = new SpillablePagedData(store);
+        data.insert(0, new byte[]{1});
+        Assert.assertEquals(1, store.getResidentSize());
+        data.insert(1, new byte[]{2, 3});
+        Assert.assertEquals(3, store.getResidentSize());
+        // Full page is allocated only when data reach the page size
+        data.insert(3, new byte[2000]);
+        Assert.assertEquals(2003, store.getResidentSize());
+        Assert.assertEquals(2, data.getPagesCount());
+        Assert.assertEquals((byte) 3, data.getByte(2));
+        data.dispose();
+        Assert.assertEquals(0, store.getResidentSize());
+    }
+
+    @Test
+    public void testSpilledMemorySource() {
+        SpillStore store = new SpillStore(16, 4);
+        SpillablePagedData data = new SpillablePagedData(store);
+        List<Byte> expected = new ArrayList<>();
+
+        Random random = new Random(42);
+        for (int step = 0; step < 1000; step++) {
+            int operation = random.nextInt(4);
+            if (operation == 0 || expected.size() < 50) {
+                int position = random.nextInt(expected.size() + 1);
+                byte[] inserted = new byte[1 + random.nextInt(40)];
+                random.nextBytes(inserted);
+                data.insert(position, inserted);
+                for (int i = 0; i < inserted.length; i++) {
+                    expected.add(position + i, inserted[i]);
+                }
+            } else if (operation == 1) {
+                int length = 1 + random.nextInt(30);
+                int position = random.nextInt(expected.size() - length);
+                data.remove(position, length);
+                for (int i = 0; i < length; i++) {
+                    expected.remove(position);
+                }
+            } else if (operation == 2) {
+                int length = 1 + random.nextInt(20);
+                int sourcePosition = random.nextInt(expected.size() - length);
+                int position = random.nextInt(expected.size() + 1);
+                BinaryData copy = data.copy(sourcePosition, length);
+                data.insert(position, copy);
+                copy.dispose();
+                List<Byte> inserted = new ArrayList<>(expected.subList(sourcePosition, sourcePosition + length));
+                expected.addAll(position, inserted);
+            } else {
+                int position = random.nextInt(expected.size());
+                byte value = (byte) random.nextInt();
+                data.setByte(position, value);
+                expected.set(position, value);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), data.getDataSize());
+        Assert.assertTrue(store.getResidentPagesCount() <= 4);
+        Assert.assertTrue(store.getStatistics().getSpilledPages() > 0);
+        byte[] content = new byte[expected.size()];
+        data.copyToArray(0, content, 0, content.length);
+        for (int position = 0; position < expected.size(); position++) {
+            Assert.assertEquals("Issue on position " + position, (byte) expected.get(position), content[position]);
+            Assert.assertEquals("Issue on position " + position, (byte) expected.get(position), data.getByte(position));
+        }
+
+        data.dispose();
+        try {
+            store.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DeltaDocumentTest.class.getName()).log(Level.SEVERE, null, ex);
+            Assert.fail("Exception: " + ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testSharedMemoryPages() {
+        SpillStore store = new SpillStore(16, SpillStore.UNLIMITED_RESIDENT_PAGES);
+        SpillablePagedData data = new SpillablePagedData(store);
+        byte[] content = new byte[200];
+        new Random(42).nextBytes(content);
+        data.insert(0, content);
+
+        SpillablePagedData copy = (SpillablePagedData) data.copy(5, 150);
+        Assert.assertEquals(150, copy.getDataSize());
+        Assert.assertEquals(0, store.getStatistics().getCopiedPages());
+
+        copy.setByte(100, (byte) ~content[105]);
+        copy.insert(50, new byte[]{1, 2, 3});
+        data.remove(0, 20);
+        Assert.assertTrue(store.getStatistics().getCopiedPages() > 0);
+
+        Assert.assertEquals(153, copy.getDataSize());
+        for (int position = 0; position < 153; position++) {
+            byte expected;
+            if (position < 50) {
+                expected = content[position + 5];
+            } else if (position < 53) {
+                expected = (byte) (position - 49);
+            } else if (position == 103) {
+                expected = (byte) ~content[105];
+            } else {
+                expected = content[position + 2];
+            }
+            Assert.assertEquals("Issue on position " + position, expected, copy.getByte(position));
+        }
+        for (int position = 0; position < 180; position++) {
+            Assert.assertEquals("Issue on position " + position, content[position + 20], data.getByte(position));
+        }
+
+        copy.dispose();
+        data.dispose();
+    }
+
+    @Test
+    public void testCompactMemorySources() {
+        SegmentsRepository repository = new SegmentsRepository();
+        DeltaDocument document = repository.createDocument();
+        byte[] content = new byte[1000];
+        new Random(42).nextBytes(content);
+        document.insert(0, content);
+        BinaryData copy = document.copy(100, 300);
+        document.remove(200, 500);
+        document.remove(0, 50);
+        Assert.assertEquals(1000, repository.getMemoryAllocatedSize());
+        Assert.assertEquals(650, repository.getMemoryLiveSize());
+
+        Assert.assertEquals(350, repository.compactMemorySources());
+        Assert.assertEquals(650, repository.getMemoryAllocatedSize());
+        Assert.assertEquals(650, repository.getMemoryLiveSize());
+
+        document.validate();
+        Assert.assertEquals(450, document.getDataSize());
+        for (int position = 0; position < 450; position++) {
+            byte expected = content[position < 150 ? position + 50 : position + 550];
+            Assert.assertEquals("Issue on position " + position, expected, document.getByte(position));
+        }
+        for (int position = 0; position < 300; position++) {
+            Assert.assertEquals("Issue on position " + position, content[position + 100], copy.getByte(position));
+        }
+
+        copy.dispose();
+        document.dispose();
+        Assert.assertEquals(0, repository.getMemoryAllocatedSize());
+    }
+
+    @Test
+    public void testCompactSegments() {
+        DeltaDocument document = openDeltaDocument();
+        SegmentsRepository repository = document.getRepository();
+        FileDataSource fileSource = document.getFileSource();
+        document.remove(0, SAMPLE_ALLBYTES_SIZE);
+        for (int i = 0; i < 16; i++) {
+            document.insertSegment(i * 16, repository.createFileSegment(fileSource, i * 16, 16));
+        }
+        Assert.assertEquals(16, document.getSegmentsCount());
+        document.compact();
+        Assert.assertEquals(1, document.getSegmentsCount());
+
+        List<Byte> expected = new ArrayList<>();
+        for (int position = 0; position < SAMPLE_ALLBYTES_SIZE; position++) {
+            expected.add((byte) position);
+        }
+        for (int position = 10; position < 30; position++) {
+            document.setByte(position, (byte) ~position);
+            expected.set(position, (byte) ~position);
+        }
+        Assert.assertEquals(3, document.getSegmentsCount());
+        document.setByte(50, (byte) 0);
+        expected.set(50, (byte) 0);
+        Assert.assertEquals(5, document.getSegmentsCount());
+        document.remove(30, 20);
+        expected.subList(30, 50).clear();
+        Assert.assertEquals(3, document.getSegmentsCount());
+
+        document.validate();
+        Assert.assertEquals(expected.size(), document.getDataSize());
+        for (int position = 0; position < expected.size(); position++) {
+            Assert.assertEquals("Issue on position " + position, (byte) expected.get(position), document.getByte(position));
+        }
+        document.dispose();
+    }
+
+    @Test
+    public void testCompactSegmentsMemoryBudget() {
+        SegmentsRepository repository = new SegmentsRepository();
+        repository.setMemoryBudgetPolicy(SegmentsRepository.MemoryBudgetPolicy.COMPACT);
+        repository.setMemoryBudget(1);
+        DeltaDocument document = repository.createDocument();
+        for (int i = 0; i < 2; i++) {
+            MemorySegment segment = repository.createMemorySegment();
+            segment.getSource().insert(0, new byte[]{(byte) i, (byte) i});
+            repository.updateSegmentLength(segment, 2);
+            document.insertSegment(i * 2, segment);
+        }
+
+        // Segment is not copied to preceding source over the budget
+        document.compact();
+        Assert.assertEquals(2, document.getSegmentsCount());
+        repository.setMemoryBudget(SegmentsRepository.UNLIMITED_MEMORY_BUDGET);
+        document.compact();
+        Assert.assertEquals(1, document.getSegmentsCount());
+        Assert.assertEquals((byte) 0, document.getByte(1));
+        Assert.assertEquals((byte) 1, document.getByte(2));
+        document.validate();
+        document.dispose();
+    }
+
+    @Test
+    public void testConcurrentReaders() {
+        final DeltaDocument document = openDeltaDocument();
+        document.getFileSource().getPageWindow().setCacheParameters(16, 2, DeltaDataPageWindow.EvictionPolicy.LRU);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int seed = i;
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    byte[] buffer = new byte[40];
+                    try {
+                        for (int step = 0; step < 2000; step++) {
+                            int position = random.nextInt(SAMPLE_ALLBYTES_SIZE - buffer.length);
+                            document.copyToArray(position, buffer, 0, buffer.length);
+                            for (int j = 0; j < buffer.length; j++) {
+                                Assert.assertEquals((byte) (position + j), buffer[j]);
+                            }
+                            Assert.assertEquals((byte) position, document.getByte(position));
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        // Modifications keep the same content
+        Random random = new Random(42);
+        for (int step = 0; step < 500; step++) {
+            int position = random.nextInt(SAMPLE_ALLBYTES_SIZE - 8);
+            if (random.nextBoolean()) {
+                document.setByte(position, (byte) position);
+            } else {
+                byte[] data = new byte[8];
+                document.copyToArray(position, data, 0, data.length);
+                document.replace(position, data);
+            }
+        }
+
+        try {
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted");
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Reader failed", failure.get());
+        }
+        document.validate();
+        document.dispose();
+    }
+
+    @Test
+    public void testThreadWindows() {
+        final DeltaDocument document = openDeltaDocument();
+        document.getByte(0);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Assert.assertEquals((byte) 100, document.getByte(100));
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        try {
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted");
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Reader failed", failure.get());
+        }
+
+        // Reader threads are still referenced, windows are released on dispose
+        document.clear();
+        Assert.assertEquals(5, document.getWindowsCount());
+        Assert.assertEquals(0, document.getDataSize());
+        document.dispose();
+        Assert.assertEquals(0, document.getWindowsCount());
+    }
+
+    @Test
+    public void testDocumentSnapshot() {
+        DeltaDocument document = openDeltaDocument();
+        DeltaDocumentSnapshot snapshot = document.createSnapshot();
+        DeltaDocumentSnapshot secondSnapshot = document.createSnapshot();
+        Assert.assertFalse(snapshot.isDetached());
+        Assert.assertEquals((byte) 10, snapshot.getByte(10));
+
+        document.setByte(10, (byte) 0x55);
+        Assert.assertTrue(snapshot.isDetached());
+        Assert.assertTrue(secondSnapshot.isDetached());
+        DeltaDocumentSnapshot modifiedSnapshot = document.createSnapshot();
+        document.insert(0, new byte[]{1, 2, 3});
+        document.remove(100, 50);
+        secondSnapshot.close();
+
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, snapshot.getDataSize());
+        byte[] content = new byte[SAMPLE_ALLBYTES_SIZE];
+        snapshot.copyToArray(0, content, 0, content.length);
+        for (int position = 0; position < SAMPLE_ALLBYTES_SIZE; position++) {
+            Assert.assertEquals((byte) position, content[position]);
+        }
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE, modifiedSnapshot.getDataSize());
+        Assert.assertEquals((byte) 0x55, modifiedSnapshot.getByte(10));
+        Assert.assertEquals((byte) 200, modifiedSnapshot.getByte(200));
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE - 47, document.getDataSize());
+        Assert.assertEquals((byte) 0x55, document.getByte(13));
+
+        snapshot.close();
+        modifiedSnapshot.close();
+        try {
+            snapshot.getByte(0);
+            Assert.fail("Closed snapshot should not be readable");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        document.dispose();
+    }
+
+    @Test
+    public void testSnapshotSharedSegments() {
+        DeltaDocument document = openDeltaDocument();
+        SegmentsRepository repository = document.getRepository();
+        document.insert(0, new byte[]{1, 2, 3, 4});
+        for (int i = 0; i < 20; i++) {
+            document.setByte(10 + i * 10, (byte) 0x55);
+        }
+        byte[] expected = new byte[(int) document.getDataSize()];
+        document.copyToArray(0, expected, 0, expected.length);
+        MemoryUsage memoryUsage = repository.getMemoryUsage();
+        int segmentsCount = memoryUsage.getMemorySegmentsCount() + memoryUsage.getFileSegmentsCount();
+
+        DeltaDocumentSnapshot snapshot = document.createSnapshot();
+        Assert.assertFalse(snapshot.isDetached());
+        // Modifies memory source referenced by the snapshot
+        document.insert(2, new byte[]{9, 9});
+        document.setByte(1, (byte) 7);
+        document.remove(100, 20);
+        Assert.assertTrue(snapshot.isDetached());
+        memoryUsage = repository.getMemoryUsage();
+        Assert.assertTrue(memoryUsage.getMemorySegmentsCount() + memoryUsage.getFileSegmentsCount() < segmentsCount + 4);
+
+        repository.compactMemorySources();
+        byte[] content = new byte[expected.length];
+        snapshot.copyToArray(0, content, 0, content.length);
+        Assert.assertArrayEquals(expected, content);
+        Assert.assertEquals(expected[150], snapshot.getByte(150));
+        BinaryData copy = snapshot.copy(2, 100);
+        for (int position = 0; position < 100; position++) {
+            Assert.assertEquals(expected[position + 2], copy.getByte(position));
+        }
+        copy.dispose();
+        Assert.assertEquals((byte) 9, document.getByte(2));
+        Assert.assertEquals((byte) 7, document.getByte(1));
+
+        snapshot.close();
+        repository.compactMemorySources();
+        document.validate();
+        document.dispose();
+    }
+
+    @Test
+    public void testDocumentChannel() throws IOException {
+        DeltaDocument document = openDeltaDocument();
+        document.insert(100, new byte[]{1, 2, 3});
+        document.remove(200, 10);
+        long dataSize = document.getDataSize();
+        byte[] expected = new byte[(int) dataSize];
+        document.copyToArray(0, expected, 0, expected.length);
+
+        DeltaDocumentChannel channel = document.getDataChannel();
+        Assert.assertEquals(dataSize, channel.size());
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(150);
+        channel.position(50);
+        Assert.assertEquals(150, channel.read(directBuffer));
+        directBuffer.flip();
+        for (int position = 50; position < 200; position++) {
+            Assert.assertEquals(expected[position], directBuffer.get());
+        }
+
+        File targetFile = File.createTempFile("bined-channel", ".tmp");
+        targetFile.deleteOnExit();
+        try (FileChannel targetChannel = FileChannel.open(targetFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.position(0);
+            Assert.assertEquals(dataSize, targetChannel.transferFrom(channel, 0, dataSize));
+            ByteBuffer content = ByteBuffer.allocate((int) dataSize);
+            targetChannel.read(content, 0);
+            Assert.assertArrayEquals(expected, content.array());
+        }
+        Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+        InputStream stream = document.getDataInputStream();
+        Assert.assertEquals(dataSize - 1, stream.skip(dataSize - 1));
+        Assert.assertEquals(expected[(int) dataSize - 1] & 0xff, stream.read());
+        Assert.assertEquals(0, stream.skip(10));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        document.saveToStream(output);
+        Assert.assertArrayEquals(expected, output.toByteArray());
+        channel.close();
+        document.dispose();
+    }
+
+    @Test
+    public void testBufferedOutputStream() throws IOException {
+        DeltaDocument document = openDeltaDocument();
+        final int[] notifications = new int[1];
+        document.addChangeListener(new DeltaDocumentChangedListener() {
+            @Override
+            public void dataChanged(DeltaDocumentWindow window) {
+                notifications[0]++;
+            }
+        });
+
+        DeltaDocumentOutputStream output = new DeltaDocumentOutputStream(document, DeltaDocumentOutputStream.WriteMode.OVERWRITE, 100);
+        output.seek(SAMPLE_ALLBYTES_SIZE - 50);
+        for (int i = 0; i < 150; i++) {
+            output.write(0x55);
+        }
+        output.close();
+        Assert.assertEquals(2, notifications[0]);
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE + 100, document.getDataSize());
+        Assert.assertEquals(2, document.getSegmentsCount());
+        Assert.assertEquals((byte) (SAMPLE_ALLBYTES_SIZE - 51), document.getByte(SAMPLE_ALLBYTES_SIZE - 51));
+        for (int position = SAMPLE_ALLBYTES_SIZE - 50; position < SAMPLE_ALLBYTES_SIZE + 100; position++) {
+            Assert.assertEquals((byte) 0x55, document.getByte(position));
+        }
+
+        notifications[0] = 0;
+        output = document.getDataOutputStream(DeltaDocumentOutputStream.WriteMode.INSERT);
+        output.seek(10);
+        output.write(new byte[]{1, 2, 3});
+        output.write(4);
+        output.flush();
+        Assert.assertEquals(1, notifications[0]);
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE + 104, document.getDataSize());
+        Assert.assertEquals((byte) 4, document.getByte(13));
+        Assert.assertEquals((byte) 10, document.getByte(14));
+        output.close();
+
+        // Default stream overwrites single bytes and inserts arrays
+        OutputStream defaultOutput = document.getDataOutputStream();
+        defaultOutput.write(5);
+        defaultOutput.write(new byte[]{6, 7});
+        defaultOutput.close();
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE + 106, document.getDataSize());
+        Assert.assertEquals((byte) 5, document.getByte(0));
+        Assert.assertEquals((byte) 6, document.getByte(1));
+        Assert.assertEquals((byte) 7, document.getByte(2));
+        Assert.assertEquals((byte) 1, document.getByte(3));
+        document.validate();
+        document.dispose();
+    }
+
+    @Test
+    public void testInsertInputStream() throws IOException {
+        DeltaDocument document = openDeltaDocument();
+        byte[] importedData = new byte[200000];
+        new Random(7).nextBytes(importedData);
+        long inserted = document.insert(10, new ByteArrayInputStream(importedData), 150000);
+        Assert.assertEquals(150000, inserted);
+        Assert.assertEquals(SAMPLE_ALLBYTES_SIZE + 150000, document.getDataSize());
+
+        DataSegment segment = document.getSegment(10);
+        Assert.assertTrue(segment instanceof FileSegment);
+        FileDataSource scratchSource = ((FileSegment) segment).getSource();
+        Assert.assertTrue(document.getRepository().isScratchSource(scratchSource));
+        File scratchFile = scratchSource.getFile();
+        Assert.assertTrue(scratchFile.exists());
+
+        byte[] content = new byte[150000];
+        document.copyToArray(10, content, 0, content.length);
+        for (int i = 0; i < content.length; i++) {
+            Assert.assertEquals(importedData[i], content[i]);
+        }
+        Assert.assertEquals((byte) 10, document.getByte(150010));
+
+        document.remove(0, 100000);
+        Assert.assertTrue(scratchFile.exists());
+        document.remove(0, 50010);
+        Assert.assertFalse(scratchFile.exists());
+
+        document.loadFromStream(new ByteArrayInputStream(importedData));
+        Assert.assertEquals(importedData.length, document.getDataSize());
+        Assert.assertEquals(1, document.getSegmentsCount());
+        Assert.assertEquals(importedData[importedData.length - 1], document.getByte(importedData.length - 1));
+        scratchFile = ((FileSegment) document.getSegment(0)).getSource().getFile();
+        document.dispose();
+        Assert.assertFalse(scratchFile.exists());
+    }
+
+    @Test
+    public void testFillSegments() {
+        DeltaDocument document = new SegmentsRepository().createDocument();
+        long length = 10L * 1024 * 1024 * 1024;
+        document.insert(0, length);
+        Assert.assertEquals(length, document.getDataSize());
+        Assert.assertEquals(1, document.getSegmentsCount());
+        Assert.assertEquals(0, document.getRepository().getMemoryAllocatedSize());
+        Assert.assertEquals(0, document.getByte(length - 1));
+
+        document.fillData(1000, 8192, (byte) 0x33);
+        document.fillData(1000 + 8192, 8192, (byte) 0x33);
+        Assert.assertEquals(3, document.getSegmentsCount());
+        document.setByte(5000, (byte) 0x44);
+        document.setByte(5001, (byte) 0x33);
+        byte[] content = new byte[20000];
+        document.copyToArray(0, content, 0, content.length);
+        for (int position = 0; position < content.length; position++) {
+            byte expected = position >= 1000 && position < 1000 + 16384 ? (byte) 0x33 : 0;
+            Assert.assertEquals(position == 5000 ? (byte) 0x44 : expected, content[position]);
+        }
+
+        document.remove(1000, 16384);
+        document.compact();
+        Assert.assertEquals(1, document.getSegmentsCount());
+        document.validate();
+        document.dispose();
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        SegmentsRepository repository = new SegmentsRepository();
+        SpillStore spillStore = new SpillStore(1024, 64);
+        repository.setSpillStore(spillStore);
+        DeltaDocument document = repository.createDocument();
+        document.insert(0, new byte[16 * 1024]);
+        document.insert(0, new byte[8 * 1024]);
+        document.remove(0, 4 * 1024);
+
+        MemoryUsage usage = repository.getMemoryUsage();
+        Assert.assertEquals(1, usage.getMemorySourcesCount());
+        Assert.assertEquals(1, usage.getMemorySegmentsCount());
+        Assert.assertEquals(24 * 1024, usage.getAllocatedSize());
+        Assert.assertEquals(20 * 1024, usage.getLiveSize());
+        Assert.assertEquals(24 * 1024, usage.getHeapSize());
+        Assert.assertEquals(1.0 / 6, usage.getFragmentation(), 0.0001);
+        Assert.assertEquals(Long.valueOf(20 * 1024), usage.getDocumentMemorySizes().get(document));
+
+        repository.setMemoryBudget(24 * 1024);
+        repository.setMemoryBudgetPolicy(SegmentsRepository.MemoryBudgetPolicy.COMPACT);
+        document.insert(0, new byte[1024]);
+        Assert.assertEquals(0, repository.getMemoryUsage().getFragmentation(), 0.0001);
+        Assert.assertEquals(21 * 1024, repository.getMemoryHeapSize());
+
+        repository.setMemoryBudgetPolicy(SegmentsRepository.MemoryBudgetPolicy.SPILL);
+        document.insert(0, new byte[8 * 1024]);
+        Assert.assertTrue(repository.getMemoryHeapSize() <= 24 * 1024);
+        Assert.assertTrue(repository.getMemoryUsage().getSpilledSize() > 0);
+
+        repository.setMemoryBudgetPolicy(SegmentsRepository.MemoryBudgetPolicy.REJECT);
+        try {
+            document.insert(0, new byte[32 * 1024]);
+            Assert.fail("Insertion over budget should be rejected");
+        } catch (MemoryBudgetExceededException ex) {
+            // Expected
+        }
+        repository.setMemoryBudget(2 * 1024);
+        try {
+            document.insertUninitialized(0, 4095);
+            Assert.fail("Insertion over budget should be rejected");
+        } catch (MemoryBudgetExceededException ex) {
+            // Expected
+        }
+        document.insertUninitialized(0, 64 * 1024);
+        document.remove(0, 64 * 1024);
+        Assert.assertEquals(29 * 1024, document.getDataSize());
+        document.dispose();
+    }
+
+    @Test
+    public void testNgramIndex() throws IOException, InterruptedException, ExecutionException {
+        byte[] data = new byte[300 * 1024];
+        new Random(5).nextBytes(data);
+        byte[] pattern = "IndexedPattern".getBytes(StandardCharsets.US_ASCII);
+        int[] patternPositions = {1000, 4094, 150000, data.length - pattern.length};
+        for (int position : patternPositions) {
+            System.arraycopy(pattern, 0, data, position, pattern.length);
+        }
+        File sourceFile = File.createTempFile("bined-indexed", ".tmp");
+        sourceFile.deleteOnExit();
+        Files.write(sourceFile.toPath(), data);
+        File indexFile = File.createTempFile("bined-index", ".ngi");
+        indexFile.delete();
+        indexFile.deleteOnExit();
+
+        SegmentsRepository repository = new SegmentsRepository();
+        FileDataSource fileSource = repository.openFileSource(sourceFile, FileDataSource.EditationMode.READ_ONLY);
+        DeltaDocument document = repository.createDocument(fileSource);
+        NgramIndex index = new NgramIndex(fileSource, indexFile, 4096, 1 << 16);
+        Assert.assertFalse(index.isReady());
+        Assert.assertTrue(index.isIndexOf(document));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        index.buildAsync(executor).get();
+        executor.shutdown();
+        Assert.assertTrue(index.isReady());
+        Assert.assertEquals(data.length, index.getIndexedLength());
+
+        BytePatternMatcher matcher = new BytePatternMatcher(pattern);
+        long[] candidateRanges = index.findCandidateRanges(matcher);
+        Assert.assertNotNull(candidateRanges);
+        long candidateSize = 0;
+        for (int i = 0; i < candidateRanges.length; i += 2) {
+            candidateSize += candidateRanges[i + 1] - candidateRanges[i];
+        }
+        Assert.assertTrue(candidateSize < data.length / 4);
+        Assert.assertNull(index.findCandidateRanges(new BytePatternMatcher(new byte[]{1, 2, 3})));
+
+        final List<Long> positions = new ArrayList<>();
+        BinarySearchEngine engine = new BinarySearchEngine(new ForkJoinPool(2), 10000);
+        SearchTask task = engine.search(document, 0, document.getDataSize(), matcher, new SearchListener() {
+            @Override
+            public void matchesFound(SearchTask task, SearchMatches matches) {
+                for (int i = 0; i < matches.getCount(); i++) {
+                    positions.add(matches.getPosition(i));
+                }
+            }
+
+            @Override
+            public void searchFinished(SearchTask task) {
+            }
+        }, index);
+        task.waitFor();
+        Assert.assertEquals(patternPositions.length, positions.size());
+        for (int i = 0; i < patternPositions.length; i++) {
+            Assert.assertEquals(patternPositions[i], (long) positions.get(i));
+        }
+
+        NgramIndex reopenedIndex = new NgramIndex(fileSource, indexFile, 4096, 1 << 16);
+        Assert.assertTrue(reopenedIndex.isReady());
+        Assert.assertTrue(sourceFile.setLastModified(sourceFile.lastModified() - 10000));
+        Assert.assertFalse(reopenedIndex.isReady());
+        Assert.assertNull(reopenedIndex.findCandidateRanges(matcher));
+
+        document.setByte(0, (byte) 0);
+        Assert.assertFalse(index.isIndexOf(document));
+        reopenedIndex.close();
+        index.close();
+        document.dispose();
+        repository.closeFileSource(fileSource);
+        indexFile.delete();
+    }
+
     @Nullable
     public static DeltaDocument openDeltaDocument() {
         SegmentsRepository segmentsRepository = new SegmentsRepository();
@@ -18,15 +18,23 @@ package org.exbin.bined.highlight.swing;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.exbin.bined.BasicCodeAreaSection;
+import org.exbin.bined.search.SearchMatches;
+import org.exbin.bined.search.SearchMatchesStore;
 import org.exbin.bined.swing.basic.DefaultCodeAreaPainter;
 import org.exbin.bined.swing.CodeAreaWorker;
 
 /**
  * Hexadecimal component painter supporting search matches highlighting.
  *
- * @version 0.2.0 2018/05/01
+ * Matches are kept in primitive store and runs of matched bytes are
+ * computed once per painted row.
+ *
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class HighlightCodeAreaPainter extends DefaultCodeAreaPainter {
@@ -34,10 +42,9 @@ public class HighlightCodeAreaPainter extends DefaultCodeAreaPainter {
     /**
      * Matches must be ordered by position.
      */
-    private final List<SearchMatch> matches = new ArrayList<>();
+    private final SearchMatchesStore matches = new SearchMatchesStore();
     private int currentMatchIndex = -1;
-    private int matchIndex = 0;
-    private long matchPosition = -1;
+    private final RowMatchRuns rowMatchRuns = new RowMatchRuns();
 
     private ColorsGroup foundMatchesColors;
     private ColorsGroup currentMatchColors;
@@ -53,7 +60,7 @@ public class HighlightCodeAreaPainter extends DefaultCodeAreaPainter {
 
     @Override
     public void paintMainArea(Graphics g) {
-        matchIndex = 0;
+        rowMatchRuns.invalidate();
         super.paintMainArea(g);
     }
 
@@ -64,69 +71,80 @@ public class HighlightCodeAreaPainter extends DefaultCodeAreaPainter {
 
     @Override
     public Color getPositionBackgroundColor(long rowDataPosition, int byteOnRow, int charOnRow, int section) {
-        return super.getPositionBackgroundColor(rowDataPosition, byteOnRow, charOnRow, section);
-    }
-
-    @Override
-    public Color getPositionColor(int byteOnLine, int charOnLine, int section, ColorsGroup.ColorType colorType, PaintData paintData) {
-        if (!matches.isEmpty() && section == Section.TEXT_PREVIEW || charOnLine < paintData.getCharsPerLine() - 1) {
-            long dataPosition = paintData.getLineDataPosition() + byteOnLine;
-            if (currentMatchIndex >= 0) {
-                SearchMatch currentMatch = matches.get(currentMatchIndex);
-                if (dataPosition >= currentMatch.position && dataPosition < currentMatch.position + currentMatch.length
-                        && (section == Section.TEXT_PREVIEW || charOnLine != ((currentMatch.position + currentMatch.length) - paintData.getLineDataPosition()) * paintData.getCharsPerLine() - 1)) {
-                    return currentMatchColors.getColor(colorType);
-                }
-            }
-
-            if (matchPosition < paintData.getLineDataPosition()) {
-                matchIndex = 0;
+        if (!matches.isEmpty()) {
+            if (rowMatchRuns.rowDataPosition != rowDataPosition) {
+                rowMatchRuns.compute(rowDataPosition, getBytesPerRow());
             }
-            int lineMatchIndex = matchIndex;
-            while (lineMatchIndex < matches.size()) {
-                SearchMatch match = matches.get(lineMatchIndex);
-                if (dataPosition >= match.position && dataPosition < match.position + match.length
-                        && (section == Section.TEXT_PREVIEW || charOnLine != ((match.position + match.length) - paintData.getLineDataPosition()) * paintData.getCharsPerLine() - 1)) {
-                    if (byteOnLine == 0) {
-                        matchIndex = lineMatchIndex;
-                        matchPosition = match.position;
-                    }
-                    return foundMatchesColors.getColor(colorType);
-                }
 
-                if (match.position > dataPosition) {
-                    break;
-                }
-
-                if (byteOnLine == 0) {
-                    matchIndex = lineMatchIndex;
-                    matchPosition = match.position;
-                }
-                lineMatchIndex++;
+            int runIndex = rowMatchRuns.findRun(byteOnRow);
+            if (runIndex >= 0 && (section == BasicCodeAreaSection.TEXT_PREVIEW.getSection()
+                    || byteOnRow < rowMatchRuns.ends[runIndex] - 1 || charOnRow <= computeLastCodeCharPos(byteOnRow))) {
+                return rowMatchRuns.current[runIndex] ? currentMatchColors.getBackgroundColor() : foundMatchesColors.getBackgroundColor();
             }
         }
 
-        return super.getPositionColor(byteOnLine, charOnLine, section, colorType, paintData);
+        return super.getPositionBackgroundColor(rowDataPosition, byteOnRow, charOnRow, section);
     }
 
-    public List<SearchMatch> getMatches() {
+    /**
+     * Returns matches store.
+     *
+     * Repaint is needed after matches are modified.
+     *
+     * @return store of matches
+     */
+    @Nonnull
+    public SearchMatchesStore getMatchesStore() {
         return matches;
     }
 
+    @Nonnull
+    public List<SearchMatch> getMatches() {
+        List<SearchMatch> result = new ArrayList<>(matches.getCount());
+        for (int i = 0; i < matches.getCount(); i++) {
+            result.add(new SearchMatch(matches.getPosition(i), matches.getLength(i)));
+        }
+        return result;
+    }
+
     public void setMatches(List<SearchMatch> matches) {
         this.matches.clear();
-        this.matches.addAll(matches);
+        addMatches(matches);
         currentMatchIndex = -1;
     }
 
+    /**
+     * Appends matches found after all current matches.
+     *
+     * @param matches matches ordered by position
+     */
+    public void addMatches(List<SearchMatch> matches) {
+        for (SearchMatch match : matches) {
+            this.matches.add(match.getPosition(), match.getLength());
+        }
+        rowMatchRuns.invalidate();
+    }
+
+    /**
+     * Appends matches found by search after all current matches.
+     *
+     * @param matches matches ordered by position
+     */
+    public void addMatches(@Nonnull SearchMatches matches) {
+        this.matches.addAll(matches);
+        rowMatchRuns.invalidate();
+    }
+
     public void clearMatches() {
-        this.matches.clear();
+        matches.clear();
         currentMatchIndex = -1;
+        rowMatchRuns.invalidate();
     }
 
+    @Nullable
     public SearchMatch getCurrentMatch() {
         if (currentMatchIndex >= 0) {
-            return matches.get(currentMatchIndex);
+            return new SearchMatch(matches.getPosition(currentMatchIndex), matches.getLength(currentMatchIndex));
         }
 
         return null;
@@ -138,6 +156,7 @@ public class HighlightCodeAreaPainter extends DefaultCodeAreaPainter {
 
     public void setCurrentMatchIndex(int currentMatchIndex) {
         this.currentMatchIndex = currentMatchIndex;
+        rowMatchRuns.invalidate();
     }
 
     public Color getFoundMatchesBackgroundColor() {
@@ -189,7 +208,67 @@ public class HighlightCodeAreaPainter extends DefaultCodeAreaPainter {
         }
     }
 
-    private static class MatchColors {
-        
+    /**
+     * Runs of matched bytes on single row.
+     */
+    private class RowMatchRuns {
+
+        private long rowDataPosition = -1;
+        private int count = 0;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private boolean[] current = new boolean[16];
+
+        private void invalidate() {
+            rowDataPosition = -1;
+        }
+
+        private void compute(long rowDataPosition, int bytesPerRow) {
+            this.rowDataPosition = rowDataPosition;
+            count = 0;
+            long rowEndPosition = rowDataPosition + bytesPerRow;
+            int matchesCount = matches.getCount();
+            for (int index = matches.findFirstMatchEndingAfter(rowDataPosition); index < matchesCount; index++) {
+                long position = matches.getPosition(index);
+                if (position >= rowEndPosition) {
+                    break;
+                }
+
+                long endPosition = position + matches.getLength(index);
+                if (endPosition > rowDataPosition) {
+                    add((int) (Math.max(position, rowDataPosition) - rowDataPosition), (int) (Math.min(endPosition, rowEndPosition) - rowDataPosition), index == currentMatchIndex);
+                }
+            }
+        }
+
+        private void add(int start, int end, boolean currentMatch) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                current = Arrays.copyOf(current, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            current[count] = currentMatch;
+            count++;
+        }
+
+        /**
+         * Returns run covering given byte preferring current match.
+         */
+        private int findRun(int byteOnRow) {
+            int result = -1;
+            for (int i = 0; i < count && starts[i] <= byteOnRow; i++) {
+                if (byteOnRow < ends[i]) {
+                    if (current[i]) {
+                        return i;
+                    }
+                    if (result < 0) {
+                        result = i;
+                    }
+                }
+            }
+            return result;
+        }
     }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) ExBin Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.exbin.bined.highlight.swing;
+
+import javax.annotation.Nonnull;
+import javax.swing.SwingUtilities;
+import org.exbin.bined.search.SearchListener;
+import org.exbin.bined.search.SearchMatches;
+import org.exbin.bined.search.SearchTask;
+import org.exbin.bined.swing.CodeArea;
+
+/**
+ * Search listener passing found matches to highlighting painter.
+ *
+ * Matches are added to the painter on event dispatch thread as soon as they
+ * are reported, so that they are shown while the search is still running.
+ * Matches of the painter should be cleared before the search is started.
+ *
+ * @version 0.2.0 2026/10/18
+ * @author ExBin Project (http://exbin.org)
+ */
+public class HighlightSearchListener implements SearchListener {
+
+    @Nonnull
+    private final CodeArea codeArea;
+    @Nonnull
+    private final HighlightCodeAreaPainter painter;
+
+    public HighlightSearchListener(@Nonnull CodeArea codeArea, @Nonnull HighlightCodeAreaPainter painter) {
+        this.codeArea = codeArea;
+        this.painter = painter;
+    }
+
+    @Override
+    public void matchesFound(@Nonnull final SearchTask task, @Nonnull final SearchMatches matches) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!task.isCancelled()) {
+                    painter.addMatches(matches);
+                    codeArea.repaint();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void searchFinished(@Nonnull SearchTask task) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                painter.getMatchesStore().trimToSize();
+            }
+        });
+    }
+}
@@ -70,7 +70,7 @@ import org.exbin.utils.binary_data.BinaryData;
 /**
  * Code area component default painter.
  *
- * @version 0.2.0 2018/06/03
+ * @version 0.2.0 2026/10/18
  * @author ExBin Project (http://exbin.org)
  */
 public class DefaultCodeAreaPainter implements CodeAreaPainter {
@@ -1542,6 +1542,10 @@ public class DefaultCodeAreaPainter implements CodeAreaPainter {
         return new Rectangle(dataViewX, dataViewY, dataViewWidth, dataViewHeight);
     }
 
+    public int getBytesPerRow() {
+        return bytesPerRow;
+    }
+
     public int computePositionByte(int rowCharPosition) {
         return rowCharPosition / (codeType.getMaxDigitsForByte() + 1);
     }